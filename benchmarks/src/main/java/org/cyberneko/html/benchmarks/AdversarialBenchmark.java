@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.HTMLConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time needed to parse, with the scanner and the tag
+ * balancer, the worst-case pages generated by {@link AdversarialPages}
+ * for increasing repetition counts. Comparing the scores of successive
+ * counts of a kind shows whether its parse time grows linearly; see
+ * {@link ScalingReport} for a quicker overview.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AdversarialBenchmark {
+
+    //
+    // Data
+    //
+
+    /** Kind of page. */
+    @Param({
+        AdversarialPages.UNCLOSED_INLINE, AdversarialPages.DEEP_NESTING,
+        AdversarialPages.HUGE_ATTRIBUTES, AdversarialPages.SCRIPT_COMMENTS,
+        AdversarialPages.UNTERMINATED_ENTITIES, AdversarialPages.MISNESTED_TABLES,
+        AdversarialPages.UNCLOSED_TITLES,
+    })
+    public String kind;
+
+    /** Repetition count of the hostile construct. */
+    @Param({ "1000", "4000", "16000" })
+    public int count;
+
+    /** Generated page. */
+    private byte[] fPage;
+
+    /** Scanner and tag balancer. */
+    private HTMLConfiguration fParser;
+
+    //
+    // Benchmarks
+    //
+
+    /** Generates the page. */
+    @Setup(Level.Trial)
+    public void generate() {
+        fPage = AdversarialPages.generate(kind, count);
+        fParser = new HTMLConfiguration();
+        fParser.setDocumentHandler(new ParserBenchmark.EventCounter());
+    } // generate()
+
+    /** Parses the page. */
+    @Benchmark
+    public long parse() throws Exception {
+        ByteArrayInputStream stream = new ByteArrayInputStream(fPage);
+        fParser.parse(new XMLInputSource(null, "page.html", null, stream, "UTF-8"));
+        return ((ParserBenchmark.EventCounter) fParser.getDocumentHandler()).fEvents;
+    } // parse():long
+
+} // class AdversarialBenchmark
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Generates worst-case inputs for the scanner and the tag balancer. Each
+ * kind of page repeats a single hostile construct a given number of
+ * times so that parse time can be plotted against input size:
+ * <ul>
+ * <li><code>unclosed-inline</code>: inline elements that are never
+ *     closed, each paragraph forcing the tag balancer to re-open all of
+ *     them;
+ * <li><code>deep-nesting</code>: block elements nested as deep as the
+ *     repetition count;
+ * <li><code>huge-attributes</code>: a single element with as many
+ *     attributes as the repetition count;
+ * <li><code>script-comments</code>: a script block containing comment
+ *     openings that are never closed;
+ * <li><code>unterminated-entities</code>: entity references missing
+ *     their semicolon, unknown or truncated;
+ * <li><code>misnested-tables</code>: table cells outside of any table
+ *     mixed with unclosed tables;
+ * <li><code>unclosed-titles</code>: title elements that are never
+ *     closed, each one making the scanner look ahead for its end tag.
+ * </ul>
+ */
+public class AdversarialPages {
+
+    //
+    // Constants
+    //
+
+    /** Unclosed inline elements. */
+    public static final String UNCLOSED_INLINE = "unclosed-inline";
+
+    /** Deeply nested elements. */
+    public static final String DEEP_NESTING = "deep-nesting";
+
+    /** Huge attribute lists. */
+    public static final String HUGE_ATTRIBUTES = "huge-attributes";
+
+    /** Script containing comment openings. */
+    public static final String SCRIPT_COMMENTS = "script-comments";
+
+    /** Unterminated entity references. */
+    public static final String UNTERMINATED_ENTITIES = "unterminated-entities";
+
+    /** Misnested tables. */
+    public static final String MISNESTED_TABLES = "misnested-tables";
+
+    /** Unclosed title elements. */
+    public static final String UNCLOSED_TITLES = "unclosed-titles";
+
+    /** All the kinds of pages. */
+    public static final String[] KINDS = {
+        UNCLOSED_INLINE, DEEP_NESTING, HUGE_ATTRIBUTES, SCRIPT_COMMENTS,
+        UNTERMINATED_ENTITIES, MISNESTED_TABLES, UNCLOSED_TITLES,
+    };
+
+    /** Inline elements used for unclosed tags. */
+    private static final String[] INLINES = {
+        "b", "i", "u", "font", "em", "strong", "span", "a", "small", "big",
+    };
+
+    //
+    // Public static methods
+    //
+
+    /** Generates a page of the given kind, encoded in UTF-8. */
+    public static byte[] generate(String kind, int count) {
+        try {
+            return generateString(kind, count).getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    } // generate(String,int):byte[]
+
+    /**
+     * Generates a page of the given kind repeating its construct the given
+     * number of times.
+     */
+    public static String generateString(String kind, int count) {
+        StringBuffer page = new StringBuffer(count * 16 + 128);
+        page.append("<html><head><title>").append(kind).append("</title></head><body>\n");
+        if (UNCLOSED_INLINE.equals(kind)) {
+            appendUnclosedInline(page, count);
+        }
+        else if (DEEP_NESTING.equals(kind)) {
+            appendDeepNesting(page, count);
+        }
+        else if (HUGE_ATTRIBUTES.equals(kind)) {
+            appendHugeAttributes(page, count);
+        }
+        else if (SCRIPT_COMMENTS.equals(kind)) {
+            appendScriptComments(page, count);
+        }
+        else if (UNTERMINATED_ENTITIES.equals(kind)) {
+            appendUnterminatedEntities(page, count);
+        }
+        else if (MISNESTED_TABLES.equals(kind)) {
+            appendMisnestedTables(page, count);
+        }
+        else if (UNCLOSED_TITLES.equals(kind)) {
+            appendUnclosedTitles(page, count);
+        }
+        else {
+            throw new IllegalArgumentException("unknown kind: " + kind);
+        }
+        page.append("\n</body></html>\n");
+        return page.toString();
+    } // generateString(String,int):String
+
+    //
+    // Private static methods
+    //
+
+    /**
+     * Appends inline elements that are never closed. Every tenth element
+     * a paragraph starts, which closes and re-opens the inline elements.
+     */
+    private static void appendUnclosedInline(StringBuffer page, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 9) {
+                page.append("<p>");
+            }
+            page.append('<').append(INLINES[i % INLINES.length]).append(">x");
+        }
+    } // appendUnclosedInline(StringBuffer,int)
+
+    /** Appends nested elements, then closes them all. */
+    private static void appendDeepNesting(StringBuffer page, int count) {
+        for (int i = 0; i < count; i++) {
+            page.append(i % 2 == 0 ? "<div>" : "<span>");
+        }
+        page.append("deep");
+        for (int i = count - 1; i >= 0; i--) {
+            page.append(i % 2 == 0 ? "</div>" : "</span>");
+        }
+    } // appendDeepNesting(StringBuffer,int)
+
+    /** Appends an element with many attributes, some of them duplicated. */
+    private static void appendHugeAttributes(StringBuffer page, int count) {
+        page.append("<div");
+        for (int i = 0; i < count; i++) {
+            page.append(" a").append(i % (count / 2 + 1)).append("=\"v").append(i).append('"');
+        }
+        page.append(">text</div>");
+    } // appendHugeAttributes(StringBuffer,int)
+
+    /** Appends a script block with unclosed comment openings. */
+    private static void appendScriptComments(StringBuffer page, int count) {
+        page.append("<script>\n");
+        for (int i = 0; i < count; i++) {
+            page.append("<!-- var s").append(i).append(" = '<p>';\n");
+        }
+        page.append("</script><p>after");
+    } // appendScriptComments(StringBuffer,int)
+
+    /** Appends entity references missing their semicolon. */
+    private static void appendUnterminatedEntities(StringBuffer page, int count) {
+        for (int i = 0; i < count; i++) {
+            switch (i % 4) {
+                case 0: page.append("&amp"); break;
+                case 1: page.append("&unknownentityname"); break;
+                case 2: page.append("&#1234567"); break;
+                default: page.append("&#x"); break;
+            }
+        }
+    } // appendUnterminatedEntities(StringBuffer,int)
+
+    /** Appends table cells outside of tables and unclosed tables. */
+    private static void appendMisnestedTables(StringBuffer page, int count) {
+        for (int i = 0; i < count; i++) {
+            switch (i % 3) {
+                case 0: page.append("<td>cell"); break;
+                case 1: page.append("<table><tr><td>"); break;
+                default: page.append("</tr>text"); break;
+            }
+        }
+    } // appendMisnestedTables(StringBuffer,int)
+
+    /** Appends title elements that are never closed. */
+    private static void appendUnclosedTitles(StringBuffer page, int count) {
+        for (int i = 0; i < count; i++) {
+            page.append("<title>x");
+        }
+    } // appendUnclosedTitles(StringBuffer,int)
+
+} // class AdversarialPages
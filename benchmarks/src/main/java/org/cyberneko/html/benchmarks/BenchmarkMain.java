@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled and prints a summary
+ * of the throughput results: operations per second, megabytes parsed
+ * per second and allocation rate. All the standard JMH command line
+ * options are accepted, for instance:
+ * <pre>
+ * java -jar target/benchmarks.jar ParserBenchmark.sax -p corpus=page-1m
+ * </pre>
+ */
+public class BenchmarkMain {
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry point. */
+    public static void main(String[] argv) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(argv))
+            .addProfiler(GCProfiler.class)
+            .build();
+        Collection results = new Runner(options).run();
+        printSummary(results);
+    } // main(String[])
+
+    //
+    // Public static methods
+    //
+
+    /** Prints the summary of the throughput results. */
+    public static void printSummary(Collection results) {
+        System.out.println();
+        System.out.println(format("Benchmark", 40) + format("Params", 24) + format("ops/s", 14)
+                           + format("MB/s", 12) + format("alloc MB/s", 14) + format("alloc B/op", 16));
+        Iterator iterator = results.iterator();
+        while (iterator.hasNext()) {
+            RunResult result = (RunResult) iterator.next();
+            BenchmarkParams params = result.getParams();
+            if (!"thrpt".equals(params.getMode().shortLabel())) {
+                continue;
+            }
+            String benchmark = params.getBenchmark();
+            benchmark = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+            StringBuffer values = new StringBuffer();
+            Iterator keys = params.getParamsKeys().iterator();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                if (values.length() > 0) {
+                    values.append(',');
+                }
+                values.append(key).append('=').append(params.getParam(key));
+            }
+            Map secondary = result.getSecondaryResults();
+            double bytes = getScore(secondary, "bytes");
+            System.out.println(format(benchmark, 40) + format(values.toString(), 24)
+                               + format(result.getPrimaryResult().getScore(), 14)
+                               + format(bytes / (1024 * 1024), 12)
+                               + format(getScore(secondary, "gc.alloc.rate"), 14)
+                               + format(getScore(secondary, "gc.alloc.rate.norm"), 16));
+        }
+    } // printSummary(Collection)
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the score of a secondary result, NaN if not available. */
+    private static double getScore(Map secondary, String label) {
+        Result result = (Result) secondary.get(label);
+        if (result == null) {
+            // older JMH versions prefix the profiler results
+            result = (Result) secondary.get("\u00B7" + label);
+        }
+        return result != null ? result.getScore() : Double.NaN;
+    } // getScore(Map,String):double
+
+    /** Formats a number in a column. */
+    private static String format(double value, int width) {
+        return format(Double.isNaN(value) ? "-" : String.valueOf(Math.round(value * 100) / 100.0), width);
+    } // format(double,int):String
+
+    /** Formats a string in a column. */
+    private static String format(String value, int width) {
+        StringBuffer str = new StringBuffer(value);
+        while (str.length() < width) {
+            str.append(' ');
+        }
+        return str.append(' ').toString();
+    } // format(String,int):String
+
+} // class BenchmarkMain
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.HTMLConfiguration;
+import org.cyberneko.html.HTMLElements;
+import org.cyberneko.html.HTMLEntities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of the first use of the parser in a new JVM, as
+ * seen by short-lived processes: each benchmark runs once per fork, in a
+ * JVM where no NekoHTML class has been initialized yet. The benchmarks
+ * cover the successive steps of a first parse:
+ * <ul>
+ * <li>{@link #entities}: the initialization of the entity table;
+ * <li>{@link #elements}: the initialization of the element table;
+ * <li>{@link #configuration}: the creation of a parser configuration,
+ *     which loads and initializes the pipeline components;
+ * <li>{@link #firstParse}: the creation of a configuration and the parse
+ *     of a small page.
+ * </ul>
+ * The scores include class loading and interpretation; the error is large
+ * and the number of forks should be raised for precise comparisons.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ColdStartBenchmark {
+
+    //
+    // Constants
+    //
+
+    /** Small page parsed by the first parse. */
+    private static final String PAGE =
+        "<html><head><title>Cold &amp; start</title>"
+        + "<script>var i = 0;</script></head>"
+        + "<body><p>Some <b>text</b> &eacute;&nbsp;&#169;"
+        + "<table><tr><td>cell</table></body></html>";
+
+    //
+    // Benchmarks
+    //
+
+    /** Initializes the entity table. */
+    @Benchmark
+    public int entities() {
+        return HTMLEntities.get("nbsp");
+    } // entities():int
+
+    /** Initializes the element table. */
+    @Benchmark
+    public Object elements() {
+        return HTMLElements.getElement("TABLE");
+    } // elements():Object
+
+    /** Creates a parser configuration. */
+    @Benchmark
+    public Object configuration() {
+        return new HTMLConfiguration();
+    } // configuration():Object
+
+    /** Creates a parser configuration and parses a small page. */
+    @Benchmark
+    public Object firstParse() throws Exception {
+        HTMLConfiguration parser = new HTMLConfiguration();
+        parser.parse(new XMLInputSource(null, "cold.html", null, new StringReader(PAGE), null));
+        return parser;
+    } // firstParse():Object
+
+} // class ColdStartBenchmark
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of documents held in memory so that benchmarks measure parsing
+ * and not file I/O. The following corpora are available:
+ * <ul>
+ * <li><code>data</code>: every <code>test*.html</code> file of the
+ *     <code>data/</code> directory, discovered the same way as the
+ *     canonical tests do;
+ * <li><code>page-100k</code>, <code>page-1m</code>, <code>page-4m</code>:
+ *     a single generated page of about the given size, see
+ *     {@link LargePages}.
+ * </ul>
+ * <p>
+ * The location of the <code>data/</code> directory can be set with the
+ * <code>nekohtml.data</code> system property; by default it is searched
+ * in the current directory and its parent.
+ */
+public class Corpus {
+
+    //
+    // Constants
+    //
+
+    /** Name of the corpus made of the data/ test files. */
+    public static final String DATA = "data";
+
+    /** Prefix of the names of the generated page corpora. */
+    public static final String PAGE_PREFIX = "page-";
+
+    //
+    // Data
+    //
+
+    /** Corpus name. */
+    private final String fName;
+
+    /** Document system identifiers. */
+    private final String[] fSystemIds;
+
+    /** Document contents. */
+    private final byte[][] fContents;
+
+    /** Total size in bytes. */
+    private final long fSize;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a corpus from the given documents. */
+    public Corpus(String name, String[] systemIds, byte[][] contents) {
+        fName = name;
+        fSystemIds = systemIds;
+        fContents = contents;
+        long size = 0;
+        for (int i = 0; i < contents.length; i++) {
+            size += contents[i].length;
+        }
+        fSize = size;
+    } // <init>(String,String[],byte[][])
+
+    //
+    // Public static methods
+    //
+
+    /** Loads the corpus with the given name. */
+    public static Corpus load(String name) throws IOException {
+        if (DATA.equals(name)) {
+            return loadData(getDataDirectory());
+        }
+        if (name.startsWith(PAGE_PREFIX)) {
+            int size = parseSize(name.substring(PAGE_PREFIX.length()));
+            byte[] page = LargePages.generate(size);
+            return new Corpus(name, new String[] { name + ".html" }, new byte[][] { page });
+        }
+        throw new IllegalArgumentException("unknown corpus: " + name);
+    } // load(String):Corpus
+
+    /** Loads all test files found in the given data directory. */
+    public static Corpus loadData(File dataDir) throws IOException {
+        List files = getDataFiles(dataDir);
+        String[] systemIds = new String[files.size()];
+        byte[][] contents = new byte[files.size()][];
+        for (int i = 0; i < systemIds.length; i++) {
+            File file = (File) files.get(i);
+            systemIds[i] = file.toURI().toString();
+            contents[i] = readFully(file);
+        }
+        return new Corpus(DATA, systemIds, contents);
+    } // loadData(File):Corpus
+
+    /**
+     * Returns the test files of the given data directory, sorted, skipping
+     * the <code>canonical</code> directories.
+     */
+    public static List getDataFiles(File dataDir) {
+        final List files = new ArrayList();
+        dataDir.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                String name = file.getName();
+                if (file.isDirectory() && !"canonical".equals(name)) {
+                    file.listFiles(this);
+                }
+                else if (name.startsWith("test") && name.endsWith(".html")) {
+                    files.add(file);
+                }
+                return false;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    } // getDataFiles(File):List
+
+    /** Returns the data directory. */
+    public static File getDataDirectory() {
+        String location = System.getProperty("nekohtml.data");
+        if (location != null) {
+            return new File(location);
+        }
+        File dir = new File("data");
+        if (!new File(dir, "canonical").isDirectory()) {
+            dir = new File("../data");
+        }
+        if (!new File(dir, "canonical").isDirectory()) {
+            throw new IllegalStateException("data directory not found, set the nekohtml.data system property");
+        }
+        return dir;
+    } // getDataDirectory():File
+
+    //
+    // Public methods
+    //
+
+    /** Returns the corpus name. */
+    public String getName() {
+        return fName;
+    } // getName():String
+
+    /** Returns the number of documents. */
+    public int getLength() {
+        return fContents.length;
+    } // getLength():int
+
+    /** Returns the system identifier of the document at the given index. */
+    public String getSystemId(int index) {
+        return fSystemIds[index];
+    } // getSystemId(int):String
+
+    /** Returns the content of the document at the given index. */
+    public byte[] getContent(int index) {
+        return fContents[index];
+    } // getContent(int):byte[]
+
+    /** Returns the total size of the documents in bytes. */
+    public long getSize() {
+        return fSize;
+    } // getSize():long
+
+    //
+    // Private static methods
+    //
+
+    /** Parses sizes like "100k" or "1m". */
+    private static int parseSize(String size) {
+        int factor = 1;
+        char unit = Character.toLowerCase(size.charAt(size.length() - 1));
+        if (unit == 'k') {
+            factor = 1024;
+        }
+        else if (unit == 'm') {
+            factor = 1024 * 1024;
+        }
+        if (factor != 1) {
+            size = size.substring(0, size.length() - 1);
+        }
+        return Integer.parseInt(size) * factor;
+    } // parseSize(String):int
+
+    /** Reads the content of a file. */
+    private static byte[] readFully(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    } // readFully(File):byte[]
+
+} // class Corpus
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.cyberneko.html.parsers.DOMFragmentParser;
+import org.cyberneko.html.parsers.DOMParser;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.util.Multiset;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Reports the heap retained by the trees built from a corpus by the DOM
+ * parser and the DOM fragment parser, per KB of input. The retained size
+ * of a tree is the size of all the objects reachable from its root, as
+ * computed by JOL; shared objects, e.g. the interned element names, are
+ * counted with every tree that references them.
+ * <p>
+ * The retained heap is broken down by DOM node type: the node objects
+ * themselves, then the strings (<code>String</code> objects and their
+ * arrays) and the other objects reachable from the tree, e.g. the lists
+ * of attributes. The fragments are parsed in a new owner document each;
+ * the size of an empty owner document is subtracted from their size.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar org.cyberneko.html.benchmarks.DomFootprintReport [corpus [classes]]
+ * </pre>
+ * With the <code>classes</code> argument, the size retained by each
+ * class is printed too. JOL prints a warning explaining how to give it
+ * access to the JVM internals when the sizes are estimated.
+ */
+public class DomFootprintReport {
+
+    //
+    // Constants
+    //
+
+    /** Category of the strings. */
+    private static final String STRINGS = "strings";
+
+    /** Category of the other objects. */
+    private static final String OTHER = "other";
+
+    /** Names of the DOM node types, indexed by type. */
+    private static final String[] NODE_TYPES = {
+        null, "element", "attribute", "text", "cdata-section",
+        "entity-reference", "entity", "processing-instruction", "comment",
+        "document", "document-type", "document-fragment", "notation",
+    };
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry point. */
+    public static void main(String[] argv) throws Exception {
+        Corpus corpus = Corpus.load(argv.length > 0 ? argv[0] : Corpus.DATA);
+        boolean classes = argv.length > 1 && "classes".equals(argv[1]);
+
+        Footprint document = new Footprint("dom");
+        Footprint fragment = new Footprint("dom-fragment");
+        DOMParser domParser = new DOMParser();
+        DOMFragmentParser fragmentParser = new DOMFragmentParser();
+        Footprint empty = new Footprint("empty");
+        empty.add(new HTMLDocumentImpl());
+        for (int i = 0; i < corpus.getLength(); i++) {
+            domParser.parse(source(corpus, i));
+            document.add(domParser.getDocument());
+
+            DocumentFragment root = new HTMLDocumentImpl().createDocumentFragment();
+            fragmentParser.parse(source(corpus, i), root);
+            fragment.add(root);
+            fragment.subtract(empty);
+        }
+
+        double kilobytes = corpus.getSize() / 1024.0;
+        System.out.println("parser,documents,input KB,retained bytes,bytes/KB");
+        System.out.println(document.fName + "," + corpus.getLength() + "," + round(kilobytes) + ","
+                           + document.fSize + "," + round(document.fSize / kilobytes));
+        System.out.println(fragment.fName + "," + corpus.getLength() + "," + round(kilobytes) + ","
+                           + fragment.fSize + "," + round(fragment.fSize / kilobytes));
+        System.out.println();
+        System.out.println("parser,category,objects,bytes,bytes/KB");
+        document.print(document.fCategories, kilobytes);
+        fragment.print(fragment.fCategories, kilobytes);
+        if (classes) {
+            System.out.println();
+            System.out.println("parser,class,objects,bytes,bytes/KB");
+            document.print(document.fClasses, kilobytes);
+            fragment.print(fragment.fClasses, kilobytes);
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the input source of a document. */
+    private static InputSource source(Corpus corpus, int index) {
+        InputSource source = new InputSource(new ByteArrayInputStream(corpus.getContent(index)));
+        source.setSystemId(corpus.getSystemId(index));
+        return source;
+    } // source(Corpus,int):InputSource
+
+    /** Rounds to two decimals. */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    } // round(double):double
+
+    //
+    // Classes
+    //
+
+    /** Objects and bytes retained by trees, per category and per class. */
+    static class Footprint {
+
+        /** Name of the parser. */
+        final String fName;
+
+        /** Counts per category: name to long[] { objects, bytes }. */
+        final Map fCategories = new HashMap();
+
+        /** Counts per class: name to long[] { objects, bytes }. */
+        final Map fClasses = new HashMap();
+
+        /** Total number of bytes. */
+        long fSize;
+
+        /** Constructs an empty footprint. */
+        Footprint(String name) {
+            fName = name;
+        } // <init>(String)
+
+        /** Adds the objects reachable from a tree. */
+        void add(Node root) {
+            update(root, 1);
+        } // add(Node)
+
+        /** Subtracts another footprint. */
+        void subtract(Footprint other) {
+            merge(fCategories, other.fCategories, -1);
+            merge(fClasses, other.fClasses, -1);
+            fSize -= other.fSize;
+        } // subtract(Footprint)
+
+        /** Prints the counts of the given map, largest first. */
+        void print(Map counts, double kilobytes) {
+            List names = new ArrayList(counts.keySet());
+            final Map sorted = counts;
+            Collections.sort(names, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    long b1 = ((long[]) sorted.get(o1))[1];
+                    long b2 = ((long[]) sorted.get(o2))[1];
+                    return b1 > b2 ? -1 : b1 < b2 ? 1 : 0;
+                }
+            });
+            for (Iterator i = names.iterator(); i.hasNext(); ) {
+                String name = (String) i.next();
+                long[] count = (long[]) counts.get(name);
+                if (count[0] == 0 && count[1] == 0) {
+                    continue;
+                }
+                System.out.println(fName + "," + name + "," + count[0] + "," + count[1] + ","
+                                   + round(count[1] / kilobytes));
+            }
+        } // print(Map,double)
+
+        /** Adds or removes the objects reachable from a tree. */
+        private void update(Node root, int sign) {
+            Map nodeTypes = new HashMap();
+            if (root.getOwnerDocument() != null) {
+                nodeTypes.put(root.getOwnerDocument().getClass(), NODE_TYPES[Node.DOCUMENT_NODE]);
+            }
+            collectNodeTypes(root, nodeTypes);
+            GraphLayout layout = GraphLayout.parseInstance(new Object[] { root });
+            Multiset counts = layout.getClassCounts();
+            Multiset sizes = layout.getClassSizes();
+            for (Iterator i = layout.getClasses().iterator(); i.hasNext(); ) {
+                Class type = (Class) i.next();
+                long[] count = { counts.count(type) * sign, sizes.count(type) * sign };
+                increment(fClasses, type.getName(), count);
+                increment(fCategories, category(type, nodeTypes), count);
+            }
+            fSize += layout.totalSize() * sign;
+        } // update(Node,int)
+
+        /** Maps the classes of the nodes of a tree to their node type. */
+        private static void collectNodeTypes(Node node, Map nodeTypes) {
+            nodeTypes.put(node.getClass(), NODE_TYPES[node.getNodeType()]);
+            NamedNodeMap attributes = node.getAttributes();
+            if (attributes != null) {
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    collectNodeTypes(attributes.item(i), nodeTypes);
+                }
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                collectNodeTypes(child, nodeTypes);
+            }
+        } // collectNodeTypes(Node,Map)
+
+        /** Returns the category of a class. */
+        private static String category(Class type, Map nodeTypes) {
+            String nodeType = (String) nodeTypes.get(type);
+            if (nodeType != null) {
+                return nodeType;
+            }
+            if (type == String.class || type == char[].class || type == byte[].class) {
+                return STRINGS;
+            }
+            return OTHER;
+        } // category(Class,Map):String
+
+        /** Adds the counts of a map to another one. */
+        private static void merge(Map counts, Map other, int sign) {
+            for (Iterator i = other.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry entry = (Map.Entry) i.next();
+                long[] count = (long[]) entry.getValue();
+                increment(counts, entry.getKey(), new long[] { count[0] * sign, count[1] * sign });
+            }
+        } // merge(Map,Map,int)
+
+        /** Adds counts to the counts of a key. */
+        private static void increment(Map counts, Object key, long[] count) {
+            long[] total = (long[]) counts.get(key);
+            if (total == null) {
+                counts.put(key, new long[] { count[0], count[1] });
+            }
+            else {
+                total[0] += count[0];
+                total[1] += count[1];
+            }
+        } // increment(Map,Object,long[])
+
+    } // class Footprint
+
+} // class DomFootprintReport
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Generates large pages resembling what is found on real web sites:
+ * a head with meta information, style sheets and scripts, navigation
+ * lists, articles made of paragraphs with inline markup, links and
+ * entity references, data tables, forms, comments and the usual
+ * amount of sloppiness (unclosed paragraphs and list items, unquoted
+ * attribute values, upper case tags).
+ * <p>
+ * Pages are generated from a fixed seed so that successive runs
+ * measure exactly the same input.
+ */
+public class LargePages {
+
+    //
+    // Constants
+    //
+
+    /** Seed of the random generator. */
+    private static final long SEED = 0x4E454B4FL;
+
+    /** Words used for text content. */
+    private static final String[] WORDS = {
+        "the", "parser", "balances", "tags", "of", "documents", "found",
+        "on", "web", "and", "reports", "errors", "when", "markup", "is",
+        "invalid", "news", "market", "today", "about", "with", "price",
+        "caf\u00E9", "na\u00EFve", "r\u00E9sum\u00E9", "\u00FCber", "stra\u00DFe",
+        "\u20AC", "search", "results", "page", "more", "information",
+    };
+
+    /** Entity references used in text content. */
+    private static final String[] ENTITIES = {
+        "&amp;", "&nbsp;", "&copy;", "&quot;", "&lt;", "&gt;", "&eacute;",
+        "&#8212;", "&#x2019;", "&hellip;", "&raquo;",
+    };
+
+    /** Inline elements wrapping words. */
+    private static final String[] INLINES = {
+        "b", "i", "em", "strong", "span", "code", "small", "abbr",
+    };
+
+    //
+    // Public static methods
+    //
+
+    /** Generates a page of about the given size, encoded in UTF-8. */
+    public static byte[] generate(int size) {
+        try {
+            return generateString(size).getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    } // generate(int):byte[]
+
+    /** Generates a page of about the given number of characters. */
+    public static String generateString(int size) {
+        Random random = new Random(SEED);
+        StringBuffer page = new StringBuffer(size + 4096);
+        appendHead(page, random);
+        page.append("<body class=\"page\">\n");
+        appendNavigation(page, random);
+        int section = 0;
+        while (page.length() < size) {
+            switch (section++ % 4) {
+                case 0: case 1: appendArticle(page, random); break;
+                case 2: appendTable(page, random); break;
+                default: appendForm(page, random); break;
+            }
+        }
+        page.append("<div id=footer>&copy; 2014 Example &mdash; <a href=/about>About</a></div>\n");
+        page.append("<script>window.analytics && analytics.track('view');</script>\n");
+        page.append("</body>\n</html>\n");
+        return page.toString();
+    } // generateString(int):String
+
+    //
+    // Private static methods
+    //
+
+    /** Appends the document head. */
+    private static void appendHead(StringBuffer page, Random random) {
+        page.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\"\n");
+        page.append(" \"http://www.w3.org/TR/html4/loose.dtd\">\n");
+        page.append("<html lang=en>\n<head>\n");
+        page.append("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n");
+        page.append("<title>Generated page &ndash; NekoHTML benchmark</title>\n");
+        page.append("<meta name=\"description\" content=\"");
+        appendWords(page, random, 20);
+        page.append("\">\n");
+        page.append("<link rel=stylesheet type=\"text/css\" href=\"/css/site.css?v=42\">\n");
+        page.append("<style type=\"text/css\">\n<!--\n");
+        for (int i = 0; i < 30; i++) {
+            page.append("  .c").append(i).append(" { margin: ").append(i % 7)
+                .append("px; color: #").append(Integer.toHexString(0x100000 + random.nextInt(0xEFFFFF)))
+                .append("; }\n");
+        }
+        page.append("-->\n</style>\n");
+        page.append("<script type=\"text/javascript\">\n<!--\n");
+        page.append("  var config = { url: '/api?a=1&b=2', depth: 3 };\n");
+        page.append("  function render(items) {\n");
+        page.append("    var html = '<ul>';\n");
+        page.append("    for (var i = 0; i < items.length && i < 10; i++) {\n");
+        page.append("      html += '<li>' + items[i] + '</li>';\n");
+        page.append("    }\n");
+        page.append("    document.write(html + '</ul>');\n");
+        page.append("  }\n");
+        page.append("// -->\n</script>\n");
+        page.append("</head>\n");
+    } // appendHead(StringBuffer,Random)
+
+    /** Appends a navigation list. */
+    private static void appendNavigation(StringBuffer page, Random random) {
+        page.append("<div id=\"nav\"><ul class=menu>\n");
+        for (int i = 0; i < 12; i++) {
+            page.append("<li><a href=\"/section/").append(i).append("?ref=nav&amp;lang=en\">");
+            appendWords(page, random, 1 + random.nextInt(2));
+            page.append("</a>\n");
+        }
+        page.append("</ul></div>\n");
+        page.append("<!-- end of navigation -->\n");
+    } // appendNavigation(StringBuffer,Random)
+
+    /** Appends an article made of paragraphs. */
+    private static void appendArticle(StringBuffer page, Random random) {
+        page.append("<div class=\"article c").append(random.nextInt(30)).append("\">\n");
+        page.append("<h2>");
+        appendWords(page, random, 3 + random.nextInt(5));
+        page.append("</h2>\n");
+        int paragraphs = 3 + random.nextInt(5);
+        for (int i = 0; i < paragraphs; i++) {
+            page.append(random.nextInt(8) == 0 ? "<P>" : "<p>");
+            appendText(page, random, 40 + random.nextInt(80));
+            // real pages often omit the end tag of paragraphs
+            if (random.nextInt(3) != 0) {
+                page.append("</p>");
+            }
+            page.append('\n');
+        }
+        if (random.nextBoolean()) {
+            page.append("<img src=\"/img/").append(random.nextInt(1000))
+                .append(".jpg\" width=300 height=200 alt=\"");
+            appendWords(page, random, 4);
+            page.append("\">\n");
+        }
+        page.append("<ul>\n");
+        for (int i = 0; i < 5; i++) {
+            page.append("<li>");
+            appendText(page, random, 8);
+            page.append('\n');
+        }
+        page.append("</ul>\n</div>\n");
+    } // appendArticle(StringBuffer,Random)
+
+    /** Appends a data table. */
+    private static void appendTable(StringBuffer page, Random random) {
+        page.append("<table class=data border=0 cellpadding=\"2\">\n");
+        page.append("<tr><th>Name<th>Price<th>Change<th>Volume\n");
+        int rows = 10 + random.nextInt(20);
+        for (int i = 0; i < rows; i++) {
+            page.append("<tr class=\"").append(i % 2 == 0 ? "even" : "odd").append("\">");
+            page.append("<td><a href=\"/quote?s=").append(random.nextInt(10000)).append("\">");
+            appendWords(page, random, 2);
+            page.append("</a></td><td align=right>").append(random.nextInt(1000)).append('.')
+                .append(random.nextInt(100)).append("&nbsp;&euro;</td>");
+            page.append("<td>").append(random.nextBoolean() ? "+" : "&minus;").append(random.nextInt(10))
+                .append("%<td>").append(random.nextInt(1000000)).append("</tr>\n");
+        }
+        page.append("</table>\n");
+    } // appendTable(StringBuffer,Random)
+
+    /** Appends a form. */
+    private static void appendForm(StringBuffer page, Random random) {
+        page.append("<form action=\"/search\" method=get><fieldset>\n");
+        page.append("<label for=q>Search</label> <input type=text name=q id=q value=\"\">\n");
+        page.append("<select name=\"category\">\n");
+        for (int i = 0; i < 8; i++) {
+            page.append("<option value=\"").append(i).append("\">");
+            appendWords(page, random, 2);
+            page.append('\n');
+        }
+        page.append("</select>\n<input type=submit value=\"Go &raquo;\">\n");
+        page.append("</fieldset></form>\n");
+        page.append("<script>document.write('<div class=\"ad\"><' + '/div>');</script>\n");
+    } // appendForm(StringBuffer,Random)
+
+    /** Appends text with inline markup and entity references. */
+    private static void appendText(StringBuffer page, Random random, int words) {
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                page.append(' ');
+            }
+            int kind = random.nextInt(20);
+            if (kind == 0) {
+                String inline = INLINES[random.nextInt(INLINES.length)];
+                page.append('<').append(inline).append('>');
+                appendWords(page, random, 1 + random.nextInt(3));
+                page.append("</").append(inline).append('>');
+            }
+            else if (kind == 1) {
+                page.append("<a href=\"http://www.example.com/").append(random.nextInt(100000))
+                    .append("?from=text&amp;id=").append(i).append("\" title=\"");
+                appendWords(page, random, 2);
+                page.append("\">");
+                appendWords(page, random, 1 + random.nextInt(3));
+                page.append("</a>");
+            }
+            else if (kind == 2) {
+                page.append(ENTITIES[random.nextInt(ENTITIES.length)]);
+            }
+            else if (kind == 3) {
+                page.append("<br>\n");
+            }
+            else {
+                page.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+    } // appendText(StringBuffer,Random,int)
+
+    /** Appends plain words. */
+    private static void appendWords(StringBuffer page, Random random, int words) {
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                page.append(' ');
+            }
+            page.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    } // appendWords(StringBuffer,Random,int)
+
+} // class LargePages
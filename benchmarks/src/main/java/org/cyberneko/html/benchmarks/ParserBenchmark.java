@@ -0,0 +1,300 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.html.dom.HTMLDocumentImpl;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.HTMLConfiguration;
+import org.cyberneko.html.filters.DefaultFilter;
+import org.cyberneko.html.parsers.DOMFragmentParser;
+import org.cyberneko.html.parsers.DOMParser;
+import org.cyberneko.html.parsers.SAXParser;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.html.HTMLDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures the throughput and the latency of the successive stages of
+ * the NekoHTML pipeline:
+ * <ul>
+ * <li><code>scanner</code>: the HTMLScanner alone (no namespace
+ *     binding, no tag balancing);
+ * <li><code>balancer</code>: the HTMLScanner followed by the
+ *     HTMLTagBalancer;
+ * <li><code>sax</code>, <code>dom</code> and <code>domFragment</code>:
+ *     the complete SAXParser, DOMParser and DOMFragmentParser.
+ * </ul>
+ * Every invocation parses the whole corpus selected by the
+ * <code>corpus</code> parameter (see {@link Corpus}). The number of
+ * bytes parsed is reported as the <code>bytes</code> secondary result,
+ * which JMH normalizes to bytes per second.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ParserBenchmark {
+
+    //
+    // Benchmarks
+    //
+
+    /** Scanner only. */
+    @Benchmark
+    public void scanner(Input input, Pipelines pipelines, Bytes bytes, Blackhole blackhole) throws Exception {
+        parse(pipelines.fScanner, input.fCorpus, bytes, blackhole);
+    } // scanner(Input,Pipelines,Bytes,Blackhole)
+
+    /** Scanner and tag balancer. */
+    @Benchmark
+    public void balancer(Input input, Pipelines pipelines, Bytes bytes, Blackhole blackhole) throws Exception {
+        parse(pipelines.fBalancer, input.fCorpus, bytes, blackhole);
+    } // balancer(Input,Pipelines,Bytes,Blackhole)
+
+    /** SAX parser. */
+    @Benchmark
+    public void sax(Input input, Parsers parsers, Bytes bytes, Blackhole blackhole) throws Exception {
+        Corpus corpus = input.fCorpus;
+        for (int i = 0; i < corpus.getLength(); i++) {
+            parsers.fSAXParser.parse(createInputSource(corpus, i));
+        }
+        blackhole.consume(parsers.fContentHandler.fEvents);
+        bytes.bytes += corpus.getSize();
+    } // sax(Input,Parsers,Bytes,Blackhole)
+
+    /** DOM parser. */
+    @Benchmark
+    public void dom(Input input, Parsers parsers, Bytes bytes, Blackhole blackhole) throws Exception {
+        Corpus corpus = input.fCorpus;
+        for (int i = 0; i < corpus.getLength(); i++) {
+            parsers.fDOMParser.parse(createInputSource(corpus, i));
+            blackhole.consume(parsers.fDOMParser.getDocument());
+        }
+        bytes.bytes += corpus.getSize();
+    } // dom(Input,Parsers,Bytes,Blackhole)
+
+    /** DOM fragment parser. */
+    @Benchmark
+    public void domFragment(Input input, Parsers parsers, Bytes bytes, Blackhole blackhole) throws Exception {
+        Corpus corpus = input.fCorpus;
+        for (int i = 0; i < corpus.getLength(); i++) {
+            DocumentFragment fragment = parsers.fDocument.createDocumentFragment();
+            parsers.fDOMFragmentParser.parse(createInputSource(corpus, i), fragment);
+            blackhole.consume(fragment);
+        }
+        bytes.bytes += corpus.getSize();
+    } // domFragment(Input,Parsers,Bytes,Blackhole)
+
+    //
+    // Private static methods
+    //
+
+    /** Parses the corpus with the given configuration. */
+    private static void parse(HTMLConfiguration pipeline, Corpus corpus, Bytes bytes, Blackhole blackhole)
+        throws Exception {
+        for (int i = 0; i < corpus.getLength(); i++) {
+            ByteArrayInputStream stream = new ByteArrayInputStream(corpus.getContent(i));
+            pipeline.parse(new XMLInputSource(null, corpus.getSystemId(i), null, stream, null));
+        }
+        blackhole.consume(((EventCounter) pipeline.getDocumentHandler()).fEvents);
+        bytes.bytes += corpus.getSize();
+    } // parse(HTMLConfiguration,Corpus,Bytes,Blackhole)
+
+    /** Creates a SAX input source for a document of the corpus. */
+    private static InputSource createInputSource(Corpus corpus, int index) {
+        InputSource source = new InputSource(new ByteArrayInputStream(corpus.getContent(index)));
+        source.setSystemId(corpus.getSystemId(index));
+        return source;
+    } // createInputSource(Corpus,int):InputSource
+
+    //
+    // Classes
+    //
+
+    /** The corpus to parse. */
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        /** Corpus name. */
+        @Param({ Corpus.DATA, "page-100k", "page-1m" })
+        public String corpus;
+
+        /** Loaded corpus. */
+        Corpus fCorpus;
+
+        /** Loads the corpus. */
+        @Setup(Level.Trial)
+        public void load() throws Exception {
+            fCorpus = Corpus.load(corpus);
+        } // load()
+
+    } // class Input
+
+    /** HTMLConfiguration pipelines, one per thread. */
+    @State(Scope.Thread)
+    public static class Pipelines {
+
+        /** Scanner only. */
+        HTMLConfiguration fScanner;
+
+        /** Scanner and tag balancer. */
+        HTMLConfiguration fBalancer;
+
+        /** Creates the pipelines. */
+        @Setup(Level.Trial)
+        public void create() {
+            fScanner = new HTMLConfiguration();
+            fScanner.setFeature("http://xml.org/sax/features/namespaces", false);
+            fScanner.setFeature("http://cyberneko.org/html/features/balance-tags", false);
+            fScanner.setDocumentHandler(new EventCounter());
+            fBalancer = new HTMLConfiguration();
+            fBalancer.setFeature("http://xml.org/sax/features/namespaces", false);
+            fBalancer.setDocumentHandler(new EventCounter());
+        } // create()
+
+    } // class Pipelines
+
+    /** Parsers, one set per thread. */
+    @State(Scope.Thread)
+    public static class Parsers {
+
+        /** SAX parser. */
+        SAXParser fSAXParser;
+
+        /** SAX content handler. */
+        ContentCounter fContentHandler;
+
+        /** DOM parser. */
+        DOMParser fDOMParser;
+
+        /** DOM fragment parser. */
+        DOMFragmentParser fDOMFragmentParser;
+
+        /** Owner document of the fragments. */
+        HTMLDocument fDocument;
+
+        /** Creates the parsers. */
+        @Setup(Level.Trial)
+        public void create() {
+            fSAXParser = new SAXParser();
+            fContentHandler = new ContentCounter();
+            fSAXParser.setContentHandler(fContentHandler);
+            fDOMParser = new DOMParser();
+            fDOMFragmentParser = new DOMFragmentParser();
+            fDocument = new HTMLDocumentImpl();
+        } // create()
+
+    } // class Parsers
+
+    /** Counts the bytes parsed during an iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        /** Number of bytes parsed. */
+        public long bytes;
+
+        /** Resets the counter. */
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        } // reset()
+
+    } // class Bytes
+
+    /**
+     * Counts the events it receives so that the pipeline has a consumer
+     * that cannot be optimized away.
+     */
+    public static class EventCounter extends DefaultFilter {
+
+        /** Number of events. */
+        public long fEvents;
+
+        /** Start element. */
+        public void startElement(QName element, XMLAttributes attributes, Augmentations augs)
+            throws XNIException {
+            fEvents += 1 + attributes.getLength();
+        } // startElement(QName,XMLAttributes,Augmentations)
+
+        /** Empty element. */
+        public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs)
+            throws XNIException {
+            fEvents += 1 + attributes.getLength();
+        } // emptyElement(QName,XMLAttributes,Augmentations)
+
+        /** Characters. */
+        public void characters(XMLString text, Augmentations augs) throws XNIException {
+            fEvents += text.length;
+        } // characters(XMLString,Augmentations)
+
+        /** End element. */
+        public void endElement(QName element, Augmentations augs) throws XNIException {
+            fEvents++;
+        } // endElement(QName,Augmentations)
+
+    } // class EventCounter
+
+    /** Counts the SAX events it receives. */
+    public static class ContentCounter extends DefaultHandler {
+
+        /** Number of events. */
+        public long fEvents;
+
+        /** Start element. */
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            fEvents += 1 + attributes.getLength();
+        } // startElement(String,String,String,Attributes)
+
+        /** Characters. */
+        public void characters(char[] ch, int start, int length) {
+            fEvents += length;
+        } // characters(char[],int,int)
+
+        /** End element. */
+        public void endElement(String uri, String localName, String qName) {
+            fEvents++;
+        } // endElement(String,String,String)
+
+    } // class ContentCounter
+
+} // class ParserBenchmark
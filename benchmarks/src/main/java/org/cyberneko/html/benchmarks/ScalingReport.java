@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.HTMLConfiguration;
+
+/**
+ * Measures how the parse time of the pages generated by
+ * {@link AdversarialPages} grows with their size. For each kind of page,
+ * the repetition count doubles from the minimum to the maximum count and
+ * the best time of several parses is printed as CSV, ready to be plotted:
+ * <pre>
+ * kind,count,bytes,millis
+ * </pre>
+ * A summary then gives, for each kind, the growth exponent estimated
+ * between the two largest sizes: about 1 for linear behavior, 2 for
+ * quadratic behavior. Kinds with an exponent above 1.5 are flagged as
+ * super-linear.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar org.cyberneko.html.benchmarks.ScalingReport [kind [min [max]]]
+ * </pre>
+ */
+public class ScalingReport {
+
+    //
+    // Constants
+    //
+
+    /** Default minimum repetition count. */
+    private static final int MIN_COUNT = 1000;
+
+    /** Default maximum repetition count. */
+    private static final int MAX_COUNT = 16000;
+
+    /** Number of measured parses per size. */
+    private static final int RUNS = 5;
+
+    /** Exponent above which growth is reported as super-linear. */
+    private static final double SUPER_LINEAR = 1.5;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry point. */
+    public static void main(String[] argv) throws Exception {
+        String[] kinds = argv.length > 0 && !"all".equals(argv[0])
+                       ? new String[] { argv[0] } : AdversarialPages.KINDS;
+        int min = argv.length > 1 ? Integer.parseInt(argv[1]) : MIN_COUNT;
+        int max = argv.length > 2 ? Integer.parseInt(argv[2]) : MAX_COUNT;
+
+        HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setDocumentHandler(new ParserBenchmark.EventCounter());
+
+        double[] exponents = new double[kinds.length];
+        System.out.println("kind,count,bytes,millis");
+        for (int k = 0; k < kinds.length; k++) {
+            // warm up on the smallest size
+            byte[] warmup = AdversarialPages.generate(kinds[k], min);
+            for (int i = 0; i < 20; i++) {
+                parse(parser, warmup);
+            }
+            double previousTime = 0;
+            int previousCount = 0;
+            for (int count = min; count <= max; count *= 2) {
+                byte[] page = AdversarialPages.generate(kinds[k], count);
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < RUNS; i++) {
+                    long start = System.nanoTime();
+                    parse(parser, page);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                double time = best / 1000000.0;
+                System.out.println(kinds[k] + "," + count + "," + page.length + "," + time);
+                if (previousCount > 0) {
+                    exponents[k] = Math.log(time / previousTime) / Math.log((double) count / previousCount);
+                }
+                previousTime = time;
+                previousCount = count;
+            }
+        }
+
+        System.out.println();
+        for (int k = 0; k < kinds.length; k++) {
+            System.out.println(kinds[k] + ": exponent " + Math.round(exponents[k] * 100) / 100.0
+                               + (exponents[k] > SUPER_LINEAR ? " SUPER-LINEAR" : ""));
+        }
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Parses a page. */
+    private static void parse(HTMLConfiguration parser, byte[] page) throws Exception {
+        parser.parse(new XMLInputSource(null, "page.html", null, new ByteArrayInputStream(page), "UTF-8"));
+    } // parse(HTMLConfiguration,byte[])
+
+} // class ScalingReport
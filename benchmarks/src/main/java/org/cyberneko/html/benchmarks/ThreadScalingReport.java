@@ -0,0 +1,269 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.benchmarks;
+
+import java.io.ByteArrayInputStream;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.HTMLConfiguration;
+import org.cyberneko.html.filters.ElementRemover;
+import org.cyberneko.html.filters.Purifier;
+import org.cyberneko.html.filters.Writer;
+
+/**
+ * Measures how the parse throughput grows with the number of threads,
+ * each thread parsing the corpus with its own parser. Parsers share no
+ * state, so the throughput should grow linearly with the number of
+ * threads up to the number of cores; a lower growth points to contention
+ * on shared locks or to memory bandwidth limits.
+ * <p>
+ * Two pipelines are measured:
+ * <ul>
+ * <li><code>balancer</code>: the scanner and the tag balancer;
+ * <li><code>filters</code>: the scanner and the tag balancer with
+ *     augmentations, followed by the element remover, the purifier and
+ *     the writer.
+ * </ul>
+ * For each pipeline, the number of threads doubles from 1 to the maximum
+ * and the throughput is printed as CSV:
+ * <pre>
+ * pipeline,threads,docs/s,MB/s,speedup,efficiency
+ * </pre>
+ * The efficiency is the speedup divided by the number of threads; counts
+ * with an efficiency below 0.8 are flagged in the summary.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar org.cyberneko.html.benchmarks.ThreadScalingReport [corpus [max-threads [seconds]]]
+ * </pre>
+ * By default, the <code>data</code> corpus is parsed with up to as many
+ * threads as available processors, for 5 seconds per thread count after
+ * a warmup of the same duration.
+ */
+public class ThreadScalingReport {
+
+    //
+    // Constants
+    //
+
+    /** Measured pipelines. */
+    private static final String[] PIPELINES = { "balancer", "filters" };
+
+    /** Default measurement duration per thread count, in seconds. */
+    private static final int SECONDS = 5;
+
+    /** Efficiency below which the scaling is reported as sub-linear. */
+    private static final double SUB_LINEAR = 0.8;
+
+    //
+    // MAIN
+    //
+
+    /** Main program entry point. */
+    public static void main(String[] argv) throws Exception {
+        Corpus corpus = Corpus.load(argv.length > 0 ? argv[0] : Corpus.DATA);
+        int max = argv.length > 1 ? Integer.parseInt(argv[1])
+                : Runtime.getRuntime().availableProcessors();
+        long millis = (argv.length > 2 ? Integer.parseInt(argv[2]) : SECONDS) * 1000L;
+
+        StringBuffer summary = new StringBuffer();
+        System.out.println("pipeline,threads,docs/s,MB/s,speedup,efficiency");
+        for (int p = 0; p < PIPELINES.length; p++) {
+            double single = 0;
+            double worst = 1;
+            int worstThreads = 1;
+            for (int threads = 1; threads <= max; threads = next(threads, max)) {
+                Worker[] workers = run(PIPELINES[p], corpus, threads, millis);
+                long docs = 0;
+                long bytes = 0;
+                for (int i = 0; i < threads; i++) {
+                    docs += workers[i].fDocuments;
+                    bytes += workers[i].fBytes;
+                }
+                double seconds = millis / 1000.0;
+                double throughput = docs / seconds;
+                if (threads == 1) {
+                    single = throughput;
+                }
+                double speedup = single > 0 ? throughput / single : 0;
+                double efficiency = speedup / threads;
+                if (efficiency < worst) {
+                    worst = efficiency;
+                    worstThreads = threads;
+                }
+                System.out.println(PIPELINES[p] + "," + threads + "," + round(throughput) + ","
+                                   + round(bytes / seconds / (1024 * 1024)) + ","
+                                   + round(speedup) + "," + round(efficiency));
+            }
+            summary.append(PIPELINES[p]).append(": lowest efficiency ").append(round(worst))
+                   .append(" with ").append(worstThreads).append(" threads")
+                   .append(worst < SUB_LINEAR ? " SUB-LINEAR" : "").append('\n');
+        }
+
+        System.out.println();
+        System.out.print(summary);
+    } // main(String[])
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the next thread count: doubles, ending on the maximum. */
+    private static int next(int threads, int max) {
+        return threads < max && threads * 2 > max ? max : threads * 2;
+    } // next(int,int):int
+
+    /** Runs the given number of workers and returns them once stopped. */
+    private static Worker[] run(String pipeline, Corpus corpus, int threads, long millis)
+        throws InterruptedException {
+        Control control = new Control();
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(createParser(pipeline), corpus, control, i);
+            workers[i].start();
+        }
+        Thread.sleep(millis);
+        control.fMeasuring = true;
+        Thread.sleep(millis);
+        control.fStopped = true;
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            if (workers[i].fError != null) {
+                throw new RuntimeException("worker failed", workers[i].fError);
+            }
+        }
+        return workers;
+    } // run(String,Corpus,int,long):Worker[]
+
+    /** Creates the parser of a pipeline. */
+    private static HTMLConfiguration createParser(String pipeline) {
+        HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setFeature("http://xml.org/sax/features/namespaces", false);
+        if ("filters".equals(pipeline)) {
+            parser.setFeature("http://cyberneko.org/html/features/augmentations", true);
+            ElementRemover remover = new ElementRemover();
+            String[] elements = {
+                "html", "head", "title", "body", "div", "span", "p", "a", "b", "i",
+                "ul", "ol", "li", "table", "tbody", "tr", "td", "th", "form", "input",
+            };
+            for (int i = 0; i < elements.length; i++) {
+                remover.acceptElement(elements[i], null);
+            }
+            remover.acceptElement("a", new String[] { "href" });
+            remover.removeElement("script");
+            remover.removeElement("style");
+            XMLDocumentFilter[] filters = {
+                remover, new Purifier(), new Writer(new NullWriter(), "UTF-8"),
+            };
+            parser.setProperty("http://cyberneko.org/html/properties/filters", filters);
+        }
+        else {
+            parser.setDocumentHandler(new ParserBenchmark.EventCounter());
+        }
+        return parser;
+    } // createParser(String):HTMLConfiguration
+
+    /** Rounds to two decimals. */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    } // round(double):double
+
+    //
+    // Classes
+    //
+
+    /** Phases shared by the workers of a run. */
+    static class Control {
+
+        /** True once the warmup is over. */
+        volatile boolean fMeasuring;
+
+        /** True once the measurement is over. */
+        volatile boolean fStopped;
+
+    } // class Control
+
+    /** Parses the corpus in a loop with its own parser. */
+    static class Worker extends Thread {
+
+        /** Parser. */
+        private final HTMLConfiguration fParser;
+
+        /** Corpus. */
+        private final Corpus fCorpus;
+
+        /** Phases. */
+        private final Control fControl;
+
+        /** Index of the next document. */
+        private int fIndex;
+
+        /** Documents parsed during the measurement. */
+        long fDocuments;
+
+        /** Bytes parsed during the measurement. */
+        long fBytes;
+
+        /** Failure, if any. */
+        Exception fError;
+
+        /** Constructs a worker starting at the given document. */
+        Worker(HTMLConfiguration parser, Corpus corpus, Control control, int index) {
+            super("parser-" + index);
+            fParser = parser;
+            fCorpus = corpus;
+            fControl = control;
+            fIndex = index % corpus.getLength();
+        } // <init>(HTMLConfiguration,Corpus,Control,int)
+
+        /** Parses until stopped. */
+        public void run() {
+            try {
+                while (!fControl.fStopped) {
+                    byte[] content = fCorpus.getContent(fIndex);
+                    fParser.parse(new XMLInputSource(null, fCorpus.getSystemId(fIndex), null,
+                                                     new ByteArrayInputStream(content), null));
+                    if (fControl.fMeasuring) {
+                        fDocuments++;
+                        fBytes += content.length;
+                    }
+                    fIndex = (fIndex + 1) % fCorpus.getLength();
+                }
+            }
+            catch (Exception e) {
+                fError = e;
+            }
+        } // run()
+
+    } // class Worker
+
+    /** Discards the characters written by the writer filter. */
+    static class NullWriter extends java.io.Writer {
+
+        public void write(char[] cbuf, int off, int len) {
+        } // write(char[],int,int)
+
+        public void flush() {
+        } // flush()
+
+        public void close() {
+        } // close()
+
+    } // class NullWriter
+
+} // class ThreadScalingReport
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A growth of the character buffer of the scanner, needed when a single
+ * token (e.g. a name) doesn't fit in the buffer.
+ */
+@Name("org.cyberneko.html.BufferResize")
+@Label("HTML Buffer Resize")
+@Category("NekoHTML")
+@Description("Growth of the character buffer of the scanner")
+@StackTrace(false)
+public class BufferResizeEvent extends Event {
+
+    @Label("System Identifier")
+    public String systemId;
+
+    @Label("Old Size")
+    @Description("Previous size of the buffer, in characters")
+    public int oldSize;
+
+    @Label("New Size")
+    @Description("New size of the buffer, in characters")
+    public int newSize;
+
+} // class BufferResizeEvent
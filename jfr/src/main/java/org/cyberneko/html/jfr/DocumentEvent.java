@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The parse of a document, from the start of the scan to the end of the
+ * document.
+ */
+@Name("org.cyberneko.html.Document")
+@Label("HTML Document")
+@Category("NekoHTML")
+@Description("Parse of an HTML document")
+public class DocumentEvent extends Event {
+
+    @Label("System Identifier")
+    public String systemId;
+
+    @Label("Initial Encoding")
+    public String encoding;
+
+    @Label("Characters")
+    public int characters;
+
+    @Label("Encoding Changes")
+    public int encodingChanges;
+
+    @Label("Replayed Bytes")
+    @DataAmount
+    public long replayedBytes;
+
+    @Label("Buffer Resizes")
+    public int bufferResizes;
+
+    @Label("Special Contents")
+    @Description("Number of SCRIPT, STYLE and other elements whose content is scanned as text")
+    public int specialContents;
+
+    @Label("Synthesized Elements")
+    public int synthesizedElements;
+
+    @Label("Discarded Elements")
+    public int discardedElements;
+
+} // class DocumentEvent
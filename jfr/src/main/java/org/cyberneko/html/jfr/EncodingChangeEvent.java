@@ -0,0 +1,51 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A change of encoding caused by the XML declaration or by a META element:
+ * the beginning of the document is read again with the new encoding.
+ */
+@Name("org.cyberneko.html.EncodingChange")
+@Label("HTML Encoding Change")
+@Category("NekoHTML")
+@Description("Change of encoding, the beginning of the document is read again")
+@StackTrace(false)
+public class EncodingChangeEvent extends Event {
+
+    @Label("System Identifier")
+    public String systemId;
+
+    @Label("Old Encoding")
+    public String oldEncoding;
+
+    @Label("New Encoding")
+    public String newEncoding;
+
+    @Label("Replayed Bytes")
+    @DataAmount
+    public int replayedBytes;
+
+} // class EncodingChangeEvent
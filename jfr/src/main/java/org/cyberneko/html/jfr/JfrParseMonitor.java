@@ -0,0 +1,206 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.jfr;
+
+import org.cyberneko.html.HTMLParseMonitor;
+
+/**
+ * Emits Java Flight Recorder events for the milestones of a parse:
+ * <ul>
+ * <li>{@link DocumentEvent}: the parse of a document, with the number of
+ *     encoding changes, buffer resizes and tag balancer recoveries;
+ * <li>{@link EncodingChangeEvent}: a change of encoding, with the number
+ *     of bytes read again;
+ * <li>{@link BufferResizeEvent}: a growth of the scanner buffer;
+ * <li>{@link SpecialContentEvent}: the scan of the content of a SCRIPT,
+ *     STYLE or other element scanned as text, when it is longer than the
+ *     threshold given to the constructor;
+ * <li>{@link TagBalancerRecoveryEvent}: an element synthesized or
+ *     discarded by the tag balancer, disabled by default.
+ * </ul>
+ * The monitor is registered on a parser configuration with:
+ * <pre>
+ * parser.setProperty("http://cyberneko.org/html/properties/parse-monitor", new JfrParseMonitor());
+ * </pre>
+ * When no recording is running, the events are disabled and cost a
+ * check of their state. A monitor holds the state of the document being
+ * parsed: use one instance per parser configuration.
+ */
+public class JfrParseMonitor implements HTMLParseMonitor {
+
+    //
+    // Constants
+    //
+
+    /** Default minimum length, in characters, of reported special contents. */
+    public static final int DEFAULT_SPECIAL_CONTENT_THRESHOLD = 64 * 1024;
+
+    //
+    // Data
+    //
+
+    /** Minimum length of the reported special contents. */
+    private final int fSpecialContentThreshold;
+
+    /** Event of the document being parsed. */
+    private DocumentEvent fDocument;
+
+    /** Event of the special content being scanned. */
+    private SpecialContentEvent fSpecialContent;
+
+    /** System identifier of the document being parsed. */
+    private String fSystemId;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a monitor reporting special contents of 64K characters or more. */
+    public JfrParseMonitor() {
+        this(DEFAULT_SPECIAL_CONTENT_THRESHOLD);
+    } // <init>()
+
+    /**
+     * Constructs a monitor.
+     *
+     * @param specialContentThreshold The minimum length, in characters, of
+     *                                the special contents to report.
+     */
+    public JfrParseMonitor(int specialContentThreshold) {
+        fSpecialContentThreshold = specialContentThreshold;
+    } // <init>(int)
+
+    //
+    // HTMLParseMonitor methods
+    //
+
+    /** Start document. */
+    public void startDocument(String systemId, String encoding) {
+        fSystemId = systemId;
+        DocumentEvent event = new DocumentEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            event.systemId = systemId;
+            event.encoding = encoding;
+            fDocument = event;
+        }
+        else {
+            fDocument = null;
+        }
+        fSpecialContent = null;
+    } // startDocument(String,String)
+
+    /** End document. */
+    public void endDocument(int characterCount) {
+        DocumentEvent event = fDocument;
+        if (event != null) {
+            fDocument = null;
+            event.characters = characterCount;
+            event.commit();
+        }
+        fSpecialContent = null;
+    } // endDocument(int)
+
+    /** Encoding changed. */
+    public void encodingChanged(String oldEncoding, String newEncoding, int replayedBytes) {
+        if (fDocument != null) {
+            fDocument.encodingChanges++;
+            fDocument.replayedBytes += replayedBytes;
+        }
+        EncodingChangeEvent event = new EncodingChangeEvent();
+        if (event.isEnabled()) {
+            event.systemId = fSystemId;
+            event.oldEncoding = oldEncoding;
+            event.newEncoding = newEncoding;
+            event.replayedBytes = replayedBytes;
+            event.commit();
+        }
+    } // encodingChanged(String,String,int)
+
+    /** Buffer resized. */
+    public void bufferResized(int oldSize, int newSize) {
+        if (fDocument != null) {
+            fDocument.bufferResizes++;
+        }
+        BufferResizeEvent event = new BufferResizeEvent();
+        if (event.isEnabled()) {
+            event.systemId = fSystemId;
+            event.oldSize = oldSize;
+            event.newSize = newSize;
+            event.commit();
+        }
+    } // bufferResized(int,int)
+
+    /** Start special content. */
+    public void startSpecialContent(String element) {
+        if (fDocument != null) {
+            fDocument.specialContents++;
+        }
+        SpecialContentEvent event = new SpecialContentEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            event.element = element;
+            fSpecialContent = event;
+        }
+    } // startSpecialContent(String)
+
+    /** End special content. */
+    public void endSpecialContent(String element, int length) {
+        SpecialContentEvent event = fSpecialContent;
+        if (event != null) {
+            fSpecialContent = null;
+            if (length >= fSpecialContentThreshold) {
+                event.systemId = fSystemId;
+                event.length = length;
+                event.commit();
+            }
+        }
+    } // endSpecialContent(String,int)
+
+    /** Synthesized element. */
+    public void synthesizedElement(String element) {
+        if (fDocument != null) {
+            fDocument.synthesizedElements++;
+        }
+        recovery(TagBalancerRecoveryEvent.SYNTHESIZED, element);
+    } // synthesizedElement(String)
+
+    /** Discarded element. */
+    public void discardedElement(String element, boolean end) {
+        if (fDocument != null) {
+            fDocument.discardedElements++;
+        }
+        recovery(end ? TagBalancerRecoveryEvent.DISCARDED_END
+                     : TagBalancerRecoveryEvent.DISCARDED_START, element);
+    } // discardedElement(String,boolean)
+
+    //
+    // Private methods
+    //
+
+    /** Emits a tag balancer recovery event. */
+    private void recovery(String action, String element) {
+        TagBalancerRecoveryEvent event = new TagBalancerRecoveryEvent();
+        if (event.isEnabled()) {
+            event.systemId = fSystemId;
+            event.action = action;
+            event.element = element;
+            event.commit();
+        }
+    } // recovery(String,String)
+
+} // class JfrParseMonitor
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The scan of the content of an element scanned as text (e.g. SCRIPT or
+ * STYLE) whose length exceeds the threshold of the monitor.
+ */
+@Name("org.cyberneko.html.SpecialContent")
+@Label("HTML Special Content")
+@Category("NekoHTML")
+@Description("Scan of a large SCRIPT, STYLE or other element scanned as text")
+@StackTrace(false)
+public class SpecialContentEvent extends Event {
+
+    @Label("System Identifier")
+    public String systemId;
+
+    @Label("Element")
+    public String element;
+
+    @Label("Length")
+    @Description("Length of the content, in characters")
+    public int length;
+
+} // class SpecialContentEvent
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A recovery action of the tag balancer: an element synthesized or
+ * discarded. Malformed documents can cause one event per element, so this
+ * event is disabled by default; the counts are always available in the
+ * {@link DocumentEvent}.
+ */
+@Name("org.cyberneko.html.TagBalancerRecovery")
+@Label("HTML Tag Balancer Recovery")
+@Category("NekoHTML")
+@Description("Element synthesized or discarded by the tag balancer")
+@Enabled(false)
+@StackTrace(false)
+public class TagBalancerRecoveryEvent extends Event {
+
+    /** Action of an element synthesized. */
+    public static final String SYNTHESIZED = "synthesized";
+
+    /** Action of a start element discarded. */
+    public static final String DISCARDED_START = "discarded start";
+
+    /** Action of an end element discarded. */
+    public static final String DISCARDED_END = "discarded end";
+
+    @Label("System Identifier")
+    public String systemId;
+
+    @Label("Action")
+    public String action;
+
+    @Label("Element")
+    public String element;
+
+} // class TagBalancerRecoveryEvent
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+/**
+ * Character classes tested for each character scanned: whitespace, name
+ * and entity name characters. The classes of the Latin-1 characters are
+ * looked up in a table, the other characters are tested with the
+ * <code>Character</code> methods.
+ */
+final class CharacterClasses {
+
+    //
+    // Constants
+    //
+
+    /** Whitespace, as defined by <code>Character.isWhitespace</code>. */
+    private static final byte WHITESPACE = 0x01;
+
+    /** Character of a strict name: a letter, a digit, '-', '.', ':' or '_'. */
+    private static final byte NAME = 0x02;
+
+    /** Character ending a loose name: whitespace, '=', '/' or '&gt;'. */
+    private static final byte NAME_END = 0x04;
+
+    /** Character of an entity name: an ASCII letter or digit, '-', '.' or '_'. */
+    private static final byte ENTITY = 0x08;
+
+    /** Classes of the Latin-1 characters. */
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        final String entity = "-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+        for (int i = 0; i < CLASSES.length; i++) {
+            char c = (char) i;
+            int classes = 0;
+            if (Character.isWhitespace(c)) {
+                classes |= WHITESPACE | NAME_END;
+            }
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '.' || c == ':' || c == '_') {
+                classes |= NAME;
+            }
+            if (c == '=' || c == '/' || c == '>') {
+                classes |= NAME_END;
+            }
+            if (entity.indexOf(c) != -1) {
+                classes |= ENTITY;
+            }
+            CLASSES[i] = (byte) classes;
+        }
+    }
+
+    //
+    // Constructors
+    //
+
+    /** This class is not instantiated. */
+    private CharacterClasses() {
+    } // <init>()
+
+    //
+    // Static methods
+    //
+
+    /** Returns true if the character is whitespace. */
+    static boolean isWhitespace(char c) {
+        if (c < 256) {
+            return (CLASSES[c] & WHITESPACE) != 0;
+        }
+        return Character.isWhitespace(c);
+    } // isWhitespace(char):boolean
+
+    /** Returns true if the character is part of a strict name. */
+    static boolean isNameChar(char c) {
+        if (c < 256) {
+            return (CLASSES[c] & NAME) != 0;
+        }
+        return Character.isLetterOrDigit(c);
+    } // isNameChar(char):boolean
+
+    /** Returns true if the character ends a loose name. */
+    static boolean isNameEnd(char c) {
+        if (c < 256) {
+            return (CLASSES[c] & NAME_END) != 0;
+        }
+        return Character.isWhitespace(c);
+    } // isNameEnd(char):boolean
+
+    /** Returns true if the character is part of an entity name. */
+    static boolean isEntityChar(int c) {
+        return c >= 0 && c < 256 && (CLASSES[c] & ENTITY) != 0;
+    } // isEntityChar(int):boolean
+
+} // class CharacterClasses
@@ -0,0 +1,683 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+
+/**
+ * Decodes the bytes of the most common encodings of web pages, UTF-8,
+ * US-ASCII and windows-1252, directly into the character buffer of the
+ * scanner, without the charset decoder machinery of an
+ * {@link InputStreamReader}. The other encodings are decoded with a
+ * <code>CharsetDecoder</code>, including ISO-8859-1 which recent JVMs
+ * decode with intrinsics faster than a Java loop.
+ * <p>
+ * The characters are the ones an <code>InputStreamReader</code> would
+ * return: malformed and unmappable bytes are replaced with U+FFFD in the
+ * same way the Java decoders do it.
+ * <p>
+ * The byte buffer of a single-byte encoding, where each byte is decoded
+ * into one character, is as large as the initial character buffer of the
+ * scanner, up to the size of the other byte buffers: the bytes are
+ * widened as soon as they are read, and the bytes and characters of a
+ * read stay together in the cache.
+ * <p>
+ * A {@link Pool} keeps a reader per encoding with its byte buffer and
+ * decoder, so that a parser doesn't create them for each document.
+ *
+ * @see #createReader(InputStream,String)
+ */
+final class DecodingReader
+    extends Reader {
+
+    //
+    // Constants
+    //
+
+    /** Size of the byte buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Default size of the byte buffer of a single-byte encoding, the
+     * default size of the character buffer of the scanner.
+     */
+    private static final int SINGLE_BYTE_BUFFER_SIZE = 2048;
+
+    /** Replacement character. */
+    private static final char REPLACEMENT = '\uFFFD';
+
+    /** UTF-8. */
+    private static final int UTF_8 = 0;
+
+    /** US-ASCII. */
+    private static final int US_ASCII = 1;
+
+    /** windows-1252. */
+    private static final int WINDOWS_1252 = 2;
+
+    /** Another encoding, decoded by a charset decoder. */
+    private static final int CHARSET = 3;
+
+    /**
+     * Names of the decoded encodings, indexed by type, followed by their
+     * aliases. The first name is the one returned by the
+     * <code>getEncoding</code> method of an <code>InputStreamReader</code>.
+     */
+    private static final String[][] ENCODINGS = {
+        { "UTF8", "UTF-8" },
+        { "ASCII", "US-ASCII" },
+        { "Cp1252", "windows-1252" },
+    };
+
+    /** Characters of the bytes 0x80 to 0xFF in windows-1252. */
+    private static final char[] WINDOWS_1252_HIGH = new char[128];
+
+    /** Characters of the bytes 0x80 to 0xFF in US-ASCII. */
+    private static final char[] US_ASCII_HIGH = new char[128];
+
+    static {
+        final String c1 =
+            "\u20AC\uFFFD\u201A\u0192\u201E\u2026\u2020\u2021"
+            + "\u02C6\u2030\u0160\u2039\u0152\uFFFD\u017D\uFFFD"
+            + "\uFFFD\u2018\u2019\u201C\u201D\u2022\u2013\u2014"
+            + "\u02DC\u2122\u0161\u203A\u0153\uFFFD\u017E\u0178";
+        for (int i = 0; i < 128; i++) {
+            WINDOWS_1252_HIGH[i] = i < 32 ? c1.charAt(i) : (char) (0x80 + i);
+            US_ASCII_HIGH[i] = REPLACEMENT;
+        }
+    }
+
+    //
+    // Data
+    //
+
+    /** Byte stream, or null once closed. */
+    private InputStream fStream;
+
+    /** Encoding type. */
+    private final int fType;
+
+    /** Historical name of the encoding. */
+    private final String fEncoding;
+
+    /** Charset decoder, for the other encodings. */
+    private final CharsetDecoder fDecoder;
+
+    /** Byte buffer. */
+    private final byte[] fBytes;
+
+    /** Byte buffer of the charset decoder, wrapping the byte array. */
+    private ByteBuffer fByteBuffer;
+
+    /** Character buffer of the charset decoder, wrapping the last array read. */
+    private CharBuffer fCharBuffer;
+
+    /** True once the charset decoder has been flushed. */
+    private boolean fFlushed;
+
+    /** Offset of the next byte to decode. */
+    private int fOffset;
+
+    /** Number of bytes in the buffer. */
+    private int fLength;
+
+    /** True once the end of the byte stream has been reached. */
+    private boolean fEndOfStream;
+
+    /** Low surrogate that didn't fit in the last read, or -1. */
+    private int fPending = -1;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs a reader of the given encoding type. */
+    private DecodingReader(InputStream stream, int type, int bufferSize) {
+        fStream = stream;
+        fType = type;
+        fEncoding = ENCODINGS[type][0];
+        fDecoder = null;
+        fBytes = new byte[bufferSize];
+    } // <init>(InputStream,int,int)
+
+    /** Constructs a reader decoding the given charset. */
+    private DecodingReader(InputStream stream, Charset charset, String encoding,
+                           int bufferSize) {
+        fStream = stream;
+        fType = CHARSET;
+        fEncoding = encoding;
+        fDecoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        fBytes = new byte[bufferSize];
+        fByteBuffer = ByteBuffer.wrap(fBytes);
+    } // <init>(InputStream,Charset,String,int)
+
+    //
+    // Public static methods
+    //
+
+    /**
+     * Returns a reader of the given stream.
+     *
+     * @param stream   The byte stream.
+     * @param encoding The Java encoding name.
+     * @throws UnsupportedEncodingException if the encoding isn't supported.
+     */
+    public static Reader createReader(InputStream stream, String encoding)
+        throws UnsupportedEncodingException {
+        return createReader(stream, encoding, SINGLE_BYTE_BUFFER_SIZE);
+    } // createReader(InputStream,String):Reader
+
+    /**
+     * Returns a reader of the given stream.
+     *
+     * @param stream     The byte stream.
+     * @param encoding   The Java encoding name.
+     * @param bufferSize The size of the character buffer of the scanner,
+     *                   the size of the byte buffer of a single-byte
+     *                   encoding.
+     * @throws UnsupportedEncodingException if the encoding isn't supported.
+     */
+    public static Reader createReader(InputStream stream, String encoding, int bufferSize)
+        throws UnsupportedEncodingException {
+        int type = getType(encoding);
+        if (type != CHARSET) {
+            return new DecodingReader(stream, type, getBufferSize(type != UTF_8, bufferSize));
+        }
+        Charset charset = getCharset(encoding);
+        return new DecodingReader(stream, charset, getHistoricalName(encoding),
+                                  getBufferSize(isSingleByte(charset), bufferSize));
+    } // createReader(InputStream,String,int):Reader
+
+    /**
+     * Returns the historical name of the encoding of a reader returned by
+     * {@link #createReader(InputStream,String)}, the name returned by an
+     * <code>InputStreamReader</code>.
+     */
+    public static String getEncoding(Reader reader) {
+        if (reader instanceof DecodingReader) {
+            return ((DecodingReader) reader).fEncoding;
+        }
+        return ((InputStreamReader) reader).getEncoding();
+    } // getEncoding(Reader):String
+
+    //
+    // Reader methods
+    //
+
+    /** Reads characters into a portion of an array. */
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int count = 0;
+        if (fPending != -1) {
+            buffer[offset] = (char) fPending;
+            fPending = -1;
+            if (length == 1) {
+                return 1;
+            }
+            count = 1;
+        }
+        while (true) {
+            count += decode(buffer, offset + count, length - count);
+            if (count > 0) {
+                return count;
+            }
+            if (!fill()) {
+                if (fType == CHARSET) {
+                    // the decoder handles the end of the input
+                    if (fFlushed) {
+                        return -1;
+                    }
+                    continue;
+                }
+                if (fOffset < fLength) {
+                    // truncated sequence at the end of the stream
+                    fOffset = fLength;
+                    buffer[offset] = REPLACEMENT;
+                    return 1;
+                }
+                return -1;
+            }
+        }
+    } // read(char[],int,int):int
+
+    /** Closes the stream. */
+    public void close() throws IOException {
+        if (fStream != null) {
+            fStream.close();
+            fStream = null;
+        }
+    } // close()
+
+    //
+    // Package methods
+    //
+
+    /** Resets the reader to read the given stream. */
+    void reset(InputStream stream) {
+        fStream = stream;
+        fOffset = fLength = 0;
+        fEndOfStream = false;
+        fPending = -1;
+        if (fDecoder != null) {
+            fDecoder.reset();
+            fFlushed = false;
+        }
+    } // reset(InputStream)
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns true if each character of the charset is encoded with one
+     * byte, e.g. ISO-8859-1 or KOI8-R.
+     */
+    private static boolean isSingleByte(Charset charset) {
+        return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f;
+    } // isSingleByte(Charset):boolean
+
+    /**
+     * Moves the bytes left to the beginning of the buffer and reads more
+     * bytes. Returns false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+        if (fEndOfStream) {
+            return false;
+        }
+        if (fStream == null) {
+            throw new IOException("Stream closed");
+        }
+        if (fOffset > 0) {
+            System.arraycopy(fBytes, fOffset, fBytes, 0, fLength - fOffset);
+            fLength -= fOffset;
+            fOffset = 0;
+        }
+        int count = fStream.read(fBytes, fLength, fBytes.length - fLength);
+        if (count == -1) {
+            fEndOfStream = true;
+            return false;
+        }
+        fLength += count;
+        return true;
+    } // fill():boolean
+
+    /** Decodes the bytes of the buffer and returns the number of characters. */
+    private int decode(char[] buffer, int offset, int length) {
+        switch (fType) {
+            case UTF_8: {
+                return decodeUTF8(buffer, offset, length);
+            }
+            case US_ASCII:
+            case WINDOWS_1252: {
+                return decodeSingleByte(buffer, offset, length);
+            }
+            case CHARSET: {
+                return decodeCharset(buffer, offset, length);
+            }
+        }
+        throw new IllegalStateException();
+    } // decode(char[],int,int):int
+
+    /**
+     * Decodes with the charset decoder. A character that doesn't fit,
+     * i.e. the low surrogate of a pair when a single character is read,
+     * is kept for the next read.
+     */
+    private int decodeCharset(char[] buffer, int offset, int length) {
+        if (fFlushed) {
+            return 0;
+        }
+        CharBuffer out = fCharBuffer;
+        if (out == null || out.array() != buffer) {
+            out = fCharBuffer = CharBuffer.wrap(buffer);
+        }
+        out.limit(offset + length).position(offset);
+        int count = decodeCharset(out);
+        if (count == 0 && length == 1 && !fFlushed) {
+            char[] pair = new char[2];
+            count = decodeCharset(CharBuffer.wrap(pair));
+            if (count > 0) {
+                buffer[offset] = pair[0];
+                if (count == 2) {
+                    fPending = pair[1];
+                }
+                count = 1;
+            }
+        }
+        return count;
+    } // decodeCharset(char[],int,int):int
+
+    /** Decodes the buffered bytes into the given buffer. */
+    private int decodeCharset(CharBuffer out) {
+        final int start = out.position();
+        final ByteBuffer in = fByteBuffer;
+        in.limit(fLength).position(fOffset);
+        CoderResult result = fDecoder.decode(in, out, fEndOfStream);
+        fOffset = in.position();
+        if (fEndOfStream && result.isUnderflow()) {
+            if (fDecoder.flush(out).isUnderflow()) {
+                fFlushed = true;
+            }
+        }
+        return out.position() - start;
+    } // decodeCharset(CharBuffer):int
+
+    /** Decodes US-ASCII or windows-1252. */
+    private int decodeSingleByte(char[] buffer, int offset, int length) {
+        final byte[] bytes = fBytes;
+        final char[] high = fType == WINDOWS_1252 ? WINDOWS_1252_HIGH : US_ASCII_HIGH;
+        final int count = Math.min(length, fLength - fOffset);
+        final int sp = fOffset;
+        for (int i = 0; i < count; i++) {
+            int b = bytes[sp + i];
+            buffer[offset + i] = b >= 0 ? (char) b : high[b & 0x7F];
+        }
+        fOffset = sp + count;
+        return count;
+    } // decodeSingleByte(char[],int,int):int
+
+    /**
+     * Decodes UTF-8. The malformed sequences are replaced like the Java
+     * UTF-8 decoder does: a sequence with an invalid second byte is
+     * replaced byte per byte, a sequence with an invalid third or fourth
+     * byte is replaced as a whole up to the invalid byte, an encoded
+     * surrogate is replaced as a whole.
+     */
+    private int decodeUTF8(char[] buffer, int offset, int length) {
+        final byte[] bytes = fBytes;
+        final int sl = fLength;
+        final int dl = offset + length;
+        int sp = fOffset;
+        int dp = offset;
+        while (dp < dl && sp < sl) {
+            int b1 = bytes[sp];
+
+            // US-ASCII
+            if (b1 >= 0) {
+                int end = Math.min(sl, sp + dl - dp);
+                do {
+                    buffer[dp++] = (char) b1;
+                    if (++sp == end) {
+                        break;
+                    }
+                    b1 = bytes[sp];
+                } while (b1 >= 0);
+                continue;
+            }
+
+            b1 &= 0xFF;
+            int available = sl - sp;
+            int malformed = 0;
+            if (b1 >= 0xC2 && b1 <= 0xDF) {
+                if (available < 2) {
+                    break;
+                }
+                int b2 = bytes[sp + 1];
+                if (isContinuation(b2)) {
+                    buffer[dp++] = (char) (((b1 & 0x1F) << 6) | (b2 & 0x3F));
+                    sp += 2;
+                    continue;
+                }
+                malformed = 1;
+            }
+            else if (b1 >= 0xE0 && b1 <= 0xEF) {
+                if (available < 3) {
+                    if (available > 1 && isMalformed3(b1, bytes[sp + 1])) {
+                        malformed = 1;
+                    }
+                    else {
+                        break;
+                    }
+                }
+                else {
+                    int b2 = bytes[sp + 1];
+                    int b3 = bytes[sp + 2];
+                    if (isMalformed3(b1, b2)) {
+                        malformed = 1;
+                    }
+                    else if (!isContinuation(b3)) {
+                        malformed = 2;
+                    }
+                    else {
+                        char c = (char) (((b1 & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+                        if (c >= '\uD800' && c <= '\uDFFF') {
+                            malformed = 3;
+                        }
+                        else {
+                            buffer[dp++] = c;
+                            sp += 3;
+                            continue;
+                        }
+                    }
+                }
+            }
+            else if (b1 >= 0xF0 && b1 <= 0xF4) {
+                if (available < 4) {
+                    if (available > 1 && isMalformed4(b1, bytes[sp + 1] & 0xFF)) {
+                        malformed = 1;
+                    }
+                    else if (available > 2 && !isContinuation(bytes[sp + 2])) {
+                        malformed = 2;
+                    }
+                    else {
+                        break;
+                    }
+                }
+                else {
+                    int b2 = bytes[sp + 1] & 0xFF;
+                    int b3 = bytes[sp + 2];
+                    int b4 = bytes[sp + 3];
+                    if (isMalformed4(b1, b2)) {
+                        malformed = 1;
+                    }
+                    else if (!isContinuation(b3)) {
+                        malformed = 2;
+                    }
+                    else if (!isContinuation(b4)) {
+                        malformed = 3;
+                    }
+                    else {
+                        int uc = ((b1 & 0x07) << 18) | ((b2 & 0x3F) << 12)
+                               | ((b3 & 0x3F) << 6) | (b4 & 0x3F);
+                        uc -= 0x10000;
+                        buffer[dp++] = (char) (0xD800 | (uc >> 10));
+                        char low = (char) (0xDC00 | (uc & 0x3FF));
+                        if (dp < dl) {
+                            buffer[dp++] = low;
+                        }
+                        else {
+                            fPending = low;
+                        }
+                        sp += 4;
+                        continue;
+                    }
+                }
+            }
+            else {
+                malformed = 1;
+            }
+            buffer[dp++] = REPLACEMENT;
+            sp += malformed;
+        }
+        fOffset = sp;
+        return dp - offset;
+    } // decodeUTF8(char[],int,int):int
+
+    //
+    // Private static methods
+    //
+
+    /** Returns the type of the given encoding, CHARSET if not decoded here. */
+    private static int getType(String encoding) {
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            for (int j = 0; j < ENCODINGS[i].length; j++) {
+                if (ENCODINGS[i][j].equalsIgnoreCase(encoding)) {
+                    return i;
+                }
+            }
+        }
+        return CHARSET;
+    } // getType(String):int
+
+    /**
+     * Returns the charset of the given encoding, accepting the same names
+     * as an <code>InputStreamReader</code>.
+     *
+     * @throws UnsupportedEncodingException if the encoding isn't supported,
+     *         or its name is illegal.
+     */
+    private static Charset getCharset(String encoding)
+        throws UnsupportedEncodingException {
+        try {
+            if (Charset.isSupported(encoding)) {
+                return Charset.forName(encoding);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            // illegal or null name
+        }
+        throw new UnsupportedEncodingException(encoding);
+    } // getCharset(String):Charset
+
+    /** Returns the name of the encoding given by an <code>InputStreamReader</code>. */
+    private static String getHistoricalName(String encoding)
+        throws UnsupportedEncodingException {
+        return new InputStreamReader(new ByteArrayInputStream(new byte[0]), encoding).getEncoding();
+    } // getHistoricalName(String):String
+
+    /**
+     * Returns the size of the byte buffer of an encoding, given the size of
+     * the character buffer of the scanner.
+     */
+    private static int getBufferSize(boolean singleByte, int bufferSize) {
+        return singleByte ? Math.max(1, Math.min(bufferSize, BUFFER_SIZE)) : BUFFER_SIZE;
+    } // getBufferSize(boolean,int):int
+
+    /** Returns true if the byte is a continuation byte. */
+    private static boolean isContinuation(int b) {
+        return (b & 0xC0) == 0x80;
+    } // isContinuation(int):boolean
+
+    /** Returns true if the second byte of a three byte sequence is invalid. */
+    private static boolean isMalformed3(int b1, int b2) {
+        return (b1 == 0xE0 && (b2 & 0xE0) == 0x80) || !isContinuation(b2);
+    } // isMalformed3(int,int):boolean
+
+    /**
+     * Returns true if the second byte of a four byte sequence is invalid,
+     * including the overlong encodings and the code points above U+10FFFF.
+     */
+    private static boolean isMalformed4(int b1, int b2) {
+        return (b1 == 0xF0 && (b2 < 0x90 || b2 > 0xBF))
+            || (b1 == 0xF4 && (b2 & 0xF0) != 0x80)
+            || !isContinuation(b2);
+    } // isMalformed4(int,int):boolean
+
+    //
+    // Classes
+    //
+
+    /**
+     * A reader for each encoding used by a parser. The reader of an
+     * encoding is reset for each document: the parser uses the readers of
+     * a pool one document at a time.
+     * <p>
+     * The readers are keyed by the canonical name of their charset, so
+     * that the aliases of an encoding share a reader, and their number is
+     * bounded: once the pool is full, the readers of other encodings
+     * aren't kept. Whether a charset is single-byte is also kept, for
+     * each of the charsets used.
+     */
+    static final class Pool {
+
+        /** Maximum number of readers. */
+        private static final int MAX_READERS = 16;
+
+        /** The readers, by canonical charset name. */
+        private final HashMap fReaders = new HashMap();
+
+        /** True if a charset is single-byte, by canonical charset name. */
+        private final HashMap fSingleByte = new HashMap();
+
+        /**
+         * Returns the reader of the given encoding, reading the given
+         * stream. The previous stream of the reader is dropped.
+         *
+         * @param stream     The byte stream.
+         * @param encoding   The Java encoding name.
+         * @param bufferSize The size of the character buffer of the
+         *                   scanner, the size of the byte buffer of a
+         *                   single-byte encoding.
+         * @throws UnsupportedEncodingException if the encoding isn't supported.
+         */
+        public Reader getReader(InputStream stream, String encoding, int bufferSize)
+            throws UnsupportedEncodingException {
+            int type = getType(encoding);
+            Charset charset = type == CHARSET ? getCharset(encoding) : null;
+            String key = charset == null ? ENCODINGS[type][1] : charset.name();
+            int size = getBufferSize(charset == null ? type != UTF_8 : isSingleByte(charset), bufferSize);
+            DecodingReader reader = (DecodingReader) fReaders.get(key);
+            if (reader != null && reader.fBytes.length == size) {
+                reader.reset(stream);
+                return reader;
+            }
+            if (charset == null) {
+                reader = new DecodingReader(stream, type, size);
+            }
+            else {
+                reader = new DecodingReader(stream, charset, getHistoricalName(encoding), size);
+            }
+            if (fReaders.containsKey(key) || fReaders.size() < MAX_READERS) {
+                fReaders.put(key, reader);
+            }
+            return reader;
+        } // getReader(InputStream,String,int):Reader
+
+        /** Returns the number of readers kept. */
+        int size() {
+            return fReaders.size();
+        } // size():int
+
+        /** Returns true if the given charset is single-byte, once computed. */
+        private boolean isSingleByte(Charset charset) {
+            Boolean singleByte = (Boolean) fSingleByte.get(charset.name());
+            if (singleByte == null) {
+                singleByte = DecodingReader.isSingleByte(charset) ? Boolean.TRUE : Boolean.FALSE;
+                fSingleByte.put(charset.name(), singleByte);
+            }
+            return singleByte.booleanValue();
+        } // isSingleByte(Charset):boolean
+
+    } // class Pool
+
+} // class DecodingReader
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.CharArrayReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * An input source for a document already decoded in memory. The
+ * {@link HTMLScanner} scans the characters in place instead of reading
+ * them in chunks through a character stream: the array is used as the
+ * buffer of the scanner and is never modified.
+ * <p>
+ * Character arrays and array-backed <code>CharBuffer</code>s are
+ * scanned without copy. Other character sequences, e.g. strings, are
+ * copied once into an array.
+ * <p>
+ * Components other than the scanner see the characters as a character
+ * stream.
+ */
+public class HTMLCharArrayInputSource
+    extends XMLInputSource {
+
+    //
+    // Data
+    //
+
+    /** The characters. */
+    private final char[] fCharacters;
+
+    /** The offset of the first character. */
+    private final int fOffset;
+
+    /** The number of characters. */
+    private final int fLength;
+
+    //
+    // Constructors
+    //
+
+    /** Constructs an input source for the given characters. */
+    public HTMLCharArrayInputSource(String publicId, String systemId, String baseSystemId,
+                                    char[] characters, int offset, int length) {
+        super(publicId, systemId, baseSystemId);
+        if (offset < 0 || length < 0 || offset + length > characters.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                                                + ", array length " + characters.length);
+        }
+        fCharacters = characters;
+        fOffset = offset;
+        fLength = length;
+    } // <init>(String,String,String,char[],int,int)
+
+    /** Constructs an input source for the given character sequence. */
+    public HTMLCharArrayInputSource(String publicId, String systemId, String baseSystemId,
+                                    CharSequence characters) {
+        super(publicId, systemId, baseSystemId);
+        if (characters instanceof CharBuffer && ((CharBuffer) characters).hasArray()) {
+            CharBuffer buffer = (CharBuffer) characters;
+            fCharacters = buffer.array();
+            fOffset = buffer.arrayOffset() + buffer.position();
+            fLength = buffer.remaining();
+        }
+        else {
+            fCharacters = characters.toString().toCharArray();
+            fOffset = 0;
+            fLength = fCharacters.length;
+        }
+    } // <init>(String,String,String,CharSequence)
+
+    //
+    // Public methods
+    //
+
+    /** Returns the array holding the characters. */
+    public char[] getCharacters() {
+        return fCharacters;
+    } // getCharacters():char[]
+
+    /** Returns the offset of the first character in the array. */
+    public int getOffset() {
+        return fOffset;
+    } // getOffset():int
+
+    /** Returns the number of characters. */
+    public int getLength() {
+        return fLength;
+    } // getLength():int
+
+    //
+    // XMLInputSource methods
+    //
+
+    /** Returns a reader of the characters, unless another one was set. */
+    public Reader getCharacterStream() {
+        if (super.getCharacterStream() == null) {
+            setCharacterStream(new CharArrayReader(fCharacters, fOffset, fLength));
+        }
+        return super.getCharacterStream();
+    } // getCharacterStream():Reader
+
+} // class HTMLCharArrayInputSource
@@ -27,6 +27,7 @@ import org.cyberneko.html.filters.NamespaceBinder;
 import org.cyberneko.html.xercesbridge.XercesBridge;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.MessageFormat;
 import java.util.Locale;
 import java.util.MissingResourceException;
@@ -55,6 +56,7 @@ import java.util.Vector;
  * <li>http://cyberneko.org/html/properties/names/attrs
  * <li>http://cyberneko.org/html/properties/filters
  * <li>http://cyberneko.org/html/properties/error-reporter
+ * <li>http://cyberneko.org/html/properties/pipeline-timings
  * <li><i>and</i>
  * <li>the properties supported by the scanner and tag balancer.
  * </ul>
@@ -64,6 +66,7 @@ import java.util.Vector;
  * @see HTMLScanner
  * @see HTMLTagBalancer
  * @see HTMLErrorReporter
+ * @see HTMLPipelineTimings
  * @author Andy Clark
  * @version $Id: HTMLConfiguration.java,v 1.9 2005/02/14 03:56:54 andyc Exp $
  */
@@ -106,6 +109,12 @@ public class HTMLConfiguration
     /** Error reporter. */
     protected static final String ERROR_REPORTER = "http://cyberneko.org/html/properties/error-reporter";
 
+    /** Pipeline timings. */
+    protected static final String PIPELINE_TIMINGS = "http://cyberneko.org/html/properties/pipeline-timings";
+
+    /** Parse statistics. */
+    protected static final String STATISTICS = "http://cyberneko.org/html/properties/statistics";
+
     // other
 
     /** Error domain. */
@@ -150,6 +159,9 @@ public class HTMLConfiguration
      */
     protected boolean fCloseStream;
 
+    /** Pipeline timings, if the pipeline is instrumented. */
+    protected HTMLPipelineTimings fPipelineTimings;
+
     // components
 
     /** Components. */
@@ -171,6 +183,9 @@ public class HTMLConfiguration
     /** Error reporter. */
     protected final HTMLErrorReporter fErrorReporter = new ErrorReporter();
 
+    /** Parse statistics. */
+    protected final HTMLParseStatistics fStatistics = new HTMLParseStatistics();
+
     // HACK: workarounds Xerces 2.0.x problems
 
     /** Parser version is Xerces 2.0.0. */
@@ -188,10 +203,13 @@ public class HTMLConfiguration
 
     static {
         try {
+            // NOTE: The field is static, there is no need to look up and
+            //       instantiate the class through the ObjectFactory, which
+            //       searches the system properties, the xerces.properties
+            //       file and the services of the class path.
             String VERSION = "org.apache.xerces.impl.Version";
-            Object version = ObjectFactory.createObject(VERSION, VERSION);
-            java.lang.reflect.Field field = version.getClass().getField("fVersion");
-            String versionStr = String.valueOf(field.get(version));
+            java.lang.reflect.Field field = Class.forName(VERSION).getField("fVersion");
+            String versionStr = String.valueOf(field.get(null));
             XERCES_2_0_0 = versionStr.equals("Xerces-J 2.0.0");
             XERCES_2_0_1 = versionStr.equals("Xerces-J 2.0.1");
             XML4J_4_0_x = versionStr.startsWith("XML4J 4.0.");
@@ -270,11 +288,14 @@ public class HTMLConfiguration
             NAMES_ATTRS,
             FILTERS,
             ERROR_REPORTER,
+            PIPELINE_TIMINGS,
+            STATISTICS,
         };
         addRecognizedProperties(recognizedProperties);
         setProperty(NAMES_ELEMS, "upper");
         setProperty(NAMES_ATTRS, "lower");
         setProperty(ERROR_REPORTER, fErrorReporter);
+        setProperty(STATISTICS, fStatistics);
         
         // HACK: Xerces 2.0.0
         if (XERCES_2_0_0) {
@@ -500,6 +521,18 @@ public class HTMLConfiguration
         return fLocale;
     } // getLocale():Locale
 
+    /**
+     * Returns the statistics of the current or last parsed document:
+     * the value of the <code>http://cyberneko.org/html/properties/statistics</code>
+     * property.
+     *
+     * @return a {@link org.cyberneko.html.HTMLParseStatistics} object or
+     *         null if statistics are not collected.
+     */
+    public HTMLParseStatistics getParseStatistics() {
+        return (HTMLParseStatistics)getProperty(STATISTICS);
+    } // getParseStatistics():HTMLParseStatistics
+
     /**
      * {@inheritDoc}
      *
@@ -529,6 +562,13 @@ public class HTMLConfiguration
     public void setInputSource(XMLInputSource inputSource)
         throws XMLConfigurationException, IOException {
         reset();
+        if (fPipelineTimings != null) {
+            fPipelineTimings.addDocument();
+        }
+        HTMLParseStatistics statistics = getParseStatistics();
+        if (statistics != null) {
+            statistics.reset();
+        }
         fCloseStream = inputSource.getByteStream() == null &&
                        inputSource.getCharacterStream() == null;
         fDocumentScanner.setInputSource(inputSource);
@@ -547,7 +587,15 @@ public class HTMLConfiguration
      */
     public boolean parse(boolean complete) throws XNIException, IOException {
         try {
-            boolean more = fDocumentScanner.scanDocument(complete);
+            boolean more;
+            if (fPipelineTimings != null) {
+                long start = System.nanoTime();
+                more = fDocumentScanner.scanDocument(complete);
+                fPipelineTimings.addTotalTime(System.nanoTime() - start);
+            }
+            else {
+                more = fDocumentScanner.scanDocument(complete);
+            }
             if (!more) {
                 cleanup();
             }
@@ -571,6 +619,69 @@ public class HTMLConfiguration
     public void cleanup() {
         fDocumentScanner.cleanup(fCloseStream);
     } // cleanup()
+
+    //
+    // Push parsing
+    //
+
+    /**
+     * Starts parsing a document whose bytes are pushed by the application,
+     * e.g. as they arrive from a non-blocking connection. The bytes are
+     * given with {@link #push(byte[],int,int)} or {@link #push(ByteBuffer)},
+     * which parse as much as possible and return without waiting for more
+     * bytes, and the end of the document with {@link #endPush()}. The
+     * events of a token are sent once the token is completely pushed.
+     * <p>
+     * The byte stream and the character stream of the input source are
+     * ignored: it only gives the identifiers of the document and its
+     * encoding, if known.
+     *
+     * @param inputSource The input source of the document.
+     * @exception XMLConfigurationException Thrown if there is a
+     *                        configuration error when initializing the
+     *                        parser.
+     */
+    public void startPush(XMLInputSource inputSource) throws XMLConfigurationException {
+        reset();
+        if (fPipelineTimings != null) {
+            fPipelineTimings.addDocument();
+        }
+        HTMLParseStatistics statistics = getParseStatistics();
+        if (statistics != null) {
+            statistics.reset();
+        }
+        fCloseStream = false;
+        fDocumentScanner.startPush(inputSource);
+    } // startPush(XMLInputSource)
+
+    /**
+     * Parses the given bytes of a pushed document, as far as possible.
+     *
+     * @see #startPush(XMLInputSource)
+     */
+    public void push(byte[] bytes, int offset, int length) throws XNIException, IOException {
+        push(ByteBuffer.wrap(bytes, offset, length));
+    } // push(byte[],int,int)
+
+    /**
+     * Parses the remaining bytes of the given buffer, the next bytes of a
+     * pushed document, as far as possible.
+     *
+     * @see #startPush(XMLInputSource)
+     */
+    public void push(ByteBuffer bytes) throws XNIException, IOException {
+        scanPushedBytes(bytes);
+    } // push(ByteBuffer)
+
+    /**
+     * Parses the rest of a pushed document: all its bytes were pushed.
+     *
+     * @see #startPush(XMLInputSource)
+     */
+    public void endPush() throws XNIException, IOException {
+        scanPushedBytes(null);
+        cleanup();
+    } // endPush()
     
     //
     // Protected methods
@@ -625,14 +736,18 @@ public class HTMLConfiguration
         }
 
         // configure pipeline
+        fPipelineTimings = (HTMLPipelineTimings)getProperty(PIPELINE_TIMINGS);
+        if (fPipelineTimings != null) {
+            fPipelineTimings.startPipeline(fDocumentScanner);
+        }
         XMLDocumentSource lastSource = fDocumentScanner;
         if (getFeature(NAMESPACES)) {
-            lastSource.setDocumentHandler(fNamespaceBinder);
+            connect(lastSource, fNamespaceBinder);
             fNamespaceBinder.setDocumentSource(fTagBalancer);
             lastSource = fNamespaceBinder;
         }
         if (getFeature(BALANCE_TAGS)) {
-            lastSource.setDocumentHandler(fTagBalancer);
+            connect(lastSource, fTagBalancer);
             fTagBalancer.setDocumentSource(fDocumentScanner);
             lastSource = fTagBalancer;
         }
@@ -641,14 +756,60 @@ public class HTMLConfiguration
             for (int i = 0; i < filters.length; i++) {
                 XMLDocumentFilter filter = filters[i];
                 XercesBridge.getInstance().XMLDocumentFilter_setDocumentSource(filter, lastSource);
-                lastSource.setDocumentHandler(filter);
+                connect(lastSource, filter);
                 lastSource = filter;
             }
         }
-        lastSource.setDocumentHandler(fDocumentHandler);
+        connect(lastSource, fDocumentHandler);
 
     } // reset()
 
+    /**
+     * Connects a stage of the pipeline to the next one, inserting a probe
+     * between them if pipeline timings are collected.
+     *
+     * @param source  The source of the events.
+     * @param handler The handler of the events.
+     */
+    protected void connect(XMLDocumentSource source, XMLDocumentHandler handler) {
+        if (fPipelineTimings != null && handler != null) {
+            XMLDocumentFilter probe = fPipelineTimings.addStage(handler);
+            probe.setDocumentHandler(handler);
+            source.setDocumentHandler(probe);
+        }
+        else {
+            source.setDocumentHandler(handler);
+        }
+    } // connect(XMLDocumentSource,XMLDocumentHandler)
+
+    //
+    // Private methods
+    //
+
+    /** Scans pushed bytes, or the end of the document if null. */
+    private void scanPushedBytes(ByteBuffer bytes) throws XNIException, IOException {
+        try {
+            long start = fPipelineTimings != null ? System.nanoTime() : 0;
+            if (bytes != null) {
+                fDocumentScanner.push(bytes);
+            }
+            else {
+                fDocumentScanner.endPush();
+            }
+            if (fPipelineTimings != null) {
+                fPipelineTimings.addTotalTime(System.nanoTime() - start);
+            }
+        }
+        catch (XNIException e) {
+            cleanup();
+            throw e;
+        }
+        catch (IOException e) {
+            cleanup();
+            throw e;
+        }
+    } // scanPushedBytes(ByteBuffer)
+
     //
     // Interfaces
     //
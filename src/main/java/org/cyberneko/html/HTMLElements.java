@@ -16,6 +16,9 @@
 
 package org.cyberneko.html;
 
+import java.util.HashMap;
+import java.util.Locale;
+
 /**
  * Collection of HTML element information.
  *
@@ -283,6 +286,15 @@ public class HTMLElements {
     /** Element information as a contiguous list. */
     protected static final ElementList ELEMENTS = new ElementList();
 
+    /**
+     * Element information by upper and lower case name, so that the
+     * names as scanned are found in one lookup.
+     */
+    private static final HashMap ELEMENTS_BY_NAME = new HashMap();
+
+    /** Lower case names of the elements, indexed by element code. */
+    private static final String[] LOWER_CASE_NAMES = new String[UNKNOWN];
+
     /** No such element. */
     public static final Element NO_SUCH_ELEMENT = new Element(UNKNOWN, "",  Element.CONTAINER, new short[]{BODY,HEAD}/*HTML*/, null);
 
@@ -597,6 +609,15 @@ public class HTMLElements {
         }
         ELEMENTS.addElement(NO_SUCH_ELEMENT);
 
+        // index the case forms of the names
+        for (int i = 0; i < UNKNOWN; i++) {
+            Element element = ELEMENTS.data[i];
+            String lowerCaseName = element.name.toLowerCase(Locale.ENGLISH);
+            LOWER_CASE_NAMES[element.code] = lowerCaseName;
+            ELEMENTS_BY_NAME.put(element.name, element);
+            ELEMENTS_BY_NAME.put(lowerCaseName, element);
+        }
+
         // initialize cross references to parent elements
         for (int i = 0; i < ELEMENTS.size; i++) {
             Element element = ELEMENTS.data[i];
@@ -650,6 +671,10 @@ public class HTMLElements {
      */
     public static final Element getElement(final String ename, final Element element) {
 
+        Element known = (Element) ELEMENTS_BY_NAME.get(ename);
+        if (known != null) {
+            return known;
+        }
         if (ename.length() > 0) {
             int c = ename.charAt(0);
             if (c >= 'a' && c <= 'z') {
@@ -671,6 +696,36 @@ public class HTMLElements {
 
     } // getElement(String):Element
 
+    /**
+     * Returns the upper case form of a name. The names of the known
+     * elements are returned without converting them.
+     *
+     * @param name The name.
+     * @return a {@link java.lang.String} object.
+     */
+    public static final String toUpperCase(final String name) {
+        Element element = (Element) ELEMENTS_BY_NAME.get(name);
+        if (element != null) {
+            return element.name;
+        }
+        return name.toUpperCase(Locale.ENGLISH);
+    } // toUpperCase(String):String
+
+    /**
+     * Returns the lower case form of a name. The names of the known
+     * elements are returned without converting them.
+     *
+     * @param name The name.
+     * @return a {@link java.lang.String} object.
+     */
+    public static final String toLowerCase(final String name) {
+        Element element = (Element) ELEMENTS_BY_NAME.get(name);
+        if (element != null) {
+            return LOWER_CASE_NAMES[element.code];
+        }
+        return name.toLowerCase(Locale.ENGLISH);
+    } // toLowerCase(String):String
+
     //
     // Classes
     //
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+/**
+ * <font color="red">EXPERIMENTAL: may change in next release</font><br>
+ * Gets notified of the milestones of a parse that explain where the time
+ * goes: the start and end of the document, the changes of encoding that
+ * cause the beginning of the document to be read again, the growths of
+ * the scanner buffer, the content of special elements (e.g. SCRIPT and
+ * STYLE) and the recovery actions of the tag balancer.
+ * <p>
+ * A monitor is registered as value of the following property:
+ * <pre>
+ * http://cyberneko.org/html/properties/parse-monitor
+ * </pre>
+ * No notification is done when the property isn't set. The methods are
+ * called from the parsing thread, in the middle of the scan: they should
+ * return quickly and must not throw exceptions.
+ *
+ * @see HTMLConfiguration
+ */
+public interface HTMLParseMonitor {
+
+    /**
+     * Notifies the start of a document.
+     *
+     * @param systemId The expanded system identifier of the document.
+     * @param encoding The IANA encoding used to start reading the document.
+     */
+    void startDocument(String systemId, String encoding);
+
+    /**
+     * Notifies the end of a document.
+     *
+     * @param characterCount The number of characters read.
+     */
+    void endDocument(int characterCount);
+
+    /**
+     * Notifies a change of encoding: the beginning of the document is read
+     * again with the new encoding.
+     *
+     * @param oldEncoding  The Java encoding used so far.
+     * @param newEncoding  The new Java encoding.
+     * @param replayedBytes The number of bytes read again.
+     */
+    void encodingChanged(String oldEncoding, String newEncoding, int replayedBytes);
+
+    /**
+     * Notifies a growth of the scanner buffer.
+     *
+     * @param oldSize The previous size of the buffer, in characters.
+     * @param newSize The new size of the buffer, in characters.
+     */
+    void bufferResized(int oldSize, int newSize);
+
+    /**
+     * Notifies the start of the content of an element scanned as text,
+     * e.g. SCRIPT or STYLE.
+     *
+     * @param element The element name.
+     */
+    void startSpecialContent(String element);
+
+    /**
+     * Notifies the end of the content of an element scanned as text. The
+     * end isn't notified when the document ends in the content.
+     *
+     * @param element The element name.
+     * @param length  The length of the content, in characters.
+     */
+    void endSpecialContent(String element, int length);
+
+    /**
+     * Notifies a start element synthesized by the tag balancer.
+     *
+     * @param element The element name.
+     */
+    void synthesizedElement(String element);
+
+    /**
+     * Notifies an element discarded by the tag balancer.
+     *
+     * @param element The element name.
+     * @param end     True if an end element was discarded, false for a
+     *                start element.
+     */
+    void discardedElement(String element, boolean end);
+
+} // interface HTMLParseMonitor
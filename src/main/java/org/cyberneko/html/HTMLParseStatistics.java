@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+/**
+ * Counts the structural events of the parse of a document that are
+ * likely to explain its cost: the number of elements scanned, the
+ * elements synthesized or discarded by the tag balancer, the entity
+ * references resolved, the changes of encoding and the bytes they cause
+ * to be read again, the growths of the scanner buffer and the maximum
+ * depth of the element stack.
+ * <p>
+ * The {@link HTMLConfiguration} always collects statistics, they are
+ * retrieved with {@link HTMLConfiguration#getParseStatistics} or as the
+ * value of the following property:
+ * <pre>
+ * http://cyberneko.org/html/properties/statistics
+ * </pre>
+ * The values are cleared when the input source is set and are updated
+ * while the document is parsed, so they can also be read during the
+ * parse, e.g. from a filter. This class is not thread-safe: the values
+ * should be read from the parsing thread or after the parse.
+ *
+ * @see HTMLConfiguration
+ */
+public class HTMLParseStatistics {
+
+    //
+    // Data
+    //
+
+    /** Number of start and empty elements scanned. */
+    protected int fElementCount;
+
+    /** Number of elements synthesized by the tag balancer. */
+    protected int fSynthesizedElementCount;
+
+    /** Number of start and end elements discarded by the tag balancer. */
+    protected int fDiscardedElementCount;
+
+    /** Number of entity references resolved. */
+    protected int fEntityReferenceCount;
+
+    /** Number of changes of encoding. */
+    protected int fEncodingChangeCount;
+
+    /** Number of bytes read again after changes of encoding. */
+    protected long fReplayedByteCount;
+
+    /** Number of growths of the scanner buffer. */
+    protected int fBufferGrowthCount;
+
+    /** Maximum depth of the element stack of the tag balancer. */
+    protected int fMaxElementDepth;
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of start and empty elements scanned. */
+    public int getElementCount() {
+        return fElementCount;
+    } // getElementCount():int
+
+    /**
+     * Returns the number of start elements synthesized by the tag
+     * balancer, e.g. the implied HTML, HEAD and BODY elements or the
+     * inline elements re-opened after a block element.
+     */
+    public int getSynthesizedElementCount() {
+        return fSynthesizedElementCount;
+    } // getSynthesizedElementCount():int
+
+    /**
+     * Returns the number of start and end elements discarded by the tag
+     * balancer, e.g. a second BODY element or an end element without a
+     * matching start element.
+     */
+    public int getDiscardedElementCount() {
+        return fDiscardedElementCount;
+    } // getDiscardedElementCount():int
+
+    /**
+     * Returns the number of character and built-in entity references
+     * resolved, in content and in attribute values.
+     */
+    public int getEntityReferenceCount() {
+        return fEntityReferenceCount;
+    } // getEntityReferenceCount():int
+
+    /**
+     * Returns the number of changes of encoding caused by the XML
+     * declaration or by the META elements of the document.
+     */
+    public int getEncodingChangeCount() {
+        return fEncodingChangeCount;
+    } // getEncodingChangeCount():int
+
+    /**
+     * Returns the number of bytes read again from the beginning of the
+     * document after changes of encoding.
+     */
+    public long getReplayedByteCount() {
+        return fReplayedByteCount;
+    } // getReplayedByteCount():long
+
+    /** Returns the number of times the scanner had to grow its buffer. */
+    public int getBufferGrowthCount() {
+        return fBufferGrowthCount;
+    } // getBufferGrowthCount():int
+
+    /** Returns the maximum depth of the element stack of the tag balancer. */
+    public int getMaxElementDepth() {
+        return fMaxElementDepth;
+    } // getMaxElementDepth():int
+
+    /** Clears the collected values. */
+    public void reset() {
+        fElementCount = 0;
+        fSynthesizedElementCount = 0;
+        fDiscardedElementCount = 0;
+        fEntityReferenceCount = 0;
+        fEncodingChangeCount = 0;
+        fReplayedByteCount = 0;
+        fBufferGrowthCount = 0;
+        fMaxElementDepth = 0;
+    } // reset()
+
+    /** Returns a summary of the collected values. */
+    public String toString() {
+        StringBuffer str = new StringBuffer();
+        str.append("elements=");
+        str.append(fElementCount);
+        str.append(", synthesized=");
+        str.append(fSynthesizedElementCount);
+        str.append(", discarded=");
+        str.append(fDiscardedElementCount);
+        str.append(", entityRefs=");
+        str.append(fEntityReferenceCount);
+        str.append(", encodingChanges=");
+        str.append(fEncodingChangeCount);
+        str.append(", replayedBytes=");
+        str.append(fReplayedByteCount);
+        str.append(", bufferGrowths=");
+        str.append(fBufferGrowthCount);
+        str.append(", maxDepth=");
+        str.append(fMaxElementDepth);
+        return str.toString();
+    } // toString():String
+
+} // class HTMLParseStatistics
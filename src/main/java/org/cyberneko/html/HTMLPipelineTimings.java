@@ -0,0 +1,417 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLResourceIdentifier;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.cyberneko.html.filters.DefaultFilter;
+
+/**
+ * Collects the time spent and the number of events handled by each stage
+ * of the pipeline of an {@link HTMLConfiguration}: the scanner, the
+ * namespace binder, the tag balancer, every filter of the
+ * <code>http://cyberneko.org/html/properties/filters</code> property and
+ * finally the document handler of the configuration.
+ * <p>
+ * Timing is enabled by setting an instance of this class as value of the
+ * following property:
+ * <pre>
+ * http://cyberneko.org/html/properties/pipeline-timings
+ * </pre>
+ * The configuration then inserts a probe between every two stages. A
+ * probe measures the time spent in the stages after it, the time of a
+ * stage is obtained by subtracting the time of the next stages. The
+ * time of the scanner is the time spent parsing minus the time spent in
+ * the following stages.
+ * <p>
+ * Values accumulate over successive documents until {@link #reset} is
+ * called. They are cleared for the stages that differ when the pipeline
+ * changes (e.g. when filters are added). This class is not thread-safe:
+ * use one instance per configuration.
+ *
+ * @see HTMLConfiguration
+ */
+public class HTMLPipelineTimings {
+
+    //
+    // Data
+    //
+
+    /** Number of stages. */
+    protected int fStageCount;
+
+    /** Stage names. */
+    protected String[] fNames = new String[4];
+
+    /** Time spent in each stage and the stages that follow it. */
+    protected long[] fTimes = new long[4];
+
+    /** Number of events received by each stage. */
+    protected long[] fEvents = new long[4];
+
+    /** Number of parsed documents. */
+    protected int fDocumentCount;
+
+    /** Probes, reused from one pipeline configuration to the next. */
+    private Probe[] fProbes = new Probe[4];
+
+    //
+    // Public methods
+    //
+
+    /** Returns the number of stages of the pipeline. */
+    public int getStageCount() {
+        return fStageCount;
+    } // getStageCount():int
+
+    /**
+     * Returns the name of a stage: the unqualified class name of the
+     * component.
+     */
+    public String getStageName(int stage) {
+        checkStage(stage);
+        return fNames[stage];
+    } // getStageName(int):String
+
+    /**
+     * Returns the time, in nanoseconds, spent in a stage excluding the
+     * time spent in the stages that follow it.
+     */
+    public long getTime(int stage) {
+        checkStage(stage);
+        long time = fTimes[stage];
+        if (stage + 1 < fStageCount) {
+            time -= fTimes[stage + 1];
+        }
+        return time;
+    } // getTime(int):long
+
+    /**
+     * Returns the number of events received by a stage. For the scanner,
+     * which is the first stage, this is the number of events it emitted.
+     */
+    public long getEventCount(int stage) {
+        checkStage(stage);
+        if (stage == 0) {
+            return fStageCount > 1 ? fEvents[1] : 0;
+        }
+        return fEvents[stage];
+    } // getEventCount(int):long
+
+    /** Returns the total time, in nanoseconds, spent parsing. */
+    public long getTotalTime() {
+        return fStageCount > 0 ? fTimes[0] : 0;
+    } // getTotalTime():long
+
+    /** Returns the number of documents parsed. */
+    public int getDocumentCount() {
+        return fDocumentCount;
+    } // getDocumentCount():int
+
+    /** Clears the collected values. */
+    public void reset() {
+        for (int i = 0; i < fTimes.length; i++) {
+            fTimes[i] = 0;
+            fEvents[i] = 0;
+        }
+        fDocumentCount = 0;
+    } // reset()
+
+    /** Returns a table of the collected values. */
+    public String toString() {
+        StringBuffer str = new StringBuffer();
+        long total = getTotalTime();
+        for (int i = 0; i < fStageCount; i++) {
+            long time = getTime(i);
+            str.append(fNames[i]);
+            str.append(": ");
+            str.append(time / 1000);
+            str.append("us (");
+            str.append(total > 0 ? time * 100 / total : 0);
+            str.append("%), ");
+            str.append(getEventCount(i));
+            str.append(" events\n");
+        }
+        return str.toString();
+    } // toString():String
+
+    //
+    // Package methods
+    //
+
+    /** Starts the configuration of a pipeline beginning with the given scanner. */
+    void startPipeline(Object scanner) {
+        fStageCount = 0;
+        addStageName(scanner);
+    } // startPipeline(Object)
+
+    /**
+     * Adds a stage to the pipeline and returns the probe that should be
+     * inserted in front of it.
+     */
+    DefaultFilter addStage(Object handler) {
+        int stage = addStageName(handler);
+        Probe probe = fProbes[stage];
+        if (probe == null) {
+            probe = new Probe(stage);
+            fProbes[stage] = probe;
+        }
+        return probe;
+    } // addStage(Object):DefaultFilter
+
+    /** Adds the time spent parsing. */
+    void addTotalTime(long time) {
+        if (fStageCount > 0) {
+            fTimes[0] += time;
+        }
+    } // addTotalTime(long)
+
+    /** Counts a parsed document. */
+    void addDocument() {
+        fDocumentCount++;
+    } // addDocument()
+
+    //
+    // Private methods
+    //
+
+    /** Adds a stage name, clearing the stage values if it changed. */
+    private int addStageName(Object component) {
+        int stage = fStageCount++;
+        if (stage == fNames.length) {
+            int length = fNames.length * 2;
+            String[] names = new String[length];
+            System.arraycopy(fNames, 0, names, 0, stage);
+            fNames = names;
+            long[] times = new long[length];
+            System.arraycopy(fTimes, 0, times, 0, stage);
+            fTimes = times;
+            long[] events = new long[length];
+            System.arraycopy(fEvents, 0, events, 0, stage);
+            fEvents = events;
+            Probe[] probes = new Probe[length];
+            System.arraycopy(fProbes, 0, probes, 0, stage);
+            fProbes = probes;
+        }
+        String name = component.getClass().getName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        if (!name.equals(fNames[stage])) {
+            fNames[stage] = name;
+            fTimes[stage] = 0;
+            fEvents[stage] = 0;
+        }
+        return stage;
+    } // addStageName(Object):int
+
+    /** Checks a stage index. */
+    private void checkStage(int stage) {
+        if (stage < 0 || stage >= fStageCount) {
+            throw new IndexOutOfBoundsException(String.valueOf(stage));
+        }
+    } // checkStage(int)
+
+    //
+    // Classes
+    //
+
+    /**
+     * A filter measuring the time spent in the stages following it.
+     */
+    class Probe
+        extends DefaultFilter {
+
+        //
+        // Data
+        //
+
+        /** Index of the stage following this probe. */
+        private final int fStage;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a probe for the given stage. */
+        Probe(int stage) {
+            fStage = stage;
+        } // <init>(int)
+
+        //
+        // XMLDocumentHandler methods
+        //
+
+        /** Start document. */
+        public void startDocument(XMLLocator locator, String encoding,
+                                  NamespaceContext nscontext, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.startDocument(locator, encoding, nscontext, augs);
+            end(start);
+        } // startDocument(XMLLocator,String,NamespaceContext,Augmentations)
+
+        /** XML declaration. */
+        public void xmlDecl(String version, String encoding, String standalone, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.xmlDecl(version, encoding, standalone, augs);
+            end(start);
+        } // xmlDecl(String,String,String,Augmentations)
+
+        /** Doctype declaration. */
+        public void doctypeDecl(String root, String publicId, String systemId, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.doctypeDecl(root, publicId, systemId, augs);
+            end(start);
+        } // doctypeDecl(String,String,String,Augmentations)
+
+        /** Comment. */
+        public void comment(XMLString text, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.comment(text, augs);
+            end(start);
+        } // comment(XMLString,Augmentations)
+
+        /** Processing instruction. */
+        public void processingInstruction(String target, XMLString data, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.processingInstruction(target, data, augs);
+            end(start);
+        } // processingInstruction(String,XMLString,Augmentations)
+
+        /** Start element. */
+        public void startElement(QName element, XMLAttributes attributes, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.startElement(element, attributes, augs);
+            end(start);
+        } // startElement(QName,XMLAttributes,Augmentations)
+
+        /** Empty element. */
+        public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.emptyElement(element, attributes, augs);
+            end(start);
+        } // emptyElement(QName,XMLAttributes,Augmentations)
+
+        /** Characters. */
+        public void characters(XMLString text, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.characters(text, augs);
+            end(start);
+        } // characters(XMLString,Augmentations)
+
+        /** Ignorable whitespace. */
+        public void ignorableWhitespace(XMLString text, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.ignorableWhitespace(text, augs);
+            end(start);
+        } // ignorableWhitespace(XMLString,Augmentations)
+
+        /** Start general entity. */
+        public void startGeneralEntity(String name, XMLResourceIdentifier id, String encoding, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.startGeneralEntity(name, id, encoding, augs);
+            end(start);
+        } // startGeneralEntity(String,XMLResourceIdentifier,String,Augmentations)
+
+        /** Text declaration. */
+        public void textDecl(String version, String encoding, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.textDecl(version, encoding, augs);
+            end(start);
+        } // textDecl(String,String,Augmentations)
+
+        /** End general entity. */
+        public void endGeneralEntity(String name, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.endGeneralEntity(name, augs);
+            end(start);
+        } // endGeneralEntity(String,Augmentations)
+
+        /** Start CDATA section. */
+        public void startCDATA(Augmentations augs) throws XNIException {
+            long start = System.nanoTime();
+            super.startCDATA(augs);
+            end(start);
+        } // startCDATA(Augmentations)
+
+        /** End CDATA section. */
+        public void endCDATA(Augmentations augs) throws XNIException {
+            long start = System.nanoTime();
+            super.endCDATA(augs);
+            end(start);
+        } // endCDATA(Augmentations)
+
+        /** End element. */
+        public void endElement(QName element, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.endElement(element, augs);
+            end(start);
+        } // endElement(QName,Augmentations)
+
+        /** End document. */
+        public void endDocument(Augmentations augs) throws XNIException {
+            long start = System.nanoTime();
+            super.endDocument(augs);
+            end(start);
+        } // endDocument(Augmentations)
+
+        /** Start prefix mapping. */
+        public void startPrefixMapping(String prefix, String uri, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.startPrefixMapping(prefix, uri, augs);
+            end(start);
+        } // startPrefixMapping(String,String,Augmentations)
+
+        /** End prefix mapping. */
+        public void endPrefixMapping(String prefix, Augmentations augs)
+            throws XNIException {
+            long start = System.nanoTime();
+            super.endPrefixMapping(prefix, augs);
+            end(start);
+        } // endPrefixMapping(String,Augmentations)
+
+        //
+        // Private methods
+        //
+
+        /** Records an event that started at the given time. */
+        private void end(long start) {
+            fTimes[fStage] += System.nanoTime() - start;
+            fEvents[fStage]++;
+        } // end(long)
+
+    } // class Probe
+
+} // class HTMLPipelineTimings
@@ -26,9 +26,12 @@ import org.cyberneko.html.xercesbridge.XercesBridge;
 
 import java.io.*;
 import java.net.URL;
-import java.util.BitSet;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.Stack;
+import java.util.Vector;
+import java.util.zip.Inflater;
 
 /**
  * A simple HTML scanner. This scanner makes no attempt to balance tags
@@ -176,6 +179,12 @@ public class HTMLScanner
     /** Scan CDATA sections. */
     public static final String CDATA_SECTIONS = "http://cyberneko.org/html/features/scanner/cdata-sections";
 
+    /** Read local files given by a <code>file:</code> system identifier through a memory mapping. */
+    public static final String MAP_FILES = "http://cyberneko.org/html/features/scanner/map-files";
+
+    /** Read the byte streams ahead in a background thread while scanning. */
+    public static final String READ_AHEAD = "http://cyberneko.org/html/features/scanner/read-ahead";
+
     /** Override doctype declaration public and system identifiers. */
     public static final String OVERRIDE_DOCTYPE = "http://cyberneko.org/html/features/override-doctype";
 
@@ -214,6 +223,8 @@ public class HTMLScanner
         PARSE_NOSCRIPT_CONTENT,
         ALLOW_SELFCLOSING_IFRAME,
         ALLOW_SELFCLOSING_TAGS,
+        MAP_FILES,
+        READ_AHEAD,
     };
 
     /** Recognized features defaults. */
@@ -236,6 +247,8 @@ public class HTMLScanner
         Boolean.TRUE,
         Boolean.FALSE,
         Boolean.FALSE,
+        Boolean.FALSE,
+        Boolean.FALSE,
     };
 
     // properties
@@ -258,6 +271,40 @@ public class HTMLScanner
     /** Doctype declaration system identifier. */
     protected static final String DOCTYPE_SYSID = "http://cyberneko.org/html/properties/doctype/sysid";
 
+    /** Parse statistics. */
+    protected static final String STATISTICS = "http://cyberneko.org/html/properties/statistics";
+
+    /** Parse monitor. */
+    protected static final String PARSE_MONITOR = "http://cyberneko.org/html/properties/parse-monitor";
+
+    /** Initial size of the character buffer. */
+    public static final String BUFFER_SIZE = "http://cyberneko.org/html/properties/buffer/initial-size";
+
+    /** Maximum size of the character buffer. */
+    public static final String MAX_BUFFER_SIZE = "http://cyberneko.org/html/properties/buffer/max-size";
+
+    /**
+     * Number of bytes searched for a character encoding declaration before
+     * decoding starts. Zero buffers the document until a BODY-level element
+     * and decodes it again when a declaration is found.
+     */
+    public static final String PRESCAN_SIZE = "http://cyberneko.org/html/properties/prescan-size";
+
+    /**
+     * Content coding of the byte streams: "gzip", "deflate" or "identity".
+     * When not set, the coding given by the connection of an URL opened by
+     * the scanner is used, and gzip data is detected by its magic bytes.
+     */
+    public static final String CONTENT_ENCODING = "http://cyberneko.org/html/properties/content-encoding";
+
+    /**
+     * The <code>java.util.concurrent.ThreadFactory</code> creating the
+     * threads reading the byte streams ahead. Daemon threads are created
+     * when not set. The property is typed as an object, so that the
+     * scanner runs on Java versions without this interface.
+     */
+    public static final String READ_AHEAD_THREAD_FACTORY = "http://cyberneko.org/html/properties/read-ahead-thread-factory";
+
     /** Recognized properties. */
     private static final String[] RECOGNIZED_PROPERTIES = {
         NAMES_ELEMS,
@@ -266,6 +313,13 @@ public class HTMLScanner
         ERROR_REPORTER,
         DOCTYPE_PUBID,
         DOCTYPE_SYSID,
+        STATISTICS,
+        PARSE_MONITOR,
+        BUFFER_SIZE,
+        MAX_BUFFER_SIZE,
+        PRESCAN_SIZE,
+        CONTENT_ENCODING,
+        READ_AHEAD_THREAD_FACTORY,
     };
 
     /** Recognized properties defaults. */
@@ -276,6 +330,13 @@ public class HTMLScanner
         null,
         HTML_4_01_TRANSITIONAL_PUBID,
         HTML_4_01_TRANSITIONAL_SYSID,
+        null,
+        null,
+        new Integer(HTMLScanner.DEFAULT_BUFFER_SIZE),
+        new Integer(Integer.MAX_VALUE),
+        new Integer(HTMLScanner.DEFAULT_PRESCAN_SIZE),
+        null,
+        null,
     };
 
     // states
@@ -308,6 +369,23 @@ public class HTMLScanner
     /** Default buffer size. */
     protected static final int DEFAULT_BUFFER_SIZE = 2048;
 
+    /** Default prescan size. */
+    protected static final int DEFAULT_PRESCAN_SIZE = 1024;
+
+    /**
+     * Number of characters following a TITLE start tag that are searched
+     * for its end tag. The bound doesn't depend on the buffer size, so
+     * that the result doesn't either, and keeps unclosed titles from
+     * loading the rest of the document again and again.
+     */
+    private static final int TITLE_LOOK_AHEAD = DEFAULT_BUFFER_SIZE;
+
+    /** 
+     * Largest buffer kept for the next document. A buffer grown beyond
+     * this size and the initial size for an unusual document is dropped.
+     */
+    protected static final int MAX_REUSED_BUFFER_SIZE = 65536;
+
     // debugging
 
     /** Set to true to debug changes in the scanner. */
@@ -331,14 +409,6 @@ public class HTMLScanner
     protected static final HTMLEventInfo SYNTHESIZED_ITEM = 
         new HTMLEventInfo.SynthesizedItem();
         
-    private final static BitSet ENTITY_CHARS = new BitSet();
-    static {
-    	final String str = "-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
-    	for (int i = 0; i < str.length(); ++i) {
-    		char c = str.charAt(i);
-    		ENTITY_CHARS.set(c);
-    	}
-    }
     //
     // Data
     //
@@ -381,6 +451,12 @@ public class HTMLScanner
     /** CDATA sections. */
     protected boolean fCDATASections;
 
+    /** Map local files. */
+    protected boolean fMapFiles;
+
+    /** Read the byte streams ahead. */
+    protected boolean fReadAhead;
+
     /** Override doctype declaration public and system identifiers. */
     protected boolean fOverrideDoctype;
 
@@ -422,6 +498,27 @@ public class HTMLScanner
     /** Doctype declaration system identifier. */
     protected String fDoctypeSysid;
 
+    /** Parse statistics. */
+    protected HTMLParseStatistics fStatistics;
+
+    /** Parse monitor. */
+    protected HTMLParseMonitor fParseMonitor;
+
+    /** Initial size of the character buffer. */
+    protected int fBufferSize;
+
+    /** Maximum size of the character buffer. */
+    protected int fMaxBufferSize;
+
+    /** Number of bytes prescanned for the character encoding. */
+    protected int fPrescanSize;
+
+    /** Content coding of the byte streams. */
+    protected String fContentEncoding;
+
+    /** Factory of the read-ahead threads, a <code>ThreadFactory</code>. */
+    protected Object fReadAheadThreadFactory;
+
     // boundary locator information
 
     /** Beginning line number. */
@@ -447,6 +544,21 @@ public class HTMLScanner
     /** The playback byte stream. */
     protected PlaybackInputStream fByteStream;
 
+    /** The inflater of compressed documents, reused from one to the next. */
+    private Inflater fInflater;
+
+    /**
+     * The stream read ahead in the background, or null. It's typed as an
+     * input stream, so that its class is only loaded when used.
+     */
+    private InputStream fReadAheadStream;
+
+    /** The readers of the byte streams, reused from one document to the next. */
+    private final DecodingReader.Pool fReaderPool = new DecodingReader.Pool();
+
+    /** The element and attribute names scanned, shared by the documents. */
+    private final NameTable fNameTable = new NameTable();
+
     /** Current entity. */
     protected CurrentEntity fCurrentEntity;
     
@@ -477,6 +589,20 @@ public class HTMLScanner
     /** Element depth. */
     protected int fElementDepth;
 
+    // push parsing
+
+    /** The bytes of a pushed document, or null. */
+    protected PushInputStream fPushStream;
+
+    /** The input source of a pushed document, until its scan starts. */
+    private XMLInputSource fPushSource;
+
+    /** The reader of a pushed document, able to read a token again. */
+    private PushReader fPushReader;
+
+    /** Number of bytes to push before scanning an incomplete token again. */
+    private long fPushRetryLength;
+
     // scanners
 
     /** Content scanner. */
@@ -512,6 +638,9 @@ public class HTMLScanner
     /** Resource identifier. */
     private final XMLResourceIdentifierImpl fResourceId = new XMLResourceIdentifierImpl();
 
+    /** Character offset of the beginning of the current special content. */
+    private int fSpecialContentOffset;
+
 	private final char REPLACEMENT_CHARACTER = '\uFFFD'; // the � character
 
     //
@@ -537,20 +666,19 @@ public class HTMLScanner
 
     	fCurrentEntityStack.push(fCurrentEntity);
         String encoding = inputSource.getEncoding();
-        String publicId = inputSource.getPublicId();
-        String baseSystemId = inputSource.getBaseSystemId();
-        String literalSystemId = inputSource.getSystemId();
-        String expandedSystemId = expandSystemId(literalSystemId, baseSystemId);
-        fCurrentEntity = new CurrentEntity(reader, encoding, 
-                                           publicId, baseSystemId,
-                                           literalSystemId, expandedSystemId);
+        String expandedSystemId = expandSystemId(inputSource.getSystemId(), inputSource.getBaseSystemId());
+        fCurrentEntity = createEntity(inputSource, reader, null, encoding, expandedSystemId);
     } // pushInputSource(XMLInputSource)
 
     private Reader getReader(final XMLInputSource inputSource) {
+        if (inputSource instanceof HTMLCharArrayInputSource) {
+            // scanned in place
+            return null;
+        }
         Reader reader = inputSource.getCharacterStream();
         if (reader == null) {
         	try {
-				return new InputStreamReader(inputSource.getByteStream(), fJavaEncoding);
+				return DecodingReader.createReader(inputSource.getByteStream(), fJavaEncoding, fBufferSize);
 			}
         	catch (final UnsupportedEncodingException e) {
 				// should not happen as this encoding is already used to parse the "main" source
@@ -559,6 +687,84 @@ public class HTMLScanner
         return reader;
 	}
 
+    /**
+     * Creates the entity of an input source, reading the given stream in
+     * the given buffer or in a new one, or scanning the characters of the
+     * source in place when there is no stream.
+     */
+    private CurrentEntity createEntity(final XMLInputSource source, final Reader reader, final char[] buffer,
+                                       final String encoding, final String expandedSystemId) {
+        final CurrentEntity entity;
+        if (reader == null && source instanceof HTMLCharArrayInputSource) {
+            final HTMLCharArrayInputSource chars = (HTMLCharArrayInputSource) source;
+            entity = new CurrentEntity(chars.getCharacters(), chars.getOffset(), chars.getLength(),
+                                       encoding, source.getPublicId(), source.getBaseSystemId(),
+                                       source.getSystemId(), expandedSystemId);
+        }
+        else {
+            entity = new CurrentEntity(reader, buffer != null ? buffer : new char[fBufferSize], encoding,
+                                       source.getPublicId(), source.getBaseSystemId(),
+                                       source.getSystemId(), expandedSystemId);
+        }
+        entity.maxBufferSize = Math.max(fMaxBufferSize, entity.buffer.length);
+        entity.statistics = fStatistics;
+        entity.monitor = fParseMonitor;
+        return entity;
+    } // createEntity(XMLInputSource,Reader,char[],String,String):CurrentEntity
+
+    /**
+     * Returns the buffer of the previous document if it can be used for the
+     * next one: it was allocated by the scanner, is at least as large as
+     * the initial size and wasn't grown too much for an unusual document.
+     */
+    private char[] getReusableBuffer() {
+        final CurrentEntity entity = fCurrentEntityStack.isEmpty()
+                                   ? fCurrentEntity : (CurrentEntity) fCurrentEntityStack.elementAt(0);
+        if (entity == null || !entity.ownBuffer) {
+            return null;
+        }
+        final int length = entity.buffer.length;
+        if (length < fBufferSize || length > Math.max(fBufferSize, MAX_REUSED_BUFFER_SIZE)) {
+            return null;
+        }
+        return entity.buffer;
+    } // getReusableBuffer():char[]
+
+    /** Ends the background thread reading the current document ahead. */
+    private void stopReadAhead() {
+        if (fReadAheadStream != null) {
+            ReadAheadInputStream.stop(fReadAheadStream);
+            fReadAheadStream = null;
+        }
+    } // stopReadAhead()
+
+    /**
+     * Returns a stream decoding the given content coding of a byte stream,
+     * or detecting gzip data when the coding is unknown.
+     */
+    private InputStream openContentEncoding(InputStream stream, String contentEncoding) {
+        short format = InflatingInputStream.DETECT;
+        if (contentEncoding != null) {
+            String coding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                format = InflatingInputStream.GZIP;
+            }
+            else if (coding.equals("deflate")) {
+                format = InflatingInputStream.DEFLATE;
+            }
+            else {
+                if (!coding.equals("identity") && coding.length() > 0 && fReportErrors) {
+                    fErrorReporter.reportWarning("HTML1017", new Object[]{contentEncoding});
+                }
+                return stream;
+            }
+        }
+        if (fInflater == null) {
+            fInflater = new Inflater(true);
+        }
+        return new InflatingInputStream(stream, format, fInflater);
+    } // openContentEncoding(InputStream,String):InputStream
+
     /**
      * Immediately evaluates an input source and add the new content (e.g.
      * the output written by an embedded script).
@@ -573,13 +779,8 @@ public class HTMLScanner
         final Reader reader = getReader(inputSource);
 
         String encoding = inputSource.getEncoding();
-        String publicId = inputSource.getPublicId();
-        String baseSystemId = inputSource.getBaseSystemId();
-        String literalSystemId = inputSource.getSystemId();
-        String expandedSystemId = expandSystemId(literalSystemId, baseSystemId);
-        fCurrentEntity = new CurrentEntity(reader, encoding, 
-                                           publicId, baseSystemId,
-                                           literalSystemId, expandedSystemId);
+        String expandedSystemId = expandSystemId(inputSource.getSystemId(), inputSource.getBaseSystemId());
+        fCurrentEntity = createEntity(inputSource, reader, null, encoding, expandedSystemId);
         setScanner(fContentScanner);
         setScannerState(STATE_CONTENT);
         try {
@@ -595,6 +796,49 @@ public class HTMLScanner
         fCurrentEntity = previousEntity;
     } // evaluateInputSource(XMLInputSource)
 
+    /**
+     * Starts scanning a document whose bytes are pushed in chunks, e.g. as
+     * they arrive from a non-blocking connection, instead of being read
+     * from a stream. The byte stream and the character stream of the input
+     * source are ignored.
+     *
+     * @param inputSource The input source giving the identifiers and the
+     *                    encoding, if known, of the document.
+     * @see #push(ByteBuffer)
+     * @see #endPush()
+     */
+    public void startPush(XMLInputSource inputSource) {
+        fPushStream = new PushInputStream();
+        fPushSource = new XMLInputSource(inputSource.getPublicId(), inputSource.getSystemId(),
+                                         inputSource.getBaseSystemId(), fPushStream,
+                                         inputSource.getEncoding());
+        fPushRetryLength = 0;
+    } // startPush(XMLInputSource)
+
+    /**
+     * Scans the bytes pushed so far as far as possible and returns without
+     * waiting for more bytes. The events of a token are sent once the whole
+     * token was pushed.
+     *
+     * @param bytes The next bytes of the document.
+     * @see #startPush(XMLInputSource)
+     */
+    public void push(ByteBuffer bytes) throws IOException {
+        fPushStream.append(bytes);
+        scanPushedBytes();
+    } // push(ByteBuffer)
+
+    /**
+     * Scans the rest of a document pushed in chunks: all its bytes were
+     * pushed.
+     *
+     * @see #startPush(XMLInputSource)
+     */
+    public void endPush() throws IOException {
+        fPushStream.end();
+        scanPushedBytes();
+    } // endPush()
+
     /**
      * Cleans up used resources. For example, if scanning is terminated
      * early, then this method ensures all remaining open streams are
@@ -621,6 +865,8 @@ public class HTMLScanner
         else if (closeall && fCurrentEntity != null) {
         	fCurrentEntity.closeQuietly();
         }
+        // the stream of the application may not be closed
+        stopReadAhead();
     } // cleanup(boolean)
 
     //
@@ -785,6 +1031,8 @@ public class HTMLScanner
         fStyleStripCommentDelims = manager.getFeature(STYLE_STRIP_COMMENT_DELIMS);
         fIgnoreSpecifiedCharset = manager.getFeature(IGNORE_SPECIFIED_CHARSET);
         fCDATASections = manager.getFeature(CDATA_SECTIONS);
+        fMapFiles = manager.getFeature(MAP_FILES);
+        fReadAhead = manager.getFeature(READ_AHEAD);
         fOverrideDoctype = manager.getFeature(OVERRIDE_DOCTYPE);
         fInsertDoctype = manager.getFeature(INSERT_DOCTYPE);
         fNormalizeAttributes = manager.getFeature(NORMALIZE_ATTRIBUTES);
@@ -799,6 +1047,13 @@ public class HTMLScanner
         fErrorReporter = (HTMLErrorReporter)manager.getProperty(ERROR_REPORTER);
         fDoctypePubid = String.valueOf(manager.getProperty(DOCTYPE_PUBID));
         fDoctypeSysid = String.valueOf(manager.getProperty(DOCTYPE_SYSID));
+        fStatistics = (HTMLParseStatistics)manager.getProperty(STATISTICS);
+        fParseMonitor = (HTMLParseMonitor)manager.getProperty(PARSE_MONITOR);
+        fBufferSize = getSizeValue(manager.getProperty(BUFFER_SIZE));
+        fMaxBufferSize = getSizeValue(manager.getProperty(MAX_BUFFER_SIZE));
+        fPrescanSize = getSizeValue(manager.getProperty(PRESCAN_SIZE), 0);
+        fContentEncoding = (String)manager.getProperty(CONTENT_ENCODING);
+        fReadAheadThreadFactory = manager.getProperty(READ_AHEAD_THREAD_FACTORY);
     
     } // reset(XMLComponentManager)
 
@@ -815,6 +1070,12 @@ public class HTMLScanner
         else if (featureId.equals(IGNORE_SPECIFIED_CHARSET)) { 
             fIgnoreSpecifiedCharset = state; 
         }
+        else if (featureId.equals(MAP_FILES)) { 
+            fMapFiles = state; 
+        }
+        else if (featureId.equals(READ_AHEAD)) { 
+            fReadAhead = state; 
+        }
         else if (featureId.equals(NOTIFY_CHAR_REFS)) { 
             fNotifyCharRefs = state; 
         }
@@ -874,6 +1135,41 @@ public class HTMLScanner
             return;
         }
 
+        if (propertyId.equals(STATISTICS)) {
+            fStatistics = (HTMLParseStatistics)value;
+            return;
+        }
+
+        if (propertyId.equals(PARSE_MONITOR)) {
+            fParseMonitor = (HTMLParseMonitor)value;
+            return;
+        }
+
+        if (propertyId.equals(BUFFER_SIZE)) {
+            fBufferSize = getSizeValue(value);
+            return;
+        }
+
+        if (propertyId.equals(MAX_BUFFER_SIZE)) {
+            fMaxBufferSize = getSizeValue(value);
+            return;
+        }
+
+        if (propertyId.equals(PRESCAN_SIZE)) {
+            fPrescanSize = getSizeValue(value, 0);
+            return;
+        }
+
+        if (propertyId.equals(CONTENT_ENCODING)) {
+            fContentEncoding = (String)value;
+            return;
+        }
+
+        if (propertyId.equals(READ_AHEAD_THREAD_FACTORY)) {
+            fReadAheadThreadFactory = value;
+            return;
+        }
+
     } // setProperty(String,Object)
 
     //
@@ -891,6 +1187,12 @@ public class HTMLScanner
         fElementCount = 0;
         fElementDepth = -1;
         fByteStream = null;
+        stopReadAhead();
+        if (fPushStream != null && source.getByteStream() != fPushStream) {
+            fPushStream = null;
+            fPushReader = null;
+        }
+        char[] reusableBuffer = getReusableBuffer();
         fCurrentEntityStack.removeAllElements();
 
         fBeginLineNumber = 1;
@@ -906,18 +1208,30 @@ public class HTMLScanner
 
         // get location information
         String encoding = source.getEncoding();
-        String publicId = source.getPublicId();
-        String baseSystemId = source.getBaseSystemId();
-        String literalSystemId = source.getSystemId();
-        String expandedSystemId = expandSystemId(literalSystemId, baseSystemId);
+        String expandedSystemId = expandSystemId(source.getSystemId(), source.getBaseSystemId());
 
-        // open stream
-        Reader reader = source.getCharacterStream();
-        if (reader == null) {
+        // open stream, unless the characters are scanned in place
+        boolean inMemory = source instanceof HTMLCharArrayInputSource;
+        Reader reader = inMemory ? null : source.getCharacterStream();
+        if (reader == null && !inMemory) {
             InputStream inputStream = source.getByteStream();
+            String contentEncoding = fContentEncoding;
+            if (inputStream == null && fMapFiles) {
+                inputStream = openMappedFile(expandedSystemId);
+            }
             if (inputStream == null) {
-                URL url = new URL(expandedSystemId);
-                inputStream = url.openStream();
+                URLConnection connection = new URL(expandedSystemId).openConnection();
+                inputStream = connection.getInputStream();
+                if (contentEncoding == null) {
+                    contentEncoding = connection.getContentEncoding();
+                }
+            }
+            if (inputStream != fPushStream) {
+                if (fReadAhead) {
+                    fReadAheadStream = ReadAheadInputStream.start(inputStream, fReadAheadThreadFactory);
+                    inputStream = fReadAheadStream;
+                }
+                inputStream = openContentEncoding(inputStream, contentEncoding);
             }
             fByteStream = new PlaybackInputStream(inputStream);
             String[] encodings = new String[2];
@@ -948,12 +1262,26 @@ public class HTMLScanner
             fIso8859Encoding = fIANAEncoding == null 
                             || fIANAEncoding.toUpperCase(Locale.ENGLISH).startsWith("ISO-8859")
                             || fIANAEncoding.equalsIgnoreCase(fDefaultIANAEncoding);
+            // look for a declared encoding before decoding, instead of
+            // buffering the head and scanning it again
+            PlaybackInputStream byteStream = fByteStream;
             encoding = fIANAEncoding;
-            reader = new InputStreamReader(fByteStream, fJavaEncoding);
+            if (getPrescanSize() > 0 && !fIgnoreSpecifiedCharset) {
+                byteStream.prescan(getPrescanSize());
+                if (changePrescannedEncoding()) {
+                    // the locator gives the name of the decoder, as after
+                    // an encoding change while scanning
+                    encoding = fJavaEncoding;
+                    fByteStream = null;
+                }
+            }
+            reader = fReaderPool.getReader(byteStream, fJavaEncoding, fBufferSize);
+            if (fPushStream != null) {
+                fPushReader = new PushReader(reader);
+                reader = fPushReader;
+            }
         }
-        fCurrentEntity = new CurrentEntity(reader, encoding,
-                                           publicId, baseSystemId,
-                                           literalSystemId, expandedSystemId);
+        fCurrentEntity = createEntity(source, reader, reusableBuffer, encoding, expandedSystemId);
 
         // set scanner and state
         setScanner(fContentScanner);
@@ -1137,6 +1465,37 @@ public class HTMLScanner
 
     } // fixURI(String):String
 
+    /**
+     * Opens a memory mapped stream on the local file identified by the
+     * given system identifier.
+     *
+     * @param systemId The expanded system identifier.
+     * @return The mapped stream or <code>null</code> if the identifier
+     *         isn't a <code>file:</code> URI of a regular file that can be
+     *         mapped, in which case the URL should be opened instead.
+     * @throws IOException if the file can't be mapped.
+     */
+    protected static InputStream openMappedFile(String systemId) throws IOException {
+        if (systemId == null || !systemId.regionMatches(true, 0, "file:", 0, 5)) {
+            return null;
+        }
+        File file;
+        try {
+            file = new File(new java.net.URI(systemId));
+        }
+        catch (java.net.URISyntaxException e) {
+            return null;
+        }
+        catch (IllegalArgumentException e) {
+            // e.g. an authority component: "file://host/path"
+            return null;
+        }
+        if (!file.isFile() || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new MappedFileInputStream(file);
+    } // openMappedFile(String):InputStream
+
     /**
      * Modifies the given name based on the specified mode.
      *
@@ -1146,8 +1505,8 @@ public class HTMLScanner
      */
     protected static final String modifyName(String name, short mode) {
         switch (mode) {
-            case NAMES_UPPERCASE: return name.toUpperCase(Locale.ENGLISH);
-            case NAMES_LOWERCASE: return name.toLowerCase(Locale.ENGLISH);
+            case NAMES_UPPERCASE: return HTMLElements.toUpperCase(name);
+            case NAMES_LOWERCASE: return HTMLElements.toLowerCase(name);
         }
         return name;
     } // modifyName(String,short):String
@@ -1177,6 +1536,31 @@ public class HTMLScanner
         return NAMES_NO_CHANGE;
     } // getNamesValue(String):short
 
+    /**
+     * Converts the value of a buffer size property, given as a number or
+     * as a string, to a size of at least one character.
+     *
+     * @param value a {@link java.lang.Number} or a {@link java.lang.String} object.
+     * @return an int.
+     */
+    protected static final int getSizeValue(Object value) {
+        return getSizeValue(value, 1);
+    } // getSizeValue(Object):int
+
+    /**
+     * Converts the value of a size property, given as a number or as a
+     * string, to a size of at least the given minimum.
+     *
+     * @param value a {@link java.lang.Number} or a {@link java.lang.String} object.
+     * @param minimum an int.
+     * @return an int.
+     */
+    protected static final int getSizeValue(Object value, int minimum) {
+        int size = value instanceof Number ? ((Number) value).intValue()
+                 : Integer.parseInt(String.valueOf(value).trim());
+        return Math.max(size, minimum);
+    } // getSizeValue(Object,int):int
+
     /**
      * Fixes Microsoft Windows&reg; specific characters.
      * <p>
@@ -1288,7 +1672,7 @@ public class HTMLScanner
                 }
             }
             else {
-                root = modifyName(root, fNamesElems);
+                root = fNameTable.modifyName(root, fNamesElems);
             }
             if (skipSpaces()) {
                 if (skip("PUBLIC", false)) {
@@ -1397,13 +1781,12 @@ public class HTMLScanner
         while (true) {
             while (fCurrentEntity.hasNext()) {
                 char c = fCurrentEntity.getNextChar();
-                if ((strict && (!Character.isLetterOrDigit(c) && c != '-' && c != '.' && c != ':' && c != '_'))
-                    || (!strict && (Character.isWhitespace(c) || c == '=' || c == '/' || c == '>'))) {
+                if (strict ? !CharacterClasses.isNameChar(c) : CharacterClasses.isNameEnd(c)) {
                 	fCurrentEntity.rewind();
                     break;
                 }
             }
-            if (fCurrentEntity.offset == fCurrentEntity.length) {
+            if (fCurrentEntity.offset == fCurrentEntity.length && !fCurrentEntity.isEndReached()) {
                 int length = fCurrentEntity.length - offset;
                 System.arraycopy(fCurrentEntity.buffer, offset, fCurrentEntity.buffer, 0, length);
                 int count = fCurrentEntity.load(length);
@@ -1417,7 +1800,7 @@ public class HTMLScanner
             }
         }
         int length = fCurrentEntity.offset - offset;
-        String name = length > 0 ? new String(fCurrentEntity.buffer, offset, length) : null;
+        String name = length > 0 ? fNameTable.getName(fCurrentEntity.buffer, offset, length) : null;
         if (DEBUG_BUFFER) { 
             fCurrentEntity.debugBufferIfNeeded(")scanName: ", " -> \"" + name + '"');
         }
@@ -1447,7 +1830,7 @@ public class HTMLScanner
             else if (c == -1) {
             	break;
             }
-            else if (!ENTITY_CHARS.get(c) && c != '#') {
+            else if (!CharacterClasses.isEntityChar(c) && c != '#') {
             	fCurrentEntity.rewind();
                 break;
             }
@@ -1488,6 +1871,7 @@ public class HTMLScanner
                 if (fFixWindowsCharRefs && fIso8859Encoding) {
                     value = fixWindowsCharacter(value);
                 }
+                countEntityReference();
                 if (content && fDocumentHandler != null && fElementCount >= fElementDepth) {
                     fEndLineNumber = fCurrentEntity.getLineNumber();
                     fEndColumnNumber = fCurrentEntity.getColumnNumber();
@@ -1544,6 +1928,7 @@ public class HTMLScanner
             }
             return -1;
         }
+        countEntityReference();
         if (content && fDocumentHandler != null && fElementCount >= fElementDepth) {
             fEndLineNumber = fCurrentEntity.getLineNumber();
             fEndColumnNumber = fCurrentEntity.getColumnNumber();
@@ -1565,6 +1950,31 @@ public class HTMLScanner
 
     } // scanEntityRef(XMLStringBuffer,boolean):int
 
+    /** Notifies the parse monitor that the content of a special element starts. */
+    private void startSpecialContent(String ename) {
+        if (fParseMonitor != null && fElementCount >= fElementDepth) {
+            fSpecialContentOffset = fCurrentEntity.getCharacterOffset();
+            fParseMonitor.startSpecialContent(ename);
+        }
+    } // startSpecialContent(String)
+
+    /**
+     * Notifies the parse monitor that the content of a special element
+     * ends at the given character offset.
+     */
+    private void endSpecialContent(String ename, int offset) {
+        if (fParseMonitor != null && fElementCount >= fElementDepth) {
+            fParseMonitor.endSpecialContent(ename, offset - fSpecialContentOffset);
+        }
+    } // endSpecialContent(String,int)
+
+    /** Counts a resolved entity reference in the parse statistics. */
+    private void countEntityReference() {
+        if (fStatistics != null && fElementCount >= fElementDepth) {
+            fStatistics.fEntityReferenceCount++;
+        }
+    } // countEntityReference()
+
     /**
      * Returns true if the specified text is present and is skipped.
      *
@@ -1577,6 +1987,10 @@ public class HTMLScanner
         int length = s != null ? s.length() : 0;
         for (int i = 0; i < length; i++) {
             if (fCurrentEntity.offset == fCurrentEntity.length) {
+                if (fCurrentEntity.isEndReached()) {
+                    fCurrentEntity.offset -= i;
+                    return false;
+                }
                 System.arraycopy(fCurrentEntity.buffer, fCurrentEntity.offset - i, fCurrentEntity.buffer, 0, i);
                 if (fCurrentEntity.load(i) == -1) {
                     fCurrentEntity.offset = 0;
@@ -1675,7 +2089,7 @@ public class HTMLScanner
                 }
             }
             char c = fCurrentEntity.getNextChar();
-            if (!Character.isWhitespace(c)) {
+            if (!CharacterClasses.isWhitespace(c)) {
             	fCurrentEntity.rewind();
                 break;
             }
@@ -1822,10 +2236,209 @@ public class HTMLScanner
                name.equals("quot") || name.equals("apos");
     } // builtinXmlRef(String):boolean
 
+    /**
+     * Returns true if the element belongs to the body of the document.
+     * Character encoding declarations found after such an element are
+     * ignored.
+     *
+     * @param ename The element name.
+     * @return a boolean.
+     */
+    protected static boolean startsBody(String ename) {
+        if (ename.equalsIgnoreCase("BODY")) {
+            return true;
+        }
+        HTMLElements.Element element = HTMLElements.getElement(ename);
+        return element.parent != null && element.parent.length > 0
+            && element.parent[0].code == HTMLElements.BODY;
+    } // startsBody(String):boolean
+
     //
     // Private methods
     //
 
+    /**
+     * Switches to the first character encoding declared in the prescanned
+     * bytes that differs from the current encoding and is compatible with
+     * it. Declarations that can't be applied are reported later by the
+     * content scanner.
+     *
+     * @return true if the encoding was changed.
+     */
+    private boolean changePrescannedEncoding() {
+        Vector charsets = new Vector();
+        new EncodingPrescanner(fByteStream.fByteBuffer, fByteStream.fPushbackOffset,
+                               fByteStream.fPushbackLength).scan(charsets);
+        for (int i = 0; i < charsets.size(); i++) {
+            String ianaEncoding = ((String)charsets.elementAt(i)).trim();
+            String javaEncoding = EncodingMap.getIANA2JavaMapping(ianaEncoding.toUpperCase(Locale.ENGLISH));
+            boolean mapped = javaEncoding != null;
+            if (!mapped) {
+                javaEncoding = ianaEncoding;
+            }
+            if (javaEncoding.equals(fJavaEncoding) || !isEncodingCompatible(javaEncoding, fJavaEncoding)) {
+                continue;
+            }
+            if (!mapped && fReportErrors) {
+                fErrorReporter.reportError("HTML1001", new Object[]{ianaEncoding});
+            }
+            fIANAEncoding = ianaEncoding;
+            fJavaEncoding = javaEncoding;
+            fIso8859Encoding = ianaEncoding.toUpperCase(Locale.ENGLISH).startsWith("ISO-8859")
+                            || ianaEncoding.equalsIgnoreCase(fDefaultIANAEncoding);
+            return true;
+        }
+        return false;
+    } // changePrescannedEncoding():boolean
+
+    /**
+     * Returns the number of bytes prescanned for the encoding. The bytes
+     * of a pushed document are always prescanned: they can't be played
+     * back.
+     */
+    private int getPrescanSize() {
+        return fPrescanSize == 0 && fPushStream != null ? DEFAULT_PRESCAN_SIZE : fPrescanSize;
+    } // getPrescanSize():int
+
+    /**
+     * Scans a pushed document as far as its bytes allow. The steps of the
+     * scanner are first tried without notifying the document handler, the
+     * error reporter, the statistics and the monitor, up to the first one
+     * that needs more bytes. The scanner then goes back and performs the
+     * complete steps for real: the events of a token are never sent
+     * before the whole token is pushed, and the incomplete token is
+     * scanned again from its beginning once enough bytes arrive.
+     * <p>
+     * The steps are performed again by number, which assumes that the
+     * steps of the document don't depend on the document handler. A
+     * handler may still call back into the scanner: the content it
+     * inserts with {@link #pushInputSource(XMLInputSource)} is scanned
+     * in steps of its own, which aren't counted, and up to its end before
+     * this method returns; the content evaluated with
+     * {@link #evaluateInputSource(XMLInputSource)} is scanned within the
+     * step of the handler.
+     */
+    private void scanPushedBytes() throws IOException {
+        if (fPushSource != null) {
+            // wait for the bytes searched for the encoding
+            if (!fPushStream.isEnded() && fPushStream.available() < getPrescanSize() + 3) {
+                return;
+            }
+            XMLInputSource source = fPushSource;
+            fPushSource = null;
+            setInputSource(source);
+        }
+        if (fPushStream.isEnded()) {
+            // nothing can be missing anymore
+            fPushReader.unmark();
+            scanDocument(true);
+            return;
+        }
+        // the incomplete token is tried again once its length has been
+        // pushed, which keeps the characters scanned again proportional
+        // to the document
+        if (fPushStream.getTotalLength() < fPushRetryLength) {
+            return;
+        }
+
+        // save the state at the beginning of the next step
+        final CurrentEntity entity = fCurrentEntity;
+        final Scanner scanner = fScanner;
+        final short scannerState = fScannerState;
+        final String specialElementName = fSpecialScanner.fElementName;
+        final int elementCount = fElementCount;
+        final PlaybackInputStream byteStream = fByteStream;
+        final int lineNumber = entity.lineNumber_;
+        final int columnNumber = entity.columnNumber_;
+        final int characterOffset = entity.characterOffset_;
+        final int beginLineNumber = fBeginLineNumber;
+        final int beginColumnNumber = fBeginColumnNumber;
+        final int beginCharacterOffset = fBeginCharacterOffset;
+        final int endLineNumber = fEndLineNumber;
+        final int endColumnNumber = fEndColumnNumber;
+        final int endCharacterOffset = fEndCharacterOffset;
+
+        // count the steps the pushed bytes complete
+        final XMLDocumentHandler documentHandler = fDocumentHandler;
+        final boolean reportErrors = fReportErrors;
+        final HTMLParseStatistics statistics = fStatistics;
+        final HTMLParseMonitor parseMonitor = fParseMonitor;
+        fDocumentHandler = null;
+        fReportErrors = false;
+        fStatistics = null;
+        fParseMonitor = null;
+        int count = 0;
+        try {
+            boolean more = true;
+            while (more) {
+                more = scanDocument(false);
+                count++;
+            }
+        }
+        catch (PushInputStream.PendingInputException e) {
+            // the next token isn't complete
+        }
+        catch (IOException e) {
+            // the failing step is performed again below
+            count++;
+        }
+        catch (RuntimeException e) {
+            count++;
+        }
+        finally {
+            fDocumentHandler = documentHandler;
+            fReportErrors = reportErrors;
+            fStatistics = statistics;
+            fParseMonitor = parseMonitor;
+        }
+
+        // go back and perform the complete steps
+        fCurrentEntity = entity;
+        setScanner(scanner);
+        setScannerState(scannerState);
+        if (specialElementName != null) {
+            fSpecialScanner.setElementName(specialElementName);
+        }
+        fElementCount = elementCount;
+        fByteStream = byteStream;
+        entity.clearBuffer(lineNumber, columnNumber, characterOffset);
+        fPushReader.reset();
+        fBeginLineNumber = beginLineNumber;
+        fBeginColumnNumber = beginColumnNumber;
+        fBeginCharacterOffset = beginCharacterOffset;
+        fEndLineNumber = endLineNumber;
+        fEndColumnNumber = endColumnNumber;
+        fEndCharacterOffset = endCharacterOffset;
+        int steps = 0;
+        while (steps < count) {
+            if (fCurrentEntityStack.isEmpty()) {
+                steps++;
+            }
+            scanDocument(false);
+        }
+        while (!fCurrentEntityStack.isEmpty()) {
+            scanDocument(false);
+        }
+        fPushReader.mark(fCurrentEntity.length - fCurrentEntity.offset);
+        fPushRetryLength = fPushStream.getTotalLength() + fPushReader.getMarkedLength();
+    } // scanPushedBytes()
+
+    /**
+     * Removes all spaces for the string (remember: JDK 1.3!)
+     */
+    private static String removeSpaces(final String content) {
+    	StringBuffer sb = null;
+    	for (int i=content.length()-1; i>=0; --i) {
+    		if (Character.isWhitespace(content.charAt(i))) {
+    			if (sb == null) {
+    				sb = new StringBuffer(content);
+    			}
+    			sb.deleteCharAt(i);
+    		}
+    	}
+		return (sb == null) ? content : sb.toString();
+	}
+
     /**
      * Append a character to an XMLStringBuffer. The character is an int value, and can either be a
      * single UTF-16 character or a supplementary character represented by two UTF-16 code points.
@@ -1913,7 +2526,7 @@ public class HTMLScanner
         // Data
         //
 
-        /** Character stream. */
+        /** Character stream, null if the characters are scanned in place. */
         private Reader stream_;
 
         /** Encoding. */
@@ -1945,8 +2558,11 @@ public class HTMLScanner
 
         // buffer
 
-        /** Character buffer. */
-        public char[] buffer = new char[DEFAULT_BUFFER_SIZE];
+        /** 
+         * Character buffer. When the characters are scanned in place, this
+         * is the array of the application and must not be modified.
+         */
+        public char[] buffer;
 
         /** Offset into character buffer. */
         public int offset = 0;
@@ -1956,6 +2572,18 @@ public class HTMLScanner
         
         private boolean endReached_ = false;
 
+        /** Maximum size of the buffer. */
+        int maxBufferSize = Integer.MAX_VALUE;
+
+        /** True if the buffer was allocated for the entity and can be reused. */
+        boolean ownBuffer;
+
+        /** Parse statistics, if collected. */
+        HTMLParseStatistics statistics;
+
+        /** Parse monitor, if any. */
+        HTMLParseMonitor monitor;
+
         //
         // Constructors
         //
@@ -1964,13 +2592,41 @@ public class HTMLScanner
         public CurrentEntity(Reader stream, String encoding, 
                              String publicId, String baseSystemId,
                              String literalSystemId, String expandedSystemId) {
+            this(stream, new char[DEFAULT_BUFFER_SIZE], encoding, publicId, baseSystemId,
+                 literalSystemId, expandedSystemId);
+        } // <init>(Reader,String,String,String,String)
+
+        /** 
+         * Constructs an entity from the specified stream, reading it in the
+         * given buffer.
+         */
+        public CurrentEntity(Reader stream, char[] buffer, String encoding, 
+                             String publicId, String baseSystemId,
+                             String literalSystemId, String expandedSystemId) {
             stream_ = stream;
+            this.buffer = buffer;
+            ownBuffer = true;
             this.encoding = encoding;
             this.publicId = publicId;
             this.baseSystemId = baseSystemId;
             this.literalSystemId = literalSystemId;
             this.expandedSystemId = expandedSystemId;
-        } // <init>(Reader,String,String,String,String)
+        } // <init>(Reader,char[],String,String,String,String)
+
+        /** Constructs an entity scanning the specified characters in place. */
+        public CurrentEntity(char[] characters, int offset, int length, String encoding,
+                             String publicId, String baseSystemId,
+                             String literalSystemId, String expandedSystemId) {
+            buffer = characters;
+            this.offset = offset;
+            this.length = offset + length;
+            endReached_ = true;
+            this.encoding = encoding;
+            this.publicId = publicId;
+            this.baseSystemId = baseSystemId;
+            this.literalSystemId = literalSystemId;
+            this.expandedSystemId = expandedSystemId;
+        } // <init>(char[],int,int,String,String,String,String,String)
 
 		private char getCurrentChar() {
         	return buffer[offset];
@@ -1985,6 +2641,9 @@ public class HTMLScanner
         	return buffer[offset++];
         }
         private void closeQuietly() {
+            if (stream_ == null) {
+                return;
+            }
             try {
                 stream_.close();
             }
@@ -1993,6 +2652,48 @@ public class HTMLScanner
             }
 		}
 
+        /**
+         * Indicates if all the characters are in the buffer: the end of the
+         * stream has been reached or the characters are scanned in place.
+         */
+        boolean isEndReached() {
+            return endReached_;
+        }
+
+        /**
+         * Skips the characters of the buffer up to the next '&lt;', '&amp;',
+         * '\r' or '\n' and returns the number of characters skipped. The
+         * position is updated once for the whole run of characters.
+         */
+        private int skipCharacters() {
+            return skipCharacters('<', '&', '<');
+        } // skipCharacters():int
+
+        /**
+         * Skips the characters of the buffer up to the next '\r', '\n' or
+         * given delimiter, all below the letters, and returns the number of
+         * characters skipped.
+         */
+        private int skipCharacters(char delimiter1, char delimiter2, char delimiter3) {
+            final char[] chars = buffer;
+            final int end = length;
+            final char max = (char) Math.max(delimiter1, Math.max(delimiter2, delimiter3));
+            int i = offset;
+            while (i < end) {
+                char c = chars[i];
+                if (c <= max && (c == delimiter1 || c == delimiter2 || c == delimiter3
+                                 || c == '\n' || c == '\r')) {
+                    break;
+                }
+                i++;
+            }
+            int count = i - offset;
+            offset = i;
+            characterOffset_ += count;
+            columnNumber_ += count;
+            return count;
+        } // skipCharacters(char,char,char):int
+
 		/**
          * Indicates if there are characters left.
          */
@@ -2010,11 +2711,28 @@ public class HTMLScanner
             if (DEBUG_BUFFER) { 
                 debugBufferIfNeeded("(load: ");
             }
-            // resize buffer, if needed
+            if (stream_ == null) {
+                // scanned in place: there is nothing more to read
+                length = offset;
+                this.offset = offset;
+                return -1;
+            }
+            // resize buffer, if needed: doubling it keeps the number of
+            // copies logarithmic when a token or a look-ahead is long
             if (offset == buffer.length) {
-                int adjust = buffer.length / 4;
-                char[] array = new char[buffer.length + adjust];
+                if (buffer.length >= maxBufferSize) {
+                    throw new IOException("character buffer exceeds the maximum size of "
+                                          + maxBufferSize + " characters");
+                }
+                int size = buffer.length > maxBufferSize / 2 ? maxBufferSize : buffer.length * 2;
+                char[] array = new char[size];
                 System.arraycopy(buffer, 0, array, 0, length);
+                if (statistics != null) {
+                    statistics.fBufferGrowthCount++;
+                }
+                if (monitor != null) {
+                    monitor.bufferResized(buffer.length, array.length);
+                }
                 buffer = array;
             }
             // read a block of characters
@@ -2108,11 +2826,23 @@ public class HTMLScanner
             }
         } // printBuffer()
 
-		private void setStream(final InputStreamReader inputStreamReader) {
-            stream_ = inputStreamReader;
+        /**
+         * Empties the buffer and moves to the given position: the stream
+         * went back to the characters following this position.
+         */
+        private void clearBuffer(int lineNumber, int columnNumber, int characterOffset) {
+            offset = length = 0;
+            lineNumber_ = lineNumber;
+            columnNumber_ = columnNumber;
+            characterOffset_ = characterOffset;
+        } // clearBuffer(int,int,int)
+
+		private void setStream(final Reader reader) {
+            stream_ = reader;
+            endReached_ = false;
             offset = length = characterOffset_ = 0;
             lineNumber_ = columnNumber_ = 1;
-            encoding = inputStreamReader.getEncoding();
+            encoding = DecodingReader.getEncoding(reader);
 		}
 		
 		/**
@@ -2149,6 +2879,7 @@ public class HTMLScanner
         	columnNumber_ = columnNumber;
         	this.characterOffset_ = characterOffset;
         	this.buffer = buffer.ch;
+        	ownBuffer = false;
         	this.offset = buffer.offset;
         	this.length = buffer.length;
 		}
@@ -2189,6 +2920,9 @@ public class HTMLScanner
         /** Attributes. */
         private final XMLAttributesImpl fAttributes = new XMLAttributesImpl();
 
+        /** The content of a script, iframe, noscript or noframes element. */
+        private final XMLStringBuffer fContentBuffer = new XMLStringBuffer(1024);
+
         //
         // Scanner methods
         //
@@ -2262,25 +2996,34 @@ public class HTMLScanner
                                 fElementCount++;
                                 fSingleBoolean[0] = false;
                                 final String ename = scanStartElement(fSingleBoolean);
-                                final String enameLC = ename == null ? null : ename.toLowerCase();
+                                final String enameLC = ename == null ? null : HTMLElements.toLowerCase(ename);
                                 fBeginLineNumber = fCurrentEntity.getLineNumber();
                                 fBeginColumnNumber = fCurrentEntity.getColumnNumber();
                                 fBeginCharacterOffset = fCurrentEntity.getCharacterOffset();
                                 if ("script".equals(enameLC)) {
+                                	startSpecialContent(ename);
                                 	scanScriptContent();
+                                	endSpecialContent(ename, fCurrentEntity.getCharacterOffset());
                                 }
                                 else if (!fAllowSelfclosingTags && !fAllowSelfclosingIframe && "iframe".equals(enameLC)) {
+                                	startSpecialContent(ename);
                                 	scanUntilEndTag("iframe");
+                                	endSpecialContent(ename, fCurrentEntity.getCharacterOffset());
                                 }
                                 else if (!fParseNoScriptContent && "noscript".equals(enameLC)) {
+                                	startSpecialContent(ename);
                                 	scanUntilEndTag("noscript");
+                                	endSpecialContent(ename, fCurrentEntity.getCharacterOffset());
                                 }
                                 else if (!fParseNoFramesContent && "noframes".equals(enameLC)) {
+                                	startSpecialContent(ename);
                                 	scanUntilEndTag("noframes");
+                                	endSpecialContent(ename, fCurrentEntity.getCharacterOffset());
                                 }
                                 else if (ename != null && !fSingleBoolean[0] 
                                     && HTMLElements.getElement(enameLC).isSpecial() 
                                     && (!ename.equalsIgnoreCase("TITLE") || isEnded(enameLC))) {
+                                    startSpecialContent(ename);
                                     setScanner(fSpecialScanner.setElementName(ename));
                                     setScannerState(STATE_CONTENT);
                                     return true;
@@ -2290,6 +3033,9 @@ public class HTMLScanner
                             break;
                         }
                         case STATE_START_DOCUMENT: {
+                            if (fParseMonitor != null) {
+                                fParseMonitor.startDocument(fCurrentEntity.expandedSystemId, fIANAEncoding);
+                            }
                             if (fDocumentHandler != null && fElementCount >= fElementDepth) {
                                 if (DEBUG_CALLBACKS) {
                                     System.out.println("startDocument()");
@@ -2302,7 +3048,7 @@ public class HTMLScanner
                             }
                             if (fInsertDoctype && fDocumentHandler != null) {
                                 String root = HTMLElements.getElement(HTMLElements.HTML).name;
-                                root = modifyName(root, fNamesElems);
+                                root = fNameTable.modifyName(root, fNamesElems);
                                 String pubid = fDoctypePubid;
                                 String sysid = fDoctypeSysid;
                                 fDocumentHandler.doctypeDecl(root, pubid, sysid,
@@ -2312,6 +3058,9 @@ public class HTMLScanner
                             break;
                         }
                         case STATE_END_DOCUMENT: {
+                            if (fParseMonitor != null) {
+                                fParseMonitor.endDocument(fCurrentEntity.getCharacterOffset());
+                            }
                             if (fDocumentHandler != null && fElementCount >= fElementDepth && complete) {
                                 if (DEBUG_CALLBACKS) {
                                     System.out.println("endDocument()");
@@ -2331,11 +3080,14 @@ public class HTMLScanner
                 catch (EOFException e) {
                     if (fCurrentEntityStack.empty()) {
                         setScannerState(STATE_END_DOCUMENT);
+                        next = true;
                     }
                     else {
                         fCurrentEntity = (CurrentEntity)fCurrentEntityStack.pop();
+                        // the steps of a pushed document don't continue
+                        // past the end of inserted content
+                        next = fPushStream == null;
                     }
-                    next = true;
                 }
             } while (next || complete);
             return true;
@@ -2348,22 +3100,23 @@ public class HTMLScanner
          * @throws IOException if an IO error occurs
          */
         private void scanUntilEndTag(final String tagName) throws IOException {
-        	final XMLStringBuffer buffer = new XMLStringBuffer();
-        	final String end = "/" + tagName;
-        	final int lengthToScan = tagName.length() + 2;
+        	final XMLStringBuffer buffer = fContentBuffer;
+        	buffer.clear();
         	
             while (true) {
+                // the text up to the next '<' or newline is appended at once
+                int offset = fCurrentEntity.offset;
+                int count = fCurrentEntity.skipCharacters('<', '<', '<');
+                if (count > 0) {
+                    buffer.append(fCurrentEntity.buffer, offset, count);
+                }
                 int c = fCurrentEntity.read();
                 if (c == -1) {
                     break;
                 }
-                if (c == '<') {
-                	final String next = nextContent(lengthToScan) + " ";
-                	if (next.length() >= lengthToScan && end.equalsIgnoreCase(next.substring(0, end.length()))
-            			&& ('>' == next.charAt(lengthToScan - 1) || Character.isWhitespace(next.charAt(lengthToScan - 1)))) {
-                		fCurrentEntity.rewind();
-	                    break;
-                	}
+                if (c == '<' && isEndTag(tagName)) {
+                	fCurrentEntity.rewind();
+                	break;
             	}
             	if (c == '\r' || c == '\n') {
             		fCurrentEntity.rewind();
@@ -2384,29 +3137,62 @@ public class HTMLScanner
             }
         }
         
+        /**
+         * Scans the content of a script up to its end tag. An end tag in a
+         * comment doesn't end the script, unless the comment isn't closed
+         * before the end of the document. The comment delimiters are found
+         * while scanning: the document is only looked ahead at an end tag
+         * in a comment, once for each comment.
+         */
         private void scanScriptContent() throws IOException {
 
-        	final XMLStringBuffer buffer = new XMLStringBuffer();
-            boolean waitForEndComment = false;
+        	final XMLStringBuffer buffer = fContentBuffer;
+        	buffer.clear();
+            // characters of "<!--" matched, and dashes just read
+            int opening = 0;
+            int dashes = 0;
+            // true after "<!--", and once "-->" is known to follow
+            boolean inComment = false;
+            boolean commentEnds = false;
             while (true) {
+                // the text up to the next character of a comment or end
+                // tag delimiter, or newline, is appended at once
+                int offset = fCurrentEntity.offset;
+                int count = fCurrentEntity.skipCharacters('<', '-', '>');
+                if (count > 0) {
+                    buffer.append(fCurrentEntity.buffer, offset, count);
+                    opening = opening == 1 && count == 1 && fCurrentEntity.buffer[offset] == '!' ? 2 : 0;
+                    dashes = 0;
+                }
                 int c = fCurrentEntity.read();
                 if (c == -1) {
                     break;
                 }
-                else if (c == '-' && endsWith(buffer, "<!-"))
-            	{
-            		waitForEndComment = endCommentAvailable();
-            	}
-                else if (!waitForEndComment && c == '<') {
-                	final String next = nextContent(8) + " ";
-                	if (next.length() >= 8 && "/script".equalsIgnoreCase(next.substring(0, 7))
-                			&& ('>' == next.charAt(7) || Character.isWhitespace(next.charAt(7)))) {
-                		fCurrentEntity.rewind();
-                        break;
-                	}
-                }
-                else if (c == '>' && endsWith(buffer, "--"))  {
-               		waitForEndComment = false;
+                if (c == '-') {
+                    dashes++;
+                    if (opening >= 2 && ++opening == 4) {
+                        opening = 0;
+                        if (!inComment) {
+                            inComment = true;
+                            commentEnds = false;
+                        }
+                    }
+                }
+                else {
+                    if (c == '>' && dashes >= 2) {
+                        inComment = commentEnds = false;
+                    }
+                    else if (c == '<' && isEndTag("script")) {
+                        if (inComment && !commentEnds) {
+                            inComment = commentEnds = isCommentEndAhead();
+                        }
+                        if (!inComment) {
+                            fCurrentEntity.rewind();
+                            break;
+                        }
+                    }
+                    opening = c == '<' ? 1 : 0;
+                    dashes = 0;
                 }
 
                 if (c == '\r' || c == '\n') {
@@ -2457,10 +3243,10 @@ public class HTMLScanner
             for (nbRead=0; nbRead<len; ++nbRead) {
     			// read() should not clear the buffer
     	        if (fCurrentEntity.offset == fCurrentEntity.length) {
-    	        	if (fCurrentEntity.length == fCurrentEntity.buffer.length) {
-    	        		fCurrentEntity.load(fCurrentEntity.buffer.length);
-    	        	}
-    	        	else { // everything was already loaded
+    	        	// the stream may have returned fewer characters than
+    	        	// the buffer can hold without being at its end
+    	        	if (fCurrentEntity.isEndReached()
+    	        	    || fCurrentEntity.load(fCurrentEntity.length) == -1) {
     	        		break;
     	        	}
     	        }
@@ -2475,6 +3261,36 @@ public class HTMLScanner
 	        return new String(buff, 0, nbRead);
     	}
 
+        /**
+         * Indicates if the characters following the '&lt;' just read are
+         * the end tag of the given element: '/', the name in any case and
+         * whitespace, '&gt;' or the end of the document. The position
+         * doesn't change.
+         *
+         * @param tagName the lower case name of the element
+         * @throws IOException if an IO error occurs
+         */
+        private boolean isEndTag(final String tagName) throws IOException {
+            final int originalOffset = fCurrentEntity.offset;
+            final int originalColumnNumber = fCurrentEntity.getColumnNumber();
+            final int originalCharacterOffset = fCurrentEntity.getCharacterOffset();
+
+            boolean endTag = readPreservingBufferContent() == '/';
+            final int length = tagName.length();
+            for (int i = 0; i < length && endTag; i++) {
+                int c = readPreservingBufferContent();
+                char n = tagName.charAt(i);
+                endTag = c != -1 && (c == n || Character.toUpperCase((char) c) == Character.toUpperCase(n)
+                                     || Character.toLowerCase((char) c) == Character.toLowerCase(n));
+            }
+            if (endTag) {
+                int c = readPreservingBufferContent();
+                endTag = c == -1 || c == '>' || CharacterClasses.isWhitespace((char) c);
+            }
+            fCurrentEntity.restorePosition(originalOffset, originalColumnNumber, originalCharacterOffset);
+            return endTag;
+        } // isEndTag(String):boolean
+
 		//
         // Protected methods
         //
@@ -2495,19 +3311,11 @@ public class HTMLScanner
                    }
                    break;
                }
-               char c;
-               int offset = fCurrentEntity.offset - newlines;
-               for (int i = offset; i < fCurrentEntity.offset; i++) {
-                   fCurrentEntity.buffer[i] = '\n';
-               }
-               while (fCurrentEntity.hasNext()) {
-                   c = fCurrentEntity.getNextChar();
-                   if (c == '<' || c == '&' || c == '\n' || c == '\r') {
-                    	fCurrentEntity.rewind();
-                        break;
-                    }
-                }
-                if (fCurrentEntity.offset > offset && 
+               // the newlines are normalized while appending, the buffer
+               // may be the array of the application
+               int offset = fCurrentEntity.offset;
+               fCurrentEntity.skipCharacters();
+                if ((newlines > 0 || fCurrentEntity.offset > offset) && 
                     fDocumentHandler != null && fElementCount >= fElementDepth) {
                     if (DEBUG_CALLBACKS) {
                     	final XMLString xmlString = new XMLString(fCurrentEntity.buffer, offset, fCurrentEntity.offset - offset);
@@ -2516,18 +3324,23 @@ public class HTMLScanner
                     fEndLineNumber = fCurrentEntity.getLineNumber();
                     fEndColumnNumber = fCurrentEntity.getColumnNumber();
                     fEndCharacterOffset = fCurrentEntity.getCharacterOffset();
+                    for (int i = 0; i < newlines; i++) {
+                        fStringBuffer.append('\n');
+                    }
                     fStringBuffer.append(fCurrentEntity.buffer, offset, fCurrentEntity.offset - offset);
                 }
                 if (DEBUG_BUFFER) { 
                     fCurrentEntity.debugBufferIfNeeded(")scanCharacters: ");
                 }
 
-                boolean hasNext = fCurrentEntity.offset  < fCurrentEntity.buffer.length;
-                int next = hasNext ? fCurrentEntity.getCurrentChar() : -1; 
-                
-                if(next == '&' || next == '<' || next == -1) {
-                     break;
-                 }
+                // the characters following the loaded ones are loaded by
+                // the next iteration, up to the end of the document
+                if (fCurrentEntity.offset < fCurrentEntity.length) {
+                    int next = fCurrentEntity.getCurrentChar();
+                    if (next == '&' || next == '<') {
+                        break;
+                    }
+                }
 
             } //end while
 
@@ -2857,7 +3670,7 @@ public class HTMLScanner
                 }
                 return null;
             }
-            ename = modifyName(ename, fNamesElems);
+            ename = fNameTable.modifyName(ename, fNamesElems);
             fAttributes.removeAllAttributes();
             int beginLineNumber = fBeginLineNumber;
             int beginColumnNumber = fBeginColumnNumber;
@@ -2896,19 +3709,10 @@ public class HTMLScanner
                         }
                     }
                 }
-                else if (ename.equalsIgnoreCase("BODY")) {
+                else if (startsBody(ename)) {
                     fByteStream.clear();
                     fByteStream = null;
                 }
-                else {
-                     HTMLElements.Element element = HTMLElements.getElement(ename);
-                     if (element.parent != null && element.parent.length > 0) {
-                         if (element.parent[0].code == HTMLElements.BODY) {
-                             fByteStream.clear();
-                             fByteStream = null;
-                         }
-                     }
-                }
             }
             if (fDocumentHandler != null && fElementCount >= fElementDepth) {
                 fQName.setValues(null, ename, ename, null);
@@ -2925,25 +3729,12 @@ public class HTMLScanner
                     fDocumentHandler.startElement(fQName, fAttributes, locationAugs());
                 }
             }
+            if (fStatistics != null && fElementCount >= fElementDepth) {
+                fStatistics.fElementCount++;
+            }
             return ename;
         } // scanStartElement():ename
 
-        /**
-         * Removes all spaces for the string (remember: JDK 1.3!)
-         */
-        private String removeSpaces(final String content) {
-        	StringBuffer sb = null;
-        	for (int i=content.length()-1; i>=0; --i) {
-        		if (Character.isWhitespace(content.charAt(i))) {
-        			if (sb == null) {
-        				sb = new StringBuffer(content);
-        			}
-        			sb.deleteCharAt(i);
-        		}
-        	}
-			return (sb == null) ? content : sb.toString();
-		}
-
 		/**
          * Tries to change the encoding used to read the input stream to the specified one
          * @param charset the charset that should be used
@@ -2974,18 +3765,33 @@ public class HTMLScanner
 			            if (fReportErrors) {
 			                fErrorReporter.reportError("HTML1015", new Object[]{javaEncoding,fJavaEncoding});
 			            }
+			     	}
+			     	// the bytes read so far are no longer buffered
+			     	else if (fByteStream.fCleared) {
+			            if (fReportErrors) {
+			                fErrorReporter.reportWarning("HTML1016", new Object[]{charset});
+			            }
 			     	}
 			  		// change the charset
 			     	else {
 			            fIso8859Encoding = ianaEncoding == null 
 			                    || ianaEncoding.toUpperCase(Locale.ENGLISH).startsWith("ISO-8859")
 			                    || ianaEncoding.equalsIgnoreCase(fDefaultIANAEncoding);
+			            final String previousEncoding = fJavaEncoding;
 			            fJavaEncoding = javaEncoding;
-			            fCurrentEntity.setStream(new InputStreamReader(fByteStream, javaEncoding));
+			            fCurrentEntity.setStream(fReaderPool.getReader(fByteStream, javaEncoding, fBufferSize));
 			            fByteStream.playback();
 			            fElementDepth = fElementCount;
 			            fElementCount = 0;
 	                    encodingChanged = true;
+	                    if (fStatistics != null) {
+	                        fStatistics.fEncodingChangeCount++;
+	                        fStatistics.fReplayedByteCount += fByteStream.fByteLength - fByteStream.fByteOffset;
+	                    }
+	                    if (fParseMonitor != null) {
+	                        fParseMonitor.encodingChanged(previousEncoding, javaEncoding,
+	                                                      fByteStream.fByteLength - fByteStream.fByteOffset);
+	                    }
 			     	}
 			     }
 			}
@@ -3069,7 +3875,7 @@ public class HTMLScanner
             if (!skippedSpaces && fReportErrors) {
                 fErrorReporter.reportError("HTML1013", new Object[] { aname });
             }
-            aname = modifyName(aname, fNamesAttrs);
+            aname = fNameTable.modifyName(aname, fNamesAttrs);
             skipSpaces();
             c = fCurrentEntity.read();
             if (c == -1) {
@@ -3279,7 +4085,7 @@ public class HTMLScanner
             }
             skipMarkup(false);
             if (ename != null) {
-                ename = modifyName(ename, fNamesElems);
+                ename = fNameTable.modifyName(ename, fNamesElems);
                 if (fDocumentHandler != null && fElementCount >= fElementDepth) {
                     fQName.setValues(null, ename, ename, null);
                     if (DEBUG_CALLBACKS) {
@@ -3298,13 +4104,61 @@ public class HTMLScanner
         //
 
         /**
-         * Returns true if the given element has an end-tag.
+         * Returns true if the given element has an end-tag within the next
+         * {@link #TITLE_LOOK_AHEAD} characters. The following characters
+         * are loaded as needed, without growing the buffer beyond its
+         * maximum size, so that the result doesn't depend on the size of
+         * the buffer.
          */
-        private boolean isEnded(String ename) {
-            String content = new String(fCurrentEntity.buffer, fCurrentEntity.offset,
-                fCurrentEntity.length - fCurrentEntity.offset);
-            return content.toLowerCase().indexOf("</" + ename.toLowerCase() + ">") != -1;
-        }
+        private boolean isEnded(String ename) throws IOException {
+            final int originalOffset = fCurrentEntity.offset;
+            final int originalColumnNumber = fCurrentEntity.getColumnNumber();
+            final int originalCharacterOffset = fCurrentEntity.getCharacterOffset();
+            final int limit = originalOffset + TITLE_LOOK_AHEAD + ename.length() + 3;
+            try {
+                int from = originalOffset;
+                while (true) {
+                    if (indexOfEndTag(ename, from, Math.min(fCurrentEntity.length, limit)) != -1) {
+                        return true;
+                    }
+                    // the end tag may span the characters loaded next
+                    from = Math.max(from, fCurrentEntity.length - ename.length() - 2);
+                    if (fCurrentEntity.length >= limit
+                        || fCurrentEntity.isEndReached()
+                        || (fCurrentEntity.length == fCurrentEntity.buffer.length
+                            && fCurrentEntity.length >= fCurrentEntity.maxBufferSize)
+                        || fCurrentEntity.load(fCurrentEntity.length) == -1) {
+                        return false;
+                    }
+                }
+            }
+            finally {
+                fCurrentEntity.restorePosition(originalOffset, originalColumnNumber, originalCharacterOffset);
+            }
+        } // isEnded(String):boolean
+
+        /**
+         * Returns the offset of the end-tag of the given element in the
+         * characters of the buffer from <code>from</code> to
+         * <code>end</code>, ignoring case, or -1.
+         */
+        private int indexOfEndTag(String ename, int from, int end) {
+            final char[] buffer = fCurrentEntity.buffer;
+            final int nameLength = ename.length();
+            final int last = end - nameLength - 3;
+            OUTER: for (int i = from; i <= last; i++) {
+                if (buffer[i] != '<' || buffer[i + 1] != '/' || buffer[i + nameLength + 2] != '>') {
+                    continue;
+                }
+                for (int j = 0; j < nameLength; j++) {
+                    if (Character.toLowerCase(buffer[i + 2 + j]) != Character.toLowerCase(ename.charAt(j))) {
+                        continue OUTER;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        } // indexOfEndTag(String,int):int
 
     } // class ContentScanner
 
@@ -3404,7 +4258,7 @@ public class HTMLScanner
                                 if (ename != null) {
                                     if (ename.equalsIgnoreCase(fElementName)) {
                                         if (fCurrentEntity.read() == '>') {
-                                            ename = modifyName(ename, fNamesElems);
+                                            ename = fNameTable.modifyName(ename, fNamesElems);
                                             if (fDocumentHandler != null && fElementCount >= fElementDepth) {
                                                 fQName.setValues(null, ename, ename, null);
                                                 if (DEBUG_CALLBACKS) {
@@ -3415,6 +4269,8 @@ public class HTMLScanner
                                                 fEndCharacterOffset = fCurrentEntity.getCharacterOffset();
                                                 fDocumentHandler.endElement(fQName, locationAugs());
                                             }
+                                            // the content ends before the end tag
+                                            endSpecialContent(fElementName, fBeginCharacterOffset);
                                             setScanner(fContentScanner);
                                             setScannerState(STATE_CONTENT);
                                             return true;
@@ -3469,27 +4325,28 @@ public class HTMLScanner
             }
             
             while (true) {
-                int c = fCurrentEntity.read();
-
-                if (c == -1 || (c == '<' || c == '&')) {
-                    if (c != -1) {
-                    	fCurrentEntity.rewind();
+                if (!fCurrentEntity.hasNext()) {
+                    if (fCurrentEntity.isEndReached() || fCurrentEntity.load(0) == -1) {
+                        break;
                     }
+                    continue;
+                }
+                int offset = fCurrentEntity.offset;
+                int count = fCurrentEntity.skipCharacters();
+                if (count > 0) {
+                    buffer.append(fCurrentEntity.buffer, offset, count);
+                }
+                if (!fCurrentEntity.hasNext()) {
+                    continue;
+                }
+                char c = fCurrentEntity.getCurrentChar();
+                if (c == '<' || c == '&') {
                     break;
                 }
                 // Patch supplied by Jonathan Baxter
-                else if (c == '\r' || c == '\n') {
-                	fCurrentEntity.rewind();
-                    int newlines = skipNewlines();
-                    for (int i = 0; i < newlines; i++) {
-                        buffer.append('\n');
-                    }
-                }
-                else {
-                    appendChar(buffer, c);
-                    if (c == '\n') {
-                        fCurrentEntity.incLine();
-                    }
+                int newlines = skipNewlines();
+                for (int i = 0; i < newlines; i++) {
+                    buffer.append('\n');
                 }
             }
 
@@ -3537,6 +4394,10 @@ public class HTMLScanner
      * If the buffer is never played back or cleared, this input stream
      * will continue to buffer the entire stream. Therefore, it is very
      * important to use this stream correctly.
+     * <p>
+     * Alternatively, the {@code prescan} method reads ahead a bounded
+     * number of bytes, which can be searched for an encoding declaration
+     * before the stream is decoded, and stops the buffering.
      *
      * @author Andy Clark
      */
@@ -3637,6 +4498,35 @@ public class HTMLScanner
             fPushbackLength = 2;
         } // detectEncoding()
 
+        /**
+         * Reads ahead up to the specified number of bytes and stops the
+         * buffering: the bytes read ahead are returned again by the next
+         * reads but can't be played back later. The bytes are available in
+         * the byte buffer from the pushback offset to the pushback length.
+         *
+         * @param size The number of bytes to read ahead.
+         */
+        public void prescan(int size) throws IOException {
+            if (fPushbackOffset >= fPushbackLength) {
+                fPushbackOffset = fByteLength;
+            }
+            int end = fPushbackOffset + size;
+            if (end > fByteBuffer.length) {
+                byte[] newarray = new byte[end];
+                System.arraycopy(fByteBuffer, 0, newarray, 0, fByteLength);
+                fByteBuffer = newarray;
+            }
+            while (fByteLength < end) {
+                int count = in.read(fByteBuffer, fByteLength, end - fByteLength);
+                if (count == -1) {
+                    break;
+                }
+                fByteLength += count;
+            }
+            fPushbackLength = fByteLength;
+            fCleared = true;
+        } // prescan(int)
+
         /** Playback buffer contents. */
         public void playback() {
             fPlayback = true;
@@ -3653,7 +4543,9 @@ public class HTMLScanner
         public void clear() {
             if (!fPlayback) {
                 fCleared = true;
-                fByteBuffer = null;
+                if (fPushbackOffset >= fPushbackLength) {
+                    fByteBuffer = null;
+                }
             }
         } // clear()
 
@@ -3667,13 +4559,13 @@ public class HTMLScanner
                 System.out.println("(read");
             }
             if (fPushbackOffset < fPushbackLength) {
-                return fByteBuffer[fPushbackOffset++];
+                return fByteBuffer[fPushbackOffset++] & 0xFF;
             }
             if (fCleared) {
                 return in.read();
             }
             if (fPlayback) {
-                int c = fByteBuffer[fByteOffset++];
+                int c = fByteBuffer[fByteOffset++] & 0xFF;
                 if (fByteOffset == fByteLength) {
                     fCleared = true;
                     fByteBuffer = null;
@@ -3686,7 +4578,7 @@ public class HTMLScanner
             int c = in.read();
             if (c != -1) {
                 if (fByteLength == fByteBuffer.length) {
-                    byte[] newarray = new byte[fByteLength + 1024];
+                    byte[] newarray = new byte[fByteLength * 2];
                     System.arraycopy(fByteBuffer, 0, newarray, 0, fByteLength);
                     fByteBuffer = newarray;
                 }
@@ -3735,7 +4627,7 @@ public class HTMLScanner
             int count = in.read(array, offset, length);
             if (count != -1) {
                 if (fByteLength + count > fByteBuffer.length) {
-                    byte[] newarray = new byte[fByteLength + count + 512];
+                    byte[] newarray = new byte[Math.max(fByteLength + count, fByteBuffer.length * 2)];
                     System.arraycopy(fByteBuffer, 0, newarray, 0, fByteLength);
                     fByteBuffer = newarray;
                 }
@@ -3750,6 +4642,545 @@ public class HTMLScanner
 
     } // class PlaybackInputStream
 
+    /**
+     * Searches the first bytes of a document for character encoding
+     * declarations: the encoding of an XML declaration and the charset
+     * of &lt;meta&gt; tags. The bytes are tokenized as ASCII, following the
+     * content scanner closely enough to find the declarations it would
+     * find before the body of the document: comments and the content of
+     * script and style elements are skipped and the search stops at the
+     * first element of the body.
+     */
+    private class EncodingPrescanner {
+
+        //
+        // Data
+        //
+
+        /** The bytes. */
+        private final byte[] fBytes;
+
+        /** The current offset. */
+        private int fOffset;
+
+        /** The end of the bytes. */
+        private final int fLength;
+
+        /** The name of the last scanned attribute. */
+        private String fAttrName;
+
+        /** The value of the last scanned attribute. */
+        private String fAttrValue;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a prescanner for the given bytes. */
+        public EncodingPrescanner(byte[] bytes, int offset, int length) {
+            fBytes = bytes;
+            fOffset = offset;
+            fLength = length;
+        } // <init>(byte[],int,int)
+
+        //
+        // Public methods
+        //
+
+        /**
+         * Adds the declared character encodings to the given vector, in
+         * document order.
+         */
+        public void scan(Vector charsets) {
+            while (skipTo('<')) {
+                fOffset++;
+                if (startsWith("!--")) {
+                    if (!skipTo("-->")) {
+                        return;
+                    }
+                }
+                else if (startsWith("?xml") && !isNameChar(peek(4))) {
+                    fOffset += 4;
+                    String encoding = null;
+                    while (scanAttribute()) {
+                        if (encoding == null && fAttrName.equalsIgnoreCase("encoding")
+                            && fAttrValue.length() > 0) {
+                            encoding = fAttrValue;
+                        }
+                    }
+                    if (encoding != null) {
+                        charsets.addElement(encoding);
+                    }
+                }
+                else if (peek(0) == '!' || peek(0) == '/' || peek(0) == '?') {
+                    if (!skipTo('>')) {
+                        return;
+                    }
+                }
+                else if ((peek(0) >= 'a' && peek(0) <= 'z') || (peek(0) >= 'A' && peek(0) <= 'Z')) {
+                    String ename = scanName();
+                    String httpEquiv = null;
+                    String content = null;
+                    String charset = null;
+                    while (scanAttribute()) {
+                        if (httpEquiv == null && fAttrName.equalsIgnoreCase("http-equiv")) {
+                            httpEquiv = fAttrValue;
+                        }
+                        else if (content == null && fAttrName.equalsIgnoreCase("content")) {
+                            content = fAttrValue;
+                        }
+                        else if (charset == null && fAttrName.equalsIgnoreCase("charset")) {
+                            charset = fAttrValue;
+                        }
+                    }
+                    boolean empty = fOffset >= 2 && fBytes[fOffset - 2] == '/';
+                    if (ename.equalsIgnoreCase("META")) {
+                        if (httpEquiv != null && httpEquiv.equalsIgnoreCase("content-type")) {
+                            charset = null;
+                            if (content != null) {
+                                content = removeSpaces(content);
+                                int index1 = content.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+                                if (index1 != -1) {
+                                    int index2 = content.indexOf(';', index1);
+                                    charset = index2 != -1 ? content.substring(index1+8, index2)
+                                                           : content.substring(index1+8);
+                                }
+                            }
+                        }
+                        if (charset != null) {
+                            charsets.addElement(charset);
+                        }
+                    }
+                    else if (startsBody(ename)) {
+                        return;
+                    }
+                    else if (!skipContent(ename.toLowerCase(Locale.ENGLISH), empty)) {
+                        return;
+                    }
+                }
+            }
+        } // scan(Vector)
+
+        //
+        // Private methods
+        //
+
+        /**
+         * Skips the content of an element that isn't parsed as markup, up
+         * to its end tag.
+         *
+         * @return false if the end of the content wasn't found.
+         */
+        private boolean skipContent(String enameLC, boolean empty) {
+            if ("script".equals(enameLC)
+                || (!fAllowSelfclosingTags && !fAllowSelfclosingIframe && "iframe".equals(enameLC))
+                || (!fParseNoScriptContent && "noscript".equals(enameLC))
+                || (!fParseNoFramesContent && "noframes".equals(enameLC))
+                || (!empty && HTMLElements.getElement(enameLC).isSpecial())) {
+                int offset = fOffset;
+                while (skipTo("</" + enameLC)) {
+                    if (!isNameChar(peek(0))) {
+                        return true;
+                    }
+                }
+                // the title is scanned as markup when it isn't ended
+                if ("title".equals(enameLC)) {
+                    fOffset = offset;
+                    return true;
+                }
+                return false;
+            }
+            return true;
+        } // skipContent(String,boolean):boolean
+
+        /**
+         * Scans an attribute of a tag or a pseudo-attribute of an XML
+         * declaration into the attribute name and value.
+         *
+         * @return false at the end of the tag.
+         */
+        private boolean scanAttribute() {
+            int c;
+            while (true) {
+                c = peek(0);
+                if (c == -1) {
+                    return false;
+                }
+                if (c == '>') {
+                    fOffset++;
+                    return false;
+                }
+                if (c != '/' && c != '?' && !isSpace(c)) {
+                    break;
+                }
+                fOffset++;
+            }
+            int start = fOffset;
+            while ((c = peek(0)) != -1 && c != '=' && c != '>' && c != '/' && !isSpace(c)) {
+                fOffset++;
+            }
+            fAttrName = toString(start, fOffset);
+            fAttrValue = "";
+            if (start == fOffset) {
+                fOffset++;
+                return true;
+            }
+            skipSpaces();
+            if (peek(0) != '=') {
+                return true;
+            }
+            fOffset++;
+            skipSpaces();
+            c = peek(0);
+            if (c == '"' || c == '\'') {
+                start = ++fOffset;
+                if (!skipTo((char)c)) {
+                    fAttrValue = toString(start, fLength);
+                    return false;
+                }
+                fAttrValue = toString(start, fOffset++);
+            }
+            else {
+                start = fOffset;
+                while ((c = peek(0)) != -1 && c != '>' && !isSpace(c)) {
+                    fOffset++;
+                }
+                fAttrValue = toString(start, fOffset);
+            }
+            return true;
+        } // scanAttribute():boolean
+
+        /** Scans an element name. */
+        private String scanName() {
+            int start = fOffset;
+            int c;
+            while ((c = peek(0)) != -1 && c != '>' && c != '/' && !isSpace(c)) {
+                fOffset++;
+            }
+            return toString(start, fOffset);
+        } // scanName():String
+
+        /** Skips spaces. */
+        private void skipSpaces() {
+            while (isSpace(peek(0))) {
+                fOffset++;
+            }
+        } // skipSpaces()
+
+        /**
+         * Moves to the next occurrence of the given character.
+         *
+         * @return false if the character wasn't found.
+         */
+        private boolean skipTo(char c) {
+            for (; fOffset < fLength; fOffset++) {
+                if (fBytes[fOffset] == c) {
+                    return true;
+                }
+            }
+            return false;
+        } // skipTo(char):boolean
+
+        /**
+         * Moves past the next occurrence of the given lowercase string,
+         * ignoring case.
+         *
+         * @return false if the string wasn't found.
+         */
+        private boolean skipTo(String s) {
+            for (; fOffset < fLength; fOffset++) {
+                if (startsWith(s)) {
+                    fOffset += s.length();
+                    return true;
+                }
+            }
+            return false;
+        } // skipTo(String):boolean
+
+        /**
+         * Returns true if the bytes at the current offset match the given
+         * lowercase string, ignoring case.
+         */
+        private boolean startsWith(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                int c = peek(i);
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                if (c != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        } // startsWith(String):boolean
+
+        /** Returns the byte at the given distance from the current offset, or -1. */
+        private int peek(int i) {
+            return fOffset + i < fLength ? fBytes[fOffset + i] & 0xFF : -1;
+        } // peek(int):int
+
+        /** Returns the bytes between the given offsets as a string. */
+        private String toString(int start, int end) {
+            StringBuffer str = new StringBuffer(end - start);
+            for (int i = start; i < end; i++) {
+                str.append((char)(fBytes[i] & 0xFF));
+            }
+            return str.toString();
+        } // toString(int,int):String
+
+        /** Returns true if the character is part of a name. */
+        private boolean isNameChar(int c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '_' || c == ':' || c == '.' || c > 0x7F;
+        } // isNameChar(int):boolean
+
+        /** Returns true if the character is a space. */
+        private boolean isSpace(int c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        } // isSpace(int):boolean
+
+    } // class EncodingPrescanner
+
+    /**
+     * The bytes of a document pushed in chunks. Reading never waits: when
+     * all the bytes pushed so far are read and the end of the document
+     * hasn't been pushed, the read fails with a
+     * {@link PushInputStream.PendingInputException}.
+     */
+    public static class PushInputStream
+        extends InputStream {
+
+        //
+        // Data
+        //
+
+        /** Byte buffer. */
+        protected byte[] fBytes = new byte[8192];
+
+        /** Offset of the next byte to read. */
+        protected int fOffset;
+
+        /** Number of bytes in the buffer. */
+        protected int fLength;
+
+        /** Number of bytes pushed. */
+        protected long fTotalLength;
+
+        /** True once the end of the document is pushed. */
+        protected boolean fEnded;
+
+        //
+        // Public methods
+        //
+
+        /** Appends the remaining bytes of the given buffer. */
+        public void append(ByteBuffer bytes) throws IOException {
+            if (fEnded) {
+                throw new IOException("bytes pushed after the end of the document");
+            }
+            int count = bytes.remaining();
+            if (fLength + count > fBytes.length) {
+                byte[] array = fBytes;
+                if (fLength - fOffset + count > fBytes.length) {
+                    array = new byte[Math.max(fLength - fOffset + count, fBytes.length * 2)];
+                }
+                System.arraycopy(fBytes, fOffset, array, 0, fLength - fOffset);
+                fBytes = array;
+                fLength -= fOffset;
+                fOffset = 0;
+            }
+            bytes.get(fBytes, fLength, count);
+            fLength += count;
+            fTotalLength += count;
+        } // append(ByteBuffer)
+
+        /** Marks the end of the document. */
+        public void end() {
+            fEnded = true;
+        } // end()
+
+        /** Returns true once the end of the document is pushed. */
+        public boolean isEnded() {
+            return fEnded;
+        } // isEnded():boolean
+
+        /** Returns the number of bytes pushed. */
+        public long getTotalLength() {
+            return fTotalLength;
+        } // getTotalLength():long
+
+        //
+        // InputStream methods
+        //
+
+        /** Reads a byte. */
+        public int read() throws IOException {
+            if (fOffset == fLength) {
+                if (fEnded) {
+                    return -1;
+                }
+                throw PendingInputException.INSTANCE;
+            }
+            return fBytes[fOffset++] & 0xFF;
+        } // read():int
+
+        /** Reads a block of bytes. */
+        public int read(byte[] array, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (fOffset == fLength) {
+                if (fEnded) {
+                    return -1;
+                }
+                throw PendingInputException.INSTANCE;
+            }
+            int count = Math.min(length, fLength - fOffset);
+            System.arraycopy(fBytes, fOffset, array, offset, count);
+            fOffset += count;
+            return count;
+        } // read(byte[],int,int):int
+
+        /** Returns the number of bytes pushed but not read. */
+        public int available() {
+            return fLength - fOffset;
+        } // available():int
+
+        //
+        // Classes
+        //
+
+        /**
+         * Thrown when the bytes pushed so far are read. The exception is
+         * shared and has no stack trace: it is thrown each time a token
+         * spans the end of the pushed bytes.
+         */
+        public static class PendingInputException
+            extends IOException {
+
+            /** Serialization version. */
+            private static final long serialVersionUID = 1L;
+
+            /** The instance. */
+            static final PendingInputException INSTANCE = new PendingInputException();
+
+            /** Constructor. */
+            private PendingInputException() {
+                super("waiting for more bytes");
+            } // <init>()
+
+            /** Returns this exception without filling in the stack trace. */
+            public Throwable fillInStackTrace() {
+                return this;
+            } // fillInStackTrace():Throwable
+
+        } // class PendingInputException
+
+    } // class PushInputStream
+
+    /**
+     * A reader keeping the characters read since a mark, to read them
+     * again after a reset. The characters of a pushed document are read
+     * through this reader: the scanner goes back to the beginning of a
+     * token that spans the end of the pushed bytes.
+     */
+    protected static class PushReader
+        extends Reader {
+
+        //
+        // Data
+        //
+
+        /** The reader of the document. */
+        private final Reader fReader;
+
+        /** The characters read since the mark. */
+        private char[] fChars = new char[1024];
+
+        /** Offset of the next character to read again. */
+        private int fOffset;
+
+        /** Number of characters kept. */
+        private int fLength;
+
+        /** True while the characters read are kept. */
+        private boolean fKeep = true;
+
+        //
+        // Constructors
+        //
+
+        /** Constructs a reader keeping the characters of the given reader. */
+        public PushReader(Reader reader) {
+            fReader = reader;
+        } // <init>(Reader)
+
+        //
+        // Public methods
+        //
+
+        /**
+         * Marks the position of the given number of characters before the
+         * current one and forgets the characters before it.
+         */
+        public void mark(int unread) {
+            int start = fOffset - unread;
+            System.arraycopy(fChars, start, fChars, 0, fLength - start);
+            fOffset = unread;
+            fLength -= start;
+        } // mark(int)
+
+        /** Goes back to the mark. */
+        public void reset() {
+            fOffset = 0;
+        } // reset()
+
+        /**
+         * Stops keeping the characters: the characters kept are read
+         * again, the next ones aren't kept.
+         */
+        public void unmark() {
+            fKeep = false;
+        } // unmark()
+
+        /** Returns the number of characters read since the mark. */
+        public int getMarkedLength() {
+            return fLength;
+        } // getMarkedLength():int
+
+        //
+        // Reader methods
+        //
+
+        /** Reads characters into a portion of an array. */
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (fOffset < fLength) {
+                int count = Math.min(length, fLength - fOffset);
+                System.arraycopy(fChars, fOffset, buffer, offset, count);
+                fOffset += count;
+                return count;
+            }
+            int count = fReader.read(buffer, offset, length);
+            if (count > 0 && fKeep) {
+                if (fLength + count > fChars.length) {
+                    char[] array = new char[Math.max(fLength + count, fChars.length * 2)];
+                    System.arraycopy(fChars, 0, array, 0, fLength);
+                    fChars = array;
+                }
+                System.arraycopy(buffer, offset, fChars, fLength, count);
+                fLength += count;
+                fOffset = fLength;
+            }
+            return count;
+        } // read(char[],int,int):int
+
+        /** Closes the reader. */
+        public void close() throws IOException {
+            fReader.close();
+        } // close()
+
+    } // class PushReader
+
     /**
      * Location infoset item. 
      *
@@ -3885,15 +5316,6 @@ public class HTMLScanner
 		}
     }
 
-    private boolean endsWith(final XMLStringBuffer buffer, final String string) {
-		final int l = string.length();
-		if (buffer.length < l) {
-			return false;
-		}
-		final String s = new String(buffer.ch, buffer.length-l, l);
-		return string.equals(s);
-	}
-
      /**
       * Reads a single character, preserving the old buffer content
       *
@@ -3920,9 +5342,10 @@ public class HTMLScanner
      } // readPreservingBufferContent():int
 
      /**
-     * Indicates if the end comment --> is available, loading further data if needed, without to reset the buffer
+     * Indicates if the end comment --> follows, loading further data if
+     * needed, without resetting the buffer. The position doesn't change.
      */
-	private boolean endCommentAvailable() throws IOException {
+	private boolean isCommentEndAhead() throws IOException {
 		int nbCaret = 0;
         final int originalOffset = fCurrentEntity.offset;
         final int originalColumnNumber = fCurrentEntity.getColumnNumber();
@@ -27,8 +27,8 @@ import org.cyberneko.html.filters.NamespaceBinder;
 import org.cyberneko.html.xercesbridge.XercesBridge;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
                       
 /**
  * Balances tags in an HTML document. This component receives document events
@@ -125,12 +125,20 @@ public class HTMLTagBalancer
      **/
     public static final String FRAGMENT_CONTEXT_STACK = "http://cyberneko.org/html/properties/balance-tags/fragment-context-stack";
 
+    /** Parse statistics. */
+    protected static final String STATISTICS = "http://cyberneko.org/html/properties/statistics";
+
+    /** Parse monitor. */
+    protected static final String PARSE_MONITOR = "http://cyberneko.org/html/properties/parse-monitor";
+
     /** Recognized properties. */
     private static final String[] RECOGNIZED_PROPERTIES = {
         NAMES_ELEMS,
         NAMES_ATTRS,
         ERROR_REPORTER,
         FRAGMENT_CONTEXT_STACK,
+        STATISTICS,
+        PARSE_MONITOR,
     };
 
     /** Recognized properties defaults. */
@@ -139,6 +147,8 @@ public class HTMLTagBalancer
         null,
         null,
         null,
+        null,
+        null,
     };
 
     // modify HTML names
@@ -155,6 +165,9 @@ public class HTMLTagBalancer
     /** Lowercase HTML names. */
     protected static final short NAMES_LOWERCASE = 2;
 
+    /** Maximum number of unknown elements whose information is kept. */
+    private static final int MAX_UNKNOWN_ELEMENTS = 256;
+
     // static vars
 
     /** Synthesized event info item. */
@@ -199,6 +212,12 @@ public class HTMLTagBalancer
     /** Error reporter. */
     protected HTMLErrorReporter fErrorReporter;
 
+    /** Parse statistics. */
+    protected HTMLParseStatistics fStatistics;
+
+    /** Parse monitor. */
+    protected HTMLParseMonitor fParseMonitor;
+
     // connections
 
     /** The document source. */
@@ -271,6 +290,9 @@ public class HTMLTagBalancer
 
     private List/*ElementEntry*/ endElementsBuffer_ = new ArrayList(); 
 
+    /** The information of the unknown elements seen, by name. */
+    private final HashMap fUnknownElements = new HashMap();
+
     //
     // HTMLComponent methods
     //
@@ -349,6 +371,8 @@ public class HTMLTagBalancer
         fNamesElems = getNamesValue(String.valueOf(manager.getProperty(NAMES_ELEMS)));
         fNamesAttrs = getNamesValue(String.valueOf(manager.getProperty(NAMES_ATTRS)));
         fErrorReporter = (HTMLErrorReporter)manager.getProperty(ERROR_REPORTER);
+        fStatistics = (HTMLParseStatistics)manager.getProperty(STATISTICS);
+        fParseMonitor = (HTMLParseMonitor)manager.getProperty(PARSE_MONITOR);
         
         fragmentContextStack_ = (QName[]) manager.getProperty(FRAGMENT_CONTEXT_STACK);
         fSeenAnything = false;
@@ -403,6 +427,16 @@ public class HTMLTagBalancer
             return;
         }
 
+        if (propertyId.equals(STATISTICS)) {
+            fStatistics = (HTMLParseStatistics)value;
+            return;
+        }
+
+        if (propertyId.equals(PARSE_MONITOR)) {
+            fParseMonitor = (HTMLParseMonitor)value;
+            return;
+        }
+
     } // setProperty(String,Object)
 
     //
@@ -790,6 +824,14 @@ public class HTMLTagBalancer
 
         // call handler
         fSeenRootElement = true;
+        if (isForcedCreation) {
+            if (fStatistics != null) {
+                fStatistics.fSynthesizedElementCount++;
+            }
+            if (fParseMonitor != null) {
+                fParseMonitor.synthesizedElement(elem.rawname);
+            }
+        }
         if (element != null && element.isEmpty()) {
             if (attrs == null) {
                 attrs = emptyAttributes();
@@ -801,6 +843,9 @@ public class HTMLTagBalancer
         else {
             boolean inline = element != null && element.isInline();
             fElementStack.push(new Info(element, elem, inline ? attrs : null));
+            if (fStatistics != null && fElementStack.top > fStatistics.fMaxElementDepth) {
+                fStatistics.fMaxElementDepth = fElementStack.top;
+            }
             if (attrs == null) {
                 attrs = emptyAttributes();
             }
@@ -1014,7 +1059,7 @@ public class HTMLTagBalancer
         // is this text whitespace?
         boolean whitespace = true;
         for (int i = 0; i < text.length; i++) {
-            if (!Character.isWhitespace(text.ch[text.offset + i])) {
+            if (!CharacterClasses.isWhitespace(text.ch[text.offset + i])) {
                 whitespace = false;
                 break;
             }
@@ -1277,7 +1322,18 @@ public class HTMLTagBalancer
                 name = name.substring(index+1);
             }
         }
-        return HTMLElements.getElement(name);
+        Element element = HTMLElements.getElement(name, HTMLElements.NO_SUCH_ELEMENT);
+        if (element == HTMLElements.NO_SUCH_ELEMENT) {
+            // created once per name, up to a bound
+            element = (Element) fUnknownElements.get(name);
+            if (element == null) {
+                element = HTMLElements.getElement(name);
+                if (fUnknownElements.size() < MAX_UNKNOWN_ELEMENTS) {
+                    fUnknownElements.put(name, element);
+                }
+            }
+        }
+        return element;
     } // getElement(String):HTMLElements.Element
 
     /**
@@ -1402,8 +1458,8 @@ public class HTMLTagBalancer
      */
     protected static final String modifyName(String name, short mode) {
         switch (mode) {
-            case NAMES_UPPERCASE: return name.toUpperCase(Locale.ENGLISH);
-            case NAMES_LOWERCASE: return name.toLowerCase(Locale.ENGLISH);
+            case NAMES_UPPERCASE: return HTMLElements.toUpperCase(name);
+            case NAMES_LOWERCASE: return HTMLElements.toLowerCase(name);
         }
         return name;
     } // modifyName(String,short):String
@@ -1587,6 +1643,10 @@ public class HTMLTagBalancer
 	 */
     private void notifyDiscardedStartElement(final QName elem, final XMLAttributes attrs,
     		final Augmentations augs) {
+    	if (fStatistics != null)
+    		fStatistics.fDiscardedElementCount++;
+    	if (fParseMonitor != null)
+    		fParseMonitor.discardedElement(elem.rawname, false);
     	if (tagBalancingListener != null)
     		tagBalancingListener.ignoredStartElement(elem, attrs, augs);
 	}
@@ -1595,6 +1655,10 @@ public class HTMLTagBalancer
 	 * Notifies the tagBalancingListener (if any) of an ignored end element
 	 */
     private void notifyDiscardedEndElement(final QName element, final Augmentations augs) {
+    	if (fStatistics != null)
+    		fStatistics.fDiscardedElementCount++;
+    	if (fParseMonitor != null)
+    		fParseMonitor.discardedElement(element.rawname, true);
     	if (tagBalancingListener != null)
     		tagBalancingListener.ignoredEndElement(element, augs);
 	}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An input stream decompressing gzip, zlib or raw deflate data, as sent
+ * with the HTTP content codings "gzip" and "deflate". Unlike
+ * <code>GZIPInputStream</code>, the stream can use an inflater given by
+ * its creator, so that a parser reuses the same inflater for all its
+ * documents, and it can detect whether its input is compressed at all.
+ * <p>
+ * The gzip members of the input are decompressed one after the other
+ * and their checksums are verified. Bytes following the last member
+ * that do not start another member are ignored.
+ *
+ * @see HTMLScanner#CONTENT_ENCODING
+ */
+public class InflatingInputStream
+    extends InputStream {
+
+    //
+    // Constants
+    //
+
+    /** Format: gzip if the input starts with the gzip magic bytes, uncompressed otherwise. */
+    public static final short DETECT = 0;
+
+    /** Format: gzip. */
+    public static final short GZIP = 1;
+
+    /** Format: zlib, or raw deflate if the input doesn't start with a zlib header. */
+    public static final short DEFLATE = 2;
+
+    /** Size of the buffer of compressed data. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Pause after a read of no bytes, in milliseconds. */
+    private static final long EMPTY_READ_PAUSE = 1;
+
+    // states
+
+    /** State: at the beginning of a gzip member or of the input. */
+    private static final short STATE_HEADER = 0;
+
+    /** State: compressed data. */
+    private static final short STATE_DATA = 1;
+
+    /** State: uncompressed input. */
+    private static final short STATE_PLAIN = 2;
+
+    /** State: end of the input. */
+    private static final short STATE_END = 3;
+
+    // kinds of compressed data
+
+    /** Gzip member. */
+    private static final short KIND_GZIP = 0;
+
+    /** Zlib stream. */
+    private static final short KIND_ZLIB = 1;
+
+    /** Raw deflate data. */
+    private static final short KIND_RAW = 2;
+
+    // gzip header flags
+
+    /** Header checksum. */
+    private static final int FHCRC = 0x02;
+
+    /** Extra field. */
+    private static final int FEXTRA = 0x04;
+
+    /** File name. */
+    private static final int FNAME = 0x08;
+
+    /** Comment. */
+    private static final int FCOMMENT = 0x10;
+
+    //
+    // Data
+    //
+
+    /** The compressed input. */
+    private final InputStream fInputStream;
+
+    /** The inflater, without zlib header and trailer. */
+    private final Inflater fInflater;
+
+    /** True if the inflater is ended when the stream is closed. */
+    private final boolean fOwnInflater;
+
+    /** The requested format. */
+    private final short fFormat;
+
+    /** The buffered input. */
+    private byte[] fBuffer;
+
+    /** The buffer of the single byte reads. */
+    private final byte[] fSingleByte = new byte[1];
+
+    /** The position of the next buffered byte. */
+    private int fPosition;
+
+    /** The end of the buffered bytes. */
+    private int fLimit;
+
+    /** The state. */
+    private short fState = STATE_HEADER;
+
+    /** The kind of compressed data. */
+    private short fKind;
+
+    /** True before the first gzip member. */
+    private boolean fFirstMember = true;
+
+    /** True once the dummy byte ending raw deflate data was given. */
+    private boolean fDummyByte;
+
+    /** The checksum of the uncompressed bytes. */
+    private Checksum fChecksum;
+
+    //
+    // Constructors
+    //
+
+    /** Decompresses the given input with a new inflater. */
+    public InflatingInputStream(InputStream inputStream, short format) {
+        this(inputStream, format, new Inflater(true), true);
+    } // <init>(InputStream,short)
+
+    /**
+     * Decompresses the given input with the given inflater, which must
+     * have been created without zlib header and trailer, i.e. with
+     * <code>new Inflater(true)</code>. The inflater is reset, and isn't
+     * ended when the stream is closed.
+     */
+    public InflatingInputStream(InputStream inputStream, short format, Inflater inflater) {
+        this(inputStream, format, inflater, false);
+    } // <init>(InputStream,short,Inflater)
+
+    /** Constructs a stream. */
+    private InflatingInputStream(InputStream inputStream, short format,
+                                 Inflater inflater, boolean ownInflater) {
+        fInputStream = inputStream;
+        fFormat = format;
+        fInflater = inflater;
+        fOwnInflater = ownInflater;
+        fInflater.reset();
+        // only the magic bytes are buffered for uncompressed input
+        fBuffer = new byte[format == DETECT ? 16 : BUFFER_SIZE];
+    } // <init>(InputStream,short,Inflater,boolean)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Returns true if the input is compressed. The beginning of the input
+     * is read, if not done yet.
+     */
+    public boolean isCompressed() throws IOException {
+        if (fState == STATE_HEADER) {
+            readHeader();
+        }
+        return fState != STATE_PLAIN && !(fState == STATE_END && fFirstMember);
+    } // isCompressed():boolean
+
+    //
+    // InputStream methods
+    //
+
+    /** Reads a byte. */
+    public int read() throws IOException {
+        return read(fSingleByte, 0, 1) == 1 ? fSingleByte[0] & 0xFF : -1;
+    } // read():int
+
+    /** Reads a block of bytes. */
+    public int read(byte[] array, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            switch (fState) {
+                case STATE_HEADER: {
+                    readHeader();
+                    break;
+                }
+                case STATE_PLAIN: {
+                    if (fPosition < fLimit) {
+                        int count = Math.min(length, fLimit - fPosition);
+                        System.arraycopy(fBuffer, fPosition, array, offset, count);
+                        fPosition += count;
+                        return count;
+                    }
+                    return fInputStream.read(array, offset, length);
+                }
+                case STATE_END: {
+                    return -1;
+                }
+                default: {
+                    int count;
+                    try {
+                        count = fInflater.inflate(array, offset, length);
+                    }
+                    catch (DataFormatException e) {
+                        throw new IOException("corrupt compressed data: " + e.getMessage());
+                    }
+                    if (count > 0) {
+                        if (fChecksum != null) {
+                            fChecksum.update(array, offset, count);
+                        }
+                        return count;
+                    }
+                    if (fInflater.finished()) {
+                        fPosition = fLimit - fInflater.getRemaining();
+                        readTrailer();
+                    }
+                    else if (fInflater.needsDictionary()) {
+                        throw new IOException("preset dictionaries are not supported");
+                    }
+                    else if (fInflater.needsInput()) {
+                        if (fill(1) > 0) {
+                            fInflater.setInput(fBuffer, fPosition, fLimit - fPosition);
+                            fPosition = fLimit;
+                        }
+                        else if (fKind == KIND_RAW && !fDummyByte) {
+                            // the inflater may need a byte after raw deflate data
+                            fDummyByte = true;
+                            fInflater.setInput(new byte[1]);
+                        }
+                        else {
+                            throw new EOFException("unexpected end of compressed data");
+                        }
+                    }
+                }
+            }
+        }
+    } // read(byte[],int,int):int
+
+    /** Returns the number of bytes that can be read without blocking. */
+    public int available() throws IOException {
+        if (fState == STATE_PLAIN) {
+            return fLimit - fPosition + fInputStream.available();
+        }
+        return 0;
+    } // available():int
+
+    /** Closes the input. */
+    public void close() throws IOException {
+        fState = STATE_END;
+        if (fOwnInflater) {
+            fInflater.end();
+        }
+        fInputStream.close();
+    } // close()
+
+    //
+    // Private methods
+    //
+
+    /** Reads the beginning of the input or of a gzip member. */
+    private void readHeader() throws IOException {
+        int count = fill(2);
+        boolean gzip = count >= 2 && (fBuffer[fPosition] & 0xFF) == 0x1F
+                    && (fBuffer[fPosition + 1] & 0xFF) == 0x8B;
+        if (!fFirstMember) {
+            fState = gzip ? readGzipHeader() : STATE_END;
+        }
+        else if (count == 0) {
+            fState = STATE_END;
+        }
+        else if (gzip) {
+            fState = readGzipHeader();
+        }
+        else if (fFormat == GZIP) {
+            throw new IOException("not in gzip format");
+        }
+        else if (fFormat == DEFLATE) {
+            int cmf = fBuffer[fPosition] & 0xFF;
+            int flg = count >= 2 ? fBuffer[fPosition + 1] & 0xFF : 0;
+            if (count >= 2 && (cmf & 0x0F) == 8 && (cmf << 8 | flg) % 31 == 0) {
+                if ((flg & 0x20) != 0) {
+                    throw new IOException("preset dictionaries are not supported");
+                }
+                fPosition += 2;
+                fKind = KIND_ZLIB;
+                fChecksum = new Adler32();
+            }
+            else {
+                fKind = KIND_RAW;
+                fChecksum = null;
+            }
+            fState = STATE_DATA;
+        }
+        else {
+            fState = STATE_PLAIN;
+        }
+    } // readHeader()
+
+    /** Reads the header of a gzip member and returns the next state. */
+    private short readGzipHeader() throws IOException {
+        int length = 10;
+        require(length);
+        if ((fBuffer[fPosition + 2] & 0xFF) != 8) {
+            throw new IOException("unsupported gzip compression method");
+        }
+        int flags = fBuffer[fPosition + 3] & 0xFF;
+        if ((flags & FEXTRA) != 0) {
+            require(length + 2);
+            length += 2 + ((fBuffer[fPosition + length] & 0xFF)
+                        | (fBuffer[fPosition + length + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            length = skipZeroTerminated(length);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            length = skipZeroTerminated(length);
+        }
+        if ((flags & FHCRC) != 0) {
+            length += 2;
+        }
+        require(length);
+        fPosition += length;
+        if (!fFirstMember) {
+            fInflater.reset();
+        }
+        fFirstMember = false;
+        fKind = KIND_GZIP;
+        if (fChecksum instanceof CRC32) {
+            fChecksum.reset();
+        }
+        else {
+            fChecksum = new CRC32();
+        }
+        return STATE_DATA;
+    } // readGzipHeader():short
+
+    /** Reads the trailer of the compressed data and verifies it. */
+    private void readTrailer() throws IOException {
+        fFirstMember = false;
+        if (fKind == KIND_GZIP) {
+            require(8);
+            if (readInt(fPosition, false) != fChecksum.getValue()
+                || readInt(fPosition + 4, false) != (fInflater.getTotalOut() & 0xFFFFFFFFL)) {
+                throw new IOException("corrupt gzip trailer");
+            }
+            fPosition += 8;
+            fState = STATE_HEADER;
+        }
+        else {
+            if (fKind == KIND_ZLIB) {
+                require(4);
+                if (readInt(fPosition, true) != fChecksum.getValue()) {
+                    throw new IOException("corrupt zlib trailer");
+                }
+                fPosition += 4;
+            }
+            fState = STATE_END;
+        }
+    } // readTrailer()
+
+    /** Returns the length of the header after a zero-terminated field. */
+    private int skipZeroTerminated(int length) throws IOException {
+        while (true) {
+            require(length + 1);
+            if (fBuffer[fPosition + length++] == 0) {
+                return length;
+            }
+        }
+    } // skipZeroTerminated(int):int
+
+    /** Reads an unsigned 32-bit integer from the buffer. */
+    private long readInt(int offset, boolean bigEndian) {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = fBuffer[offset + (bigEndian ? i : 3 - i)] & 0xFF;
+            value = value << 8 | b;
+        }
+        return value;
+    } // readInt(int,boolean):long
+
+    /** Buffers the given number of bytes or throws an exception. */
+    private void require(int count) throws IOException {
+        if (fill(count) < count) {
+            throw new EOFException("unexpected end of compressed data");
+        }
+    } // require(int)
+
+    /**
+     * Buffers at least the given number of bytes, unless the input ends,
+     * and returns the number of buffered bytes.
+     */
+    private int fill(int count) throws IOException {
+        if (fLimit - fPosition >= count) {
+            return fLimit - fPosition;
+        }
+        if (fPosition > 0) {
+            System.arraycopy(fBuffer, fPosition, fBuffer, 0, fLimit - fPosition);
+            fLimit -= fPosition;
+            fPosition = 0;
+        }
+        if (count > fBuffer.length || fState == STATE_DATA && fBuffer.length < BUFFER_SIZE) {
+            byte[] buffer = new byte[Math.max(count, Math.max(fBuffer.length * 2, BUFFER_SIZE))];
+            System.arraycopy(fBuffer, 0, buffer, 0, fLimit);
+            fBuffer = buffer;
+        }
+        while (fLimit < count) {
+            int length = fInputStream.read(fBuffer, fLimit, fBuffer.length - fLimit);
+            if (length == -1) {
+                break;
+            }
+            if (length == 0) {
+                // don't spin on a stream returning no bytes
+                pause();
+            }
+            fLimit += length;
+        }
+        return fLimit;
+    } // fill(int):int
+
+    /** Waits before reading again from a stream that returned no bytes. */
+    private static void pause() throws IOException {
+        try {
+            Thread.sleep(EMPTY_READ_PAUSE);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for compressed data");
+        }
+    } // pause()
+
+} // class InflatingInputStream
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An input stream reading a file through a read-only memory mapping. The
+ * bytes are copied from the page cache of the operating system instead
+ * of being read with a system call per buffer, which is faster for large
+ * local files parsed in bulk.
+ * <p>
+ * The file is mapped when the stream is created and the channel is
+ * closed right away: the mapping stays valid until it is garbage
+ * collected. The stream can be given to the parser as the byte stream
+ * of an input source; the scanner uses it for <code>file:</code> system
+ * identifiers when the feature
+ * <code>http://cyberneko.org/html/features/scanner/map-files</code> is
+ * set.
+ *
+ * @see HTMLScanner#MAP_FILES
+ */
+public class MappedFileInputStream
+    extends InputStream {
+
+    //
+    // Data
+    //
+
+    /** The mapped bytes. */
+    private final ByteBuffer fBuffer;
+
+    /** The marked position. */
+    private int fMark;
+
+    //
+    // Constructors
+    //
+
+    /** Maps the given file. */
+    public MappedFileInputStream(File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), true);
+    } // <init>(File)
+
+    /**
+     * Maps the given channel from its current position to its end. The
+     * channel isn't closed.
+     */
+    public MappedFileInputStream(FileChannel channel) throws IOException {
+        this(channel, false);
+    } // <init>(FileChannel)
+
+    /** Maps a channel, closing it afterwards when requested. */
+    private MappedFileInputStream(FileChannel channel, boolean close) throws IOException {
+        try {
+            long position = channel.position();
+            long size = channel.size() - position;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large to be mapped: " + size + " bytes");
+            }
+            fBuffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+        finally {
+            if (close) {
+                channel.close();
+            }
+        }
+    } // <init>(FileChannel,boolean)
+
+    //
+    // InputStream methods
+    //
+
+    /** Reads a byte. */
+    public int read() {
+        return fBuffer.hasRemaining() ? fBuffer.get() & 0xFF : -1;
+    } // read():int
+
+    /** Reads a block of bytes. */
+    public int read(byte[] array, int offset, int length) {
+        int remaining = fBuffer.remaining();
+        if (remaining == 0) {
+            return length == 0 ? 0 : -1;
+        }
+        if (length > remaining) {
+            length = remaining;
+        }
+        fBuffer.get(array, offset, length);
+        return length;
+    } // read(byte[],int,int):int
+
+    /** Skips bytes. */
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        int count = (int) Math.min(n, fBuffer.remaining());
+        fBuffer.position(fBuffer.position() + count);
+        return count;
+    } // skip(long):long
+
+    /** Returns the number of bytes left. */
+    public int available() {
+        return fBuffer.remaining();
+    } // available():int
+
+    /** Marks the current position. */
+    public void mark(int readlimit) {
+        fMark = fBuffer.position();
+    } // mark(int)
+
+    /** Goes back to the marked position. */
+    public void reset() {
+        fBuffer.position(fMark);
+    } // reset()
+
+    /** Returns true. */
+    public boolean markSupported() {
+        return true;
+    } // markSupported():boolean
+
+} // class MappedFileInputStream
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+/**
+ * A symbol table of the element and attribute names scanned, keyed by
+ * the characters of the buffer: a name already seen is returned as the
+ * same string without allocating a new one, and its upper and lower case
+ * forms are computed once.
+ * <p>
+ * The table is bounded so that a document made of random names doesn't
+ * grow it without limit: once full, it is cleared and filled again with
+ * the names scanned next. Long names, and names whose hash code collides
+ * with too many others, are returned as new strings as if there was no
+ * table.
+ *
+ * @see HTMLScanner#modifyName(String,short)
+ */
+final class NameTable {
+
+    //
+    // Constants
+    //
+
+    /** Number of buckets, a power of two. */
+    private static final int BUCKET_COUNT = 512;
+
+    /** Maximum number of names. */
+    private static final int MAX_NAME_COUNT = 1024;
+
+    /** Maximum length of a name kept in the table. */
+    private static final int MAX_NAME_LENGTH = 32;
+
+    /** Maximum number of names in a bucket. */
+    private static final int MAX_CHAIN_LENGTH = 8;
+
+    //
+    // Data
+    //
+
+    /** Buckets of entries, indexed by the hash code of the names. */
+    private final Entry[] fBuckets = new Entry[BUCKET_COUNT];
+
+    /** Number of names. */
+    private int fCount;
+
+    //
+    // Public methods
+    //
+
+    /** Returns the name made of the given characters. */
+    public String getName(char[] buffer, int offset, int length) {
+        if (length > MAX_NAME_LENGTH) {
+            return new String(buffer, offset, length);
+        }
+        // the hash code of the string, so that a name is found again
+        // with the hash code cached by the string
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[offset + i];
+        }
+        int bucket = hash & (BUCKET_COUNT - 1);
+        int chainLength = 0;
+        for (Entry entry = fBuckets[bucket]; entry != null; entry = entry.next) {
+            if (entry.hash == hash && entry.matches(buffer, offset, length)) {
+                return entry.name;
+            }
+            chainLength++;
+        }
+        String name = new String(buffer, offset, length);
+        if (chainLength < MAX_CHAIN_LENGTH) {
+            if (fCount == MAX_NAME_COUNT) {
+                clear();
+            }
+            fBuckets[bucket] = new Entry(name, hash, fBuckets[bucket]);
+            fCount++;
+        }
+        return name;
+    } // getName(char[],int,int):String
+
+    /**
+     * Modifies the given name based on the specified mode, like
+     * {@link HTMLScanner#modifyName(String,short)}, with the case forms
+     * cached for a name returned by this table.
+     */
+    public String modifyName(String name, short mode) {
+        if (mode == HTMLScanner.NAMES_NO_CHANGE) {
+            return name;
+        }
+        int hash = name.hashCode();
+        for (Entry entry = fBuckets[hash & (BUCKET_COUNT - 1)]; entry != null; entry = entry.next) {
+            if (entry.name == name) {
+                if (mode == HTMLScanner.NAMES_UPPERCASE) {
+                    if (entry.upperCase == null) {
+                        entry.upperCase = HTMLElements.toUpperCase(name);
+                    }
+                    return entry.upperCase;
+                }
+                if (entry.lowerCase == null) {
+                    entry.lowerCase = HTMLElements.toLowerCase(name);
+                }
+                return entry.lowerCase;
+            }
+        }
+        return HTMLScanner.modifyName(name, mode);
+    } // modifyName(String,short):String
+
+    /** Removes all the names. */
+    public void clear() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            fBuckets[i] = null;
+        }
+        fCount = 0;
+    } // clear()
+
+    //
+    // Classes
+    //
+
+    /** A name of the table. */
+    private static final class Entry {
+
+        /** The name. */
+        final String name;
+
+        /** The hash code of the name. */
+        final int hash;
+
+        /** The next entry of the bucket. */
+        final Entry next;
+
+        /** The upper case form of the name, once computed. */
+        String upperCase;
+
+        /** The lower case form of the name, once computed. */
+        String lowerCase;
+
+        /** Constructs an entry. */
+        Entry(String name, int hash, Entry next) {
+            this.name = name;
+            this.hash = hash;
+            this.next = next;
+        } // <init>(String,int,Entry)
+
+        /** Returns true if the name is made of the given characters. */
+        boolean matches(char[] buffer, int offset, int length) {
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != buffer[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        } // matches(char[],int,int):boolean
+
+    } // class Entry
+
+} // class NameTable
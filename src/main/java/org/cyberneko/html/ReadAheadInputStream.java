@@ -0,0 +1,288 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An input stream whose bytes are read ahead by a background thread, so
+ * that reading a slow stream, e.g. a network connection, overlaps with
+ * scanning the bytes already read.
+ * <p>
+ * The background thread fills a ring of buffers and hands them over to
+ * the reading thread through two counters, the number of buffers filled
+ * and the number of buffers consumed. Each counter is written by one
+ * thread only, so no lock is needed: a thread waiting for the other one
+ * parks until it is unparked.
+ * <p>
+ * The background thread ends at the end of the stream, when the stream
+ * is closed or when {@link #stop()} is called. A thread blocked in a read
+ * of the stream can't be interrupted: it is abandoned, and ends once the
+ * read returns.
+ * <p>
+ * This class needs Java 5. The scanner loads it only when the read-ahead
+ * feature is set, so that the rest of the parser runs on older versions.
+ *
+ * @see HTMLScanner#READ_AHEAD
+ */
+final class ReadAheadInputStream
+    extends InputStream {
+
+    //
+    // Constants
+    //
+
+    /** Number of buffers. */
+    private static final int BUFFER_COUNT = 4;
+
+    /** Size of a buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Length of a buffer marking the end of the stream. */
+    private static final int END = -1;
+
+    /** Length of a buffer marking an error of the stream. */
+    private static final int ERROR = -2;
+
+    /** Pause after a read of no bytes, in nanoseconds. */
+    private static final long EMPTY_READ_PAUSE = 1000000L;
+
+    //
+    // Data
+    //
+
+    /** The stream read ahead. */
+    private final InputStream fInputStream;
+
+    /** The buffers. */
+    private final byte[][] fBuffers = new byte[BUFFER_COUNT][BUFFER_SIZE];
+
+    /** The number of bytes of each buffer. */
+    private final int[] fLengths = new int[BUFFER_COUNT];
+
+    /** The number of buffers filled, written by the background thread. */
+    private volatile long fFilled;
+
+    /** The number of buffers consumed, written by the reading thread. */
+    private volatile long fConsumed;
+
+    /** True once the background thread must end. */
+    private volatile boolean fStopped;
+
+    /** The error of the stream. */
+    private volatile IOException fError;
+
+    /** The background thread. */
+    private final Thread fProducer;
+
+    /** The reading thread, while it waits for a buffer. */
+    private volatile Thread fConsumer;
+
+    /** The position in the current buffer. */
+    private int fPosition;
+
+    //
+    // Constructors
+    //
+
+    /**
+     * Starts reading the given stream ahead, in a thread of the given
+     * factory or in a new daemon thread if the factory is null.
+     */
+    private ReadAheadInputStream(InputStream inputStream, ThreadFactory factory) {
+        fInputStream = inputStream;
+        Runnable producer = new Runnable() {
+            public void run() {
+                produce();
+            }
+        };
+        if (factory != null) {
+            fProducer = factory.newThread(producer);
+        }
+        else {
+            fProducer = new Thread(producer, "NekoHTML read-ahead");
+            fProducer.setDaemon(true);
+        }
+        fProducer.start();
+    } // <init>(InputStream,ThreadFactory)
+
+    //
+    // Public static methods
+    //
+
+    /**
+     * Starts reading the given stream ahead, in a thread of the given
+     * <code>java.util.concurrent.ThreadFactory</code> or in a new daemon
+     * thread if the factory is null. The stream is returned as an
+     * <code>InputStream</code>, so that the caller doesn't need this class
+     * until it is used.
+     */
+    public static InputStream start(InputStream inputStream, Object factory) {
+        return new ReadAheadInputStream(inputStream, (ThreadFactory) factory);
+    } // start(InputStream,Object):InputStream
+
+    /**
+     * Ends the background thread of a stream returned by
+     * {@link #start(InputStream,Object)}, without closing the stream.
+     */
+    public static void stop(InputStream stream) {
+        ((ReadAheadInputStream) stream).stop();
+    } // stop(InputStream)
+
+    //
+    // Public methods
+    //
+
+    /**
+     * Ends the background thread, without closing the stream. The bytes
+     * read ahead are dropped. A thread blocked in a read of the stream
+     * isn't waited for: it ends once the read returns.
+     */
+    public void stop() {
+        fStopped = true;
+        LockSupport.unpark(fProducer);
+    } // stop()
+
+    //
+    // InputStream methods
+    //
+
+    /** Reads a byte. */
+    public int read() throws IOException {
+        byte[] buffer = currentBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        return buffer[fPosition++] & 0xFF;
+    } // read():int
+
+    /** Reads a block of bytes. */
+    public int read(byte[] array, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        byte[] buffer = currentBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        int count = Math.min(length, fLengths[(int) (fConsumed % BUFFER_COUNT)] - fPosition);
+        System.arraycopy(buffer, fPosition, array, offset, count);
+        fPosition += count;
+        return count;
+    } // read(byte[],int,int):int
+
+    /** Returns the number of bytes read ahead in the current buffer. */
+    public int available() {
+        if (fConsumed == fFilled) {
+            return 0;
+        }
+        return Math.max(0, fLengths[(int) (fConsumed % BUFFER_COUNT)] - fPosition);
+    } // available():int
+
+    /** Ends the background thread and closes the stream. */
+    public void close() throws IOException {
+        stop();
+        fInputStream.close();
+    } // close()
+
+    //
+    // Private methods
+    //
+
+    /**
+     * Returns the buffer holding the next byte, waiting for it to be
+     * filled if needed, or null at the end of the stream.
+     */
+    private byte[] currentBuffer() throws IOException {
+        while (true) {
+            long consumed = fConsumed;
+            if (consumed == fFilled) {
+                if (fStopped) {
+                    throw new IOException("Stream closed");
+                }
+                fConsumer = Thread.currentThread();
+                // the buffer may have been filled before the thread was set
+                if (consumed == fFilled && !fStopped) {
+                    LockSupport.park(this);
+                }
+                fConsumer = null;
+                continue;
+            }
+            int slot = (int) (consumed % BUFFER_COUNT);
+            int length = fLengths[slot];
+            if (length == END) {
+                return null;
+            }
+            if (length == ERROR) {
+                throw fError;
+            }
+            if (fPosition < length) {
+                return fBuffers[slot];
+            }
+            // give the buffer back
+            fPosition = 0;
+            fConsumed = consumed + 1;
+            LockSupport.unpark(fProducer);
+        }
+    } // currentBuffer():byte[]
+
+    /** Fills the buffers, in the background thread. */
+    private void produce() {
+        while (!fStopped) {
+            long filled = fFilled;
+            if (filled - fConsumed == BUFFER_COUNT) {
+                LockSupport.park(this);
+                continue;
+            }
+            int slot = (int) (filled % BUFFER_COUNT);
+            int length;
+            try {
+                length = fInputStream.read(fBuffers[slot], 0, BUFFER_SIZE);
+                if (length == -1) {
+                    length = END;
+                }
+            }
+            catch (IOException e) {
+                fError = e;
+                length = ERROR;
+            }
+            catch (RuntimeException e) {
+                fError = new IOException(e.toString());
+                fError.initCause(e);
+                length = ERROR;
+            }
+            if (length == 0) {
+                // don't spin on a stream returning no bytes
+                LockSupport.parkNanos(this, EMPTY_READ_PAUSE);
+                continue;
+            }
+            fLengths[slot] = length;
+            fFilled = filled + 1;
+            Thread consumer = fConsumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+            if (length < 0) {
+                return;
+            }
+        }
+    } // produce()
+
+} // class ReadAheadInputStream
@@ -23,7 +23,6 @@ import org.cyberneko.html.HTMLElements;
 import org.cyberneko.html.xercesbridge.XercesBridge;
 
 import java.util.Enumeration;
-import java.util.Locale;
 import java.util.Vector;
 
 /**
@@ -407,8 +406,8 @@ public class NamespaceBinder
      */
     protected static final String modifyName(String name, short mode) {
         switch (mode) {
-            case NAMES_UPPERCASE: return name.toUpperCase(Locale.ENGLISH);
-            case NAMES_LOWERCASE: return name.toLowerCase(Locale.ENGLISH);
+            case NAMES_UPPERCASE: return HTMLElements.toUpperCase(name);
+            case NAMES_LOWERCASE: return HTMLElements.toLowerCase(name);
         }
         return name;
     } // modifyName(String,short):String
@@ -433,8 +432,8 @@ public class NamespaceBinder
         for (int i = attrCount - 1; i >= 0; i--) {
             attrs.getName(i, fQName);
             String aname = fQName.rawname;
-            String ANAME = aname.toUpperCase(Locale.ENGLISH);
-            if (ANAME.startsWith("XMLNS:") || ANAME.equals("XMLNS")) {
+            if (aname.regionMatches(true, 0, "xmlns", 0, 5)
+                && (aname.length() == 5 || aname.charAt(5) == ':')) {
                 int anamelen = aname.length();
 
                 // get parts
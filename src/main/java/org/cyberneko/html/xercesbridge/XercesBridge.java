@@ -45,34 +45,24 @@ public abstract class XercesBridge
 	
     private static XercesBridge makeInstance()
     {
-        final String[] classNames = {
-            "org.cyberneko.html.xercesbridge.XercesBridge_2_3",
-            "org.cyberneko.html.xercesbridge.XercesBridge_2_2",
-        };
+        // NOTE: The bridges are constructed directly rather than looked up
+        //       by name: their constructors fail with an
+        //       InstantiationException when the Xerces version is too old.
+        try {
+            return new XercesBridge_2_3();
+        }
+        catch (InstantiationException e) { }
+        catch (LinkageError e) { }
 
-        for (int i = 0; i != classNames.length; ++i) {
-            final String className = classNames[i];
-        	final XercesBridge bridge = newInstanceOrNull(className);
-            if (bridge != null) {
-                return bridge;
-            }
+        try {
+            return new XercesBridge_2_2();
         }
+        catch (InstantiationException e) { }
+        catch (LinkageError e) { }
+
         throw new IllegalStateException("Failed to create XercesBridge instance");
     }
 
-	private static XercesBridge newInstanceOrNull(final String className) {
-		try {
-			return (XercesBridge) Class.forName(className).newInstance();
-	    } 
-		catch (ClassNotFoundException ex) { }
-		catch (SecurityException ex) { } 
-		catch (LinkageError ex) { } 
-		catch (IllegalArgumentException e) { }
-		catch (IllegalAccessException e) { }
-		catch (InstantiationException e) { }
-		
-		return null;
-	}
 	/**
 	 * Default implementation does nothing
 	 *
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Properties;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.xercesbridge.XercesBridge;
+
+/**
+ * This test measures the number of bytes allocated per kilobyte of input
+ * while parsing each file of the canonical test corpus and compares it
+ * against the baseline stored in <code>data/perf/allocation-baseline.properties</code>.
+ * A test fails when a file allocates more than {@link #TOLERANCE} above
+ * its baseline.
+ * <p>
+ * Allocations are measured with the <code>getThreadAllocatedBytes</code>
+ * method of the HotSpot <code>ThreadMXBean</code>. The test passes without
+ * checking anything when it isn't available or when the Java or Xerces
+ * version differs from the one used to record the baseline. To record a
+ * new baseline, run the test with the system property
+ * <code>nekohtml.allocation.update</code> set to <code>true</code>.
+ */
+public class AllocationTest extends TestCase {
+
+    /** Allowed increase over the baseline. */
+    static final double TOLERANCE = 0.25;
+
+    /** Allowed increase over the baseline in bytes per KB, for tiny files. */
+    static final long SLACK = 2048;
+
+    /** Number of parses before measuring. */
+    private static final int WARMUP = 5;
+
+    /** Number of measured parses, the smallest result is kept. */
+    private static final int RUNS = 5;
+
+    private static final File baselineFile = new File("data/perf/allocation-baseline.properties");
+    private static final String JAVA_VERSION = "java.specification.version";
+    private static final String XERCES_VERSION = "xerces.version";
+
+    private static final Object threadMXBean = ManagementFactory.getThreadMXBean();
+    private static final Method getThreadAllocatedBytes = findGetThreadAllocatedBytes();
+    private static Baseline baseline;
+    private static boolean update;
+    private static boolean comparable;
+
+    private final File dataFile;
+
+    public static Test suite() throws Exception {
+        update = Boolean.getBoolean("nekohtml.allocation.update");
+        baseline = new Baseline(baselineFile, "Bytes allocated per KB of input, see AllocationTest");
+        comparable = baseline.matches(getEnvironment());
+
+        final TestSuite suite = new TestSuite();
+        if (getThreadAllocatedBytes == null) {
+            return suite;
+        }
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            suite.addTest(new AllocationTest((File) dataFiles.get(i)));
+        }
+        return new TestSetup(suite) {
+            protected void tearDown() throws Exception {
+                if (update) {
+                    baseline.store(getEnvironment());
+                }
+            }
+        };
+    }
+
+    AllocationTest(final File dataFile) {
+        super(Baseline.getKey(dataFile) + " [" + XercesBridge.getInstance().getVersion() + "]");
+        this.dataFile = dataFile;
+    }
+
+    protected void runTest() throws Exception {
+        final byte[] content = Baseline.readFully(dataFile);
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        CanonicalTest.applySettings(parser, dataFile, new StringWriter());
+        for (int i = 0; i < WARMUP; i++) {
+            parse(parser, content);
+        }
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            final long start = getAllocatedBytes();
+            parse(parser, content);
+            allocated = Math.min(allocated, getAllocatedBytes() - start);
+        }
+        final long perKB = allocated * 1024 / Math.max(content.length, 1);
+        final String key = Baseline.getKey(dataFile);
+        baseline.setResult(key, String.valueOf(perKB));
+
+        final String expected = baseline.getExpected(key);
+        if (!update && comparable && expected != null) {
+            final long limit = (long) (Long.parseLong(expected) * (1 + TOLERANCE)) + SLACK;
+            if (perKB > limit) {
+                fail(key + " allocates " + perKB + " bytes per KB, baseline is " + expected);
+            }
+        }
+    }
+
+    private void parse(final HTMLConfiguration parser, final byte[] content) throws Exception {
+        parser.parse(new XMLInputSource(null, dataFile.toString(), null, new ByteArrayInputStream(content), null));
+    }
+
+    private static long getAllocatedBytes() throws Exception {
+        final Object[] args = { new Long(Thread.currentThread().getId()) };
+        return ((Long) getThreadAllocatedBytes.invoke(threadMXBean, args)).longValue();
+    }
+
+    private static Method findGetThreadAllocatedBytes() {
+        try {
+            final Class type = Class.forName("com.sun.management.ThreadMXBean");
+            if (!type.isInstance(threadMXBean)) {
+                return null;
+            }
+            final Method method = type.getMethod("getThreadAllocatedBytes", new Class[] { long.class });
+            final Method supported = type.getMethod("isThreadAllocatedMemorySupported", new Class[0]);
+            if (!((Boolean) supported.invoke(threadMXBean, new Object[0])).booleanValue()) {
+                return null;
+            }
+            final Method enable = type.getMethod("setThreadAllocatedMemoryEnabled", new Class[] { boolean.class });
+            enable.invoke(threadMXBean, new Object[] { Boolean.TRUE });
+            return method;
+        }
+        catch (final Exception e) {
+            return null;
+        }
+    }
+
+    private static Properties getEnvironment() {
+        final Properties environment = new Properties();
+        environment.setProperty(JAVA_VERSION, System.getProperty(JAVA_VERSION));
+        environment.setProperty(XERCES_VERSION, XercesBridge.getInstance().getVersion());
+        return environment;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The measures of the files of the canonical test corpus recorded by a
+ * performance test, e.g. {@link AllocationTest} or {@link ThroughputRegression},
+ * together with the environment they were recorded in.
+ */
+class Baseline {
+
+    private static final File dataDir = new File("data");
+
+    private final File file;
+    private final String comment;
+    private final Properties expected = new Properties();
+    private final Properties results = new Properties();
+
+    /**
+     * Loads the baseline stored in the given file, if it exists.
+     *
+     * @param file the file of the baseline
+     * @param comment the first line of the file when it is stored
+     */
+    Baseline(final File file, final String comment) throws IOException {
+        this.file = file;
+        this.comment = comment;
+        if (file.exists()) {
+            final InputStream in = new FileInputStream(file);
+            expected.load(in);
+            in.close();
+        }
+    }
+
+    /** Returns the value recorded in the baseline, or null. */
+    String getExpected(final String key) {
+        return expected.getProperty(key);
+    }
+
+    /** Returns true if the baseline was recorded in the given environment. */
+    boolean matches(final Properties environment) {
+        for (final Iterator keys = environment.keySet().iterator(); keys.hasNext(); ) {
+            final String key = (String) keys.next();
+            if (!environment.getProperty(key).equals(expected.getProperty(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records the value measured in this run. */
+    void setResult(final String key, final String value) {
+        results.setProperty(key, value);
+    }
+
+    /** Stores the values measured in this run in place of the baseline. */
+    void store(final Properties environment) throws IOException {
+        results.putAll(environment);
+        file.getParentFile().mkdirs();
+        // sorted, so that the changes of the baseline can be reviewed
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1"));
+        out.println("# " + comment);
+        final Iterator keys = new TreeMap(results).keySet().iterator();
+        while (keys.hasNext()) {
+            final String key = (String) keys.next();
+            out.println(key + "=" + results.getProperty(key));
+        }
+        out.close();
+    }
+
+    /** Returns the key of a file of the test corpus, its path in the data directory. */
+    static String getKey(final File dataFile) {
+        final String path = dataFile.getPath().substring(dataDir.getPath().length() + 1);
+        return path.replace(File.separatorChar, '/');
+    }
+
+    /** Returns the content of a file. */
+    static byte[] readFully(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
@@ -49,6 +49,17 @@ public class CanonicalTest extends TestCase {
     	outputDir.mkdirs();
 
     	TestSuite suite = new TestSuite();
+    	final List/*File*/ dataFiles = getDataFiles();
+        for (int i=0; i < dataFiles.size(); i++) {
+            suite.addTest(new CanonicalTest((File) dataFiles.get(i)));
+        }
+        return suite;
+    }
+
+    /**
+     * Returns the sorted list of the test files of the data directory.
+     */
+    static List/*File*/ getDataFiles() {
     	final List/*File*/ dataFiles = new ArrayList();
         File dataDir = new File("data");
         dataDir.listFiles(new FileFilter() {
@@ -64,11 +75,7 @@ public class CanonicalTest extends TestCase {
             }
         });
         Collections.sort(dataFiles);
-
-        for (int i=0; i < dataFiles.size(); i++) {
-            suite.addTest(new CanonicalTest((File) dataFiles.get(i)));
-        }
-        return suite;
+        return dataFiles;
     }
 
     CanonicalTest(final File dataFile) throws Exception {
@@ -127,31 +134,10 @@ public class CanonicalTest extends TestCase {
 
             // parser settings
             parser.setProperty("http://cyberneko.org/html/properties/filters", filters);
-            String infilename = infile.toString();
-            File insettings = new File(infilename+".settings");
-            if (insettings.exists()) {
-                BufferedReader settings = new BufferedReader(new FileReader(insettings));
-                String settingline;
-                while ((settingline = settings.readLine()) != null) {
-                    StringTokenizer tokenizer = new StringTokenizer(settingline);
-                    String type = tokenizer.nextToken();
-                    String id = tokenizer.nextToken();
-                    String value = tokenizer.nextToken();
-                    if (type.equals("feature")) {
-                        parser.setFeature(id, value.equals("true"));
-                        if (HTMLScanner.REPORT_ERRORS.equals(id)) {
-                        	parser.setErrorHandler(new HTMLErrorHandler(out));
-                        }
-                    }
-                    else {
-                        parser.setProperty(id, value);
-                    }
-                }
-                settings.close();
-            }
+            applySettings(parser, infile, out);
 
             // parse
-            parser.parse(new XMLInputSource(null, infilename, null));
+            parser.parse(new XMLInputSource(null, infile.toString(), null));
         }
         finally {
             out.close();
@@ -164,4 +150,34 @@ public class CanonicalTest extends TestCase {
         }
         return sb.toString();
     }
+
+    /**
+     * Applies the features and properties of the settings file of a data
+     * file, if any. Errors are reported to the given writer when the
+     * settings enable error reporting.
+     */
+    static void applySettings(final XMLParserConfiguration parser, final File infile,
+    		final java.io.Writer out) throws IOException {
+        File insettings = new File(infile.toString()+".settings");
+        if (insettings.exists()) {
+            BufferedReader settings = new BufferedReader(new FileReader(insettings));
+            String settingline;
+            while ((settingline = settings.readLine()) != null) {
+                StringTokenizer tokenizer = new StringTokenizer(settingline);
+                String type = tokenizer.nextToken();
+                String id = tokenizer.nextToken();
+                String value = tokenizer.nextToken();
+                if (type.equals("feature")) {
+                    parser.setFeature(id, value.equals("true"));
+                    if (HTMLScanner.REPORT_ERRORS.equals(id)) {
+                    	parser.setErrorHandler(new HTMLErrorHandler(out));
+                    }
+                }
+                else {
+                    parser.setProperty(id, value);
+                }
+            }
+            settings.close();
+        }
+    }
 }
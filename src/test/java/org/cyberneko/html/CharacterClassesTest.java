@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CharacterClasses}: the tables must give the same
+ * answers as the <code>Character</code> methods they replace.
+ */
+public class CharacterClassesTest extends TestCase {
+
+    public void testAllCharacters() {
+        final String entity = "-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            final char c = (char) i;
+            final String hex = Integer.toHexString(i);
+            assertEquals(hex, Character.isWhitespace(c), CharacterClasses.isWhitespace(c));
+            assertEquals(hex, Character.isLetterOrDigit(c) || c == '-' || c == '.' || c == ':' || c == '_',
+                         CharacterClasses.isNameChar(c));
+            assertEquals(hex, Character.isWhitespace(c) || c == '=' || c == '/' || c == '>',
+                         CharacterClasses.isNameEnd(c));
+            assertEquals(hex, entity.indexOf(c) != -1, CharacterClasses.isEntityChar(i));
+        }
+        assertFalse(CharacterClasses.isEntityChar(-1));
+    }
+}
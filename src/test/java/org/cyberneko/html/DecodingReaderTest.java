@@ -0,0 +1,244 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link DecodingReader}: the characters must be the ones
+ * read by an {@link InputStreamReader}, including for malformed input.
+ */
+public class DecodingReaderTest extends TestCase {
+
+    private static final String[] ENCODINGS = { "UTF8", "ASCII", "Cp1252" };
+
+    /** Encodings decoded with a charset decoder. */
+    private static final String[] CHARSET_ENCODINGS = { "ISO8859_1", "KOI8_R", "UTF-16", "Shift_JIS", "GB18030" };
+
+    public void testCreateReader() throws Exception {
+        final InputStream in = new ByteArrayInputStream(new byte[0]);
+        assertTrue(DecodingReader.createReader(in, "UTF-8") instanceof DecodingReader);
+        assertTrue(DecodingReader.createReader(in, "windows-1252") instanceof DecodingReader);
+        assertTrue(DecodingReader.createReader(in, "UTF-16") instanceof DecodingReader);
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            final Reader reader = DecodingReader.createReader(in, ENCODINGS[i]);
+            assertEquals(ENCODINGS[i], DecodingReader.getEncoding(reader));
+            assertEquals(new InputStreamReader(in, ENCODINGS[i]).getEncoding(), DecodingReader.getEncoding(reader));
+        }
+        for (int i = 0; i < CHARSET_ENCODINGS.length; i++) {
+            final Reader reader = DecodingReader.createReader(in, CHARSET_ENCODINGS[i]);
+            assertEquals(new InputStreamReader(in, CHARSET_ENCODINGS[i]).getEncoding(), DecodingReader.getEncoding(reader));
+        }
+        try {
+            DecodingReader.createReader(in, "x-unknown");
+            fail();
+        }
+        catch (final UnsupportedEncodingException e) {
+            // expected
+        }
+        try {
+            DecodingReader.createReader(in, "bad name!");
+            fail();
+        }
+        catch (final UnsupportedEncodingException e) {
+            assertEquals("bad name!", e.getMessage());
+        }
+    }
+
+    public void testPool() throws Exception {
+        final DecodingReader.Pool pool = new DecodingReader.Pool();
+        final Reader reader = pool.getReader(new ByteArrayInputStream("caf\u00e9".getBytes("UTF-16")), "UTF-16", 2048);
+        assertEquals("caf\u00e9", read(reader, 2));
+        reader.close();
+        assertSame(reader, pool.getReader(new ByteArrayInputStream("th\u00e9".getBytes("UTF-16")), "utf-16", 2048));
+        assertEquals("th\u00e9", read(reader, 1024));
+        assertNotSame(reader, pool.getReader(new ByteArrayInputStream(new byte[0]), "UTF8", 2048));
+
+        // the aliases of an encoding share a reader
+        final Reader latin1 = pool.getReader(new ByteArrayInputStream(new byte[0]), "ISO8859_1", 2048);
+        assertSame(latin1, pool.getReader(new ByteArrayInputStream(new byte[0]), "ISO-8859-1", 2048));
+        assertSame(latin1, pool.getReader(new ByteArrayInputStream(new byte[0]), "latin1", 2048));
+        assertEquals(3, pool.size());
+
+        try {
+            pool.getReader(new ByteArrayInputStream(new byte[0]), "bad name!", 2048);
+            fail();
+        }
+        catch (final UnsupportedEncodingException e) {
+            // expected
+        }
+    }
+
+    public void testPoolBufferSize() throws Exception {
+        final DecodingReader.Pool pool = new DecodingReader.Pool();
+        final byte[] bytes = "caf\u00e9 au lait".getBytes("ISO-8859-1");
+        final Reader latin1 = pool.getReader(new ByteArrayInputStream(bytes), "ISO8859_1", 4);
+        assertEquals("caf\u00e9 au lait", read(latin1, 1024));
+        assertSame(latin1, pool.getReader(new ByteArrayInputStream(bytes), "ISO8859_1", 4));
+
+        // the byte buffer follows the size of the character buffer
+        final Reader larger = pool.getReader(new ByteArrayInputStream(bytes), "ISO8859_1", 4096);
+        assertNotSame(latin1, larger);
+        assertEquals("caf\u00e9 au lait", read(larger, 3));
+        assertSame(larger, pool.getReader(new ByteArrayInputStream(bytes), "ISO8859_1", 4096));
+
+        // not for the other encodings
+        final Reader utf8 = pool.getReader(new ByteArrayInputStream(bytes), "UTF8", 4);
+        assertSame(utf8, pool.getReader(new ByteArrayInputStream(bytes), "UTF8", 4096));
+        final Reader utf16 = pool.getReader(new ByteArrayInputStream(bytes), "UTF-16", 4);
+        assertSame(utf16, pool.getReader(new ByteArrayInputStream(bytes), "UTF-16", 4096));
+    }
+
+    public void testPoolBound() throws Exception {
+        final DecodingReader.Pool pool = new DecodingReader.Pool();
+        final Iterator names = Charset.availableCharsets().keySet().iterator();
+        for (int i = 0; i < 100 && names.hasNext(); i++) {
+            final String name = (String) names.next();
+            if (Charset.forName(name).canEncode()) {
+                final byte[] bytes = "abc".getBytes(name);
+                final Reader reader = pool.getReader(new ByteArrayInputStream(bytes), name, 2048);
+                final String expected = read(new InputStreamReader(new ByteArrayInputStream(bytes), name), 1024);
+                assertEquals(name, expected, read(reader, 1024));
+            }
+        }
+        assertEquals(16, pool.size());
+    }
+
+    public void testAllBytes() throws Exception {
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        for (int i = 0; i < ENCODINGS.length; i++) {
+            assertSameCharacters(ENCODINGS[i], bytes);
+        }
+        for (int i = 0; i < CHARSET_ENCODINGS.length; i++) {
+            assertSameCharacters(CHARSET_ENCODINGS[i], bytes);
+        }
+    }
+
+    public void testUTF8() throws Exception {
+        final String text = "<p>ASCII, \u00e9t\u00e9, \u20ac, \uD83D\uDE00 and \u0000</p>";
+        assertSameCharacters("UTF8", text.getBytes("UTF-8"));
+    }
+
+    public void testMalformedUTF8() throws Exception {
+        final int[][] sequences = {
+            { 0x80 }, { 0xC0, 0x80 }, { 0xC2 }, { 0xC2, 0x41 },
+            { 0xE0, 0x80, 0x80 }, { 0xE0, 0xA0 }, { 0xE2, 0x82, 0x41 }, { 0xE2, 0x41 },
+            { 0xED, 0xA0, 0x80 }, { 0xED, 0xA0, 0x41 }, { 0xED, 0xA0 },
+            { 0xF0, 0x80, 0x80, 0x80 }, { 0xF0, 0x90, 0x80 }, { 0xF0, 0x90, 0x80, 0x41 },
+            { 0xF0, 0x90, 0x41 }, { 0xF4, 0x90, 0x80, 0x80 }, { 0xF5, 0x80, 0x80, 0x80 },
+            { 0xF8, 0x88, 0x80, 0x80, 0x80 }, { 0xFF },
+        };
+        for (int i = 0; i < sequences.length; i++) {
+            final byte[] bytes = new byte[sequences[i].length + 2];
+            bytes[0] = 'a';
+            for (int j = 0; j < sequences[i].length; j++) {
+                bytes[j + 1] = (byte) sequences[i][j];
+            }
+            bytes[bytes.length - 1] = 'z';
+            assertSameCharacters("UTF8", bytes);
+            // truncated at the end of the stream
+            final byte[] truncated = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+            assertSameCharacters("UTF8", truncated);
+        }
+    }
+
+    public void testRandomBytes() throws Exception {
+        final Random random = new Random(42);
+        // bytes biased towards the lead and continuation bytes of UTF-8
+        final int[] candidates = { 'a', '<', 0x80, 0xBF, 0xC2, 0xDF, 0xE0, 0xED, 0xEF, 0xF0, 0xF4, 0xF5 };
+        for (int n = 0; n < 200; n++) {
+            final byte[] bytes = new byte[random.nextInt(64) + 1];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = random.nextBoolean()
+                         ? (byte) candidates[random.nextInt(candidates.length)]
+                         : (byte) random.nextInt(256);
+            }
+            for (int i = 0; i < ENCODINGS.length; i++) {
+                assertSameCharacters(ENCODINGS[i], bytes);
+            }
+            for (int i = 0; i < CHARSET_ENCODINGS.length; i++) {
+                assertSameCharacters(CHARSET_ENCODINGS[i], bytes);
+            }
+        }
+    }
+
+    public void testLargeInput() throws Exception {
+        final StringBuffer text = new StringBuffer();
+        for (int i = 0; i < 10000; i++) {
+            text.append("<p class='x'>\u00e9\u20ac\uD83D\uDE00 ").append(i).append("</p>\n");
+        }
+        assertSameCharacters("UTF8", text.toString().getBytes("UTF-8"));
+        assertSameCharacters("Cp1252", text.toString().getBytes("Cp1252"));
+        assertSameCharacters("ISO8859_1", text.toString().getBytes("ISO8859_1"));
+        assertSameCharacters("GB18030", text.toString().getBytes("GB18030"));
+        assertSameCharacters("UTF-16", text.toString().getBytes("UTF-16"));
+    }
+
+    /**
+     * Checks that the decoding reader returns the characters of an input
+     * stream reader, reading blocks of various sizes from a stream
+     * returning bytes one by one or in blocks.
+     */
+    private static void assertSameCharacters(final String encoding, final byte[] bytes) throws Exception {
+        final String expected = read(new InputStreamReader(new ByteArrayInputStream(bytes), encoding), 1024);
+        final int[] sizes = { 1, 2, 3, 7, 1024 };
+        for (int i = 0; i < sizes.length; i++) {
+            final InputStream in = new ByteArrayInputStream(bytes);
+            assertEquals(encoding + " " + toHex(bytes), expected,
+                         read(DecodingReader.createReader(in, encoding), sizes[i]));
+            final InputStream slow = new ByteArrayInputStream(bytes) {
+                public synchronized int read(final byte[] b, final int off, final int len) {
+                    return super.read(b, off, Math.min(len, 1));
+                }
+            };
+            assertEquals(encoding + " " + toHex(bytes), expected,
+                         read(DecodingReader.createReader(slow, encoding), sizes[i]));
+        }
+    }
+
+    private static String read(final Reader reader, final int size) throws IOException {
+        final StringBuffer sb = new StringBuffer();
+        final char[] buffer = new char[size];
+        int count;
+        while ((count = reader.read(buffer, 0, size)) != -1) {
+            sb.append(buffer, 0, count);
+        }
+        return sb.toString();
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(Integer.toHexString(bytes[i] & 0xFF)).append(' ');
+        }
+        return sb.toString();
+    }
+}
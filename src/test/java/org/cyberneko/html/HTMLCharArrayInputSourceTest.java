@@ -0,0 +1,122 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Unit tests for {@link HTMLCharArrayInputSource}: documents scanned in
+ * place must produce the events of the same characters read from a
+ * character stream.
+ */
+public class HTMLCharArrayInputSourceTest extends TestCase {
+
+    public void testCharSequences() throws Exception {
+        final String html = "<html><body>\r\n<p title='a\rb'>x\r\ny\rz\n</p>&amp;<b>\r</b></body></html>\r";
+        final String expected = parse(new XMLInputSource(null, "test.html", null, new StringReader(html), null));
+        assertEquals(expected, parse(new HTMLCharArrayInputSource(null, "test.html", null, html)));
+        assertEquals(expected, parse(new HTMLCharArrayInputSource(null, "test.html", null, new StringBuffer(html))));
+
+        // an array backed buffer is used in place
+        final char[] array = ("<<<" + html + "&&&").toCharArray();
+        final CharBuffer buffer = CharBuffer.wrap(array, 3, html.length());
+        final HTMLCharArrayInputSource source = new HTMLCharArrayInputSource(null, "test.html", null, buffer);
+        assertSame(array, source.getCharacters());
+        assertEquals(3, source.getOffset());
+        assertEquals(html.length(), source.getLength());
+        assertEquals(expected, parse(source));
+
+        // other components read the characters as a stream
+        final Reader reader = new HTMLCharArrayInputSource(null, "test.html", null, html).getCharacterStream();
+        final char[] chars = new char[html.length() + 1];
+        assertEquals(html.length(), reader.read(chars));
+        assertEquals(html, new String(chars, 0, html.length()));
+    }
+
+    public void testBounds() throws Exception {
+        try {
+            new HTMLCharArrayInputSource(null, null, null, new char[4], 2, 3);
+            fail();
+        }
+        catch (final IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Checks that the corpus is parsed the same way in place, with the
+     * document in the middle of a larger array, and that the array isn't
+     * modified.
+     */
+    public void testParseCorpus() throws Exception {
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            final File dataFile = (File) dataFiles.get(i);
+            final String html = read(dataFile);
+            final String expected = parse(dataFile, new XMLInputSource(null, dataFile.toString(), null,
+                                                                       new StringReader(html), null));
+
+            final String padding = "<x a='&";
+            final char[] array = (padding + html + padding).toCharArray();
+            final char[] copy = (char[]) array.clone();
+            final XMLInputSource source = new HTMLCharArrayInputSource(null, dataFile.toString(), null,
+                                                                       array, padding.length(), html.length());
+            assertEquals(dataFile.toString(), expected, parse(dataFile, source));
+            assertTrue(dataFile.toString(), Arrays.equals(copy, array));
+        }
+    }
+
+    private static String parse(final XMLInputSource source) throws Exception {
+        return parse(null, source);
+    }
+
+    private static String parse(final File dataFile, final XMLInputSource source) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        if (dataFile != null) {
+            CanonicalTest.applySettings(parser, dataFile, out);
+        }
+        parser.parse(source);
+        return out.toString();
+    }
+
+    private static String read(final File file) throws Exception {
+        final Reader reader = new InputStreamReader(new FileInputStream(file), "ISO-8859-1");
+        final StringBuffer sb = new StringBuffer();
+        final char[] buffer = new char[4096];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, count);
+        }
+        reader.close();
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the name lookups of {@link HTMLElements}.
+ */
+public class HTMLElementsTest extends TestCase {
+
+    public void testGetElement() {
+        final HTMLElements.Element div = HTMLElements.getElement(HTMLElements.DIV);
+        assertSame(div, HTMLElements.getElement("DIV"));
+        assertSame(div, HTMLElements.getElement("div"));
+        assertSame(div, HTMLElements.getElement("Div"));
+        assertNull(HTMLElements.getElement("custom", null));
+        assertEquals(HTMLElements.UNKNOWN, HTMLElements.getElement("custom").code);
+        assertEquals("CUSTOM", HTMLElements.getElement("custom").name);
+    }
+
+    public void testCaseForms() {
+        for (short code = 0; code < HTMLElements.UNKNOWN; code++) {
+            final String name = HTMLElements.getElement(code).name;
+            final String lower = name.toLowerCase();
+            assertSame(name, HTMLElements.toUpperCase(name));
+            assertSame(name, HTMLElements.toUpperCase(lower));
+            assertSame(HTMLElements.toLowerCase(name), HTMLElements.toLowerCase(lower));
+            assertEquals(lower, HTMLElements.toLowerCase(name));
+        }
+        assertEquals("TBODY", HTMLElements.toUpperCase("tBody"));
+        assertEquals("custom-element", HTMLElements.toLowerCase("Custom-Element"));
+    }
+}
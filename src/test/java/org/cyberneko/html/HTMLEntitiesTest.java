@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link HTMLEntities}: the compiled entity table must match
+ * the entity definitions of the res/*.properties files.
+ */
+public class HTMLEntitiesTest extends TestCase {
+
+    private static final String[] FILES = {
+        "res/HTMLlat1.properties",
+        "res/HTMLspecial.properties",
+        "res/HTMLsymbol.properties",
+        "res/XMLbuiltin.properties",
+    };
+
+    public void testMatchesProperties() throws Exception {
+        final Properties props = new Properties();
+        for (int i = 0; i < FILES.length; i++) {
+            final InputStream stream = HTMLEntities.class.getResourceAsStream(FILES[i]);
+            assertNotNull(FILES[i], stream);
+            props.load(stream);
+            stream.close();
+        }
+
+        assertEquals(props.size(), HTMLEntities.ENTITIES.size());
+        final Enumeration names = props.propertyNames();
+        while (names.hasMoreElements()) {
+            final String name = (String) names.nextElement();
+            final String value = props.getProperty(name);
+            assertEquals(name, value.charAt(0), HTMLEntities.get(name));
+            assertEquals(name, HTMLEntities.get(value.charAt(0)));
+        }
+    }
+
+    public void testUnknown() {
+        assertEquals(-1, HTMLEntities.get("unknown"));
+        assertEquals(-1, HTMLEntities.get("AMP"));
+        assertNull(HTMLEntities.get('a'));
+    }
+}
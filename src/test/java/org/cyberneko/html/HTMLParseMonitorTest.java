@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Unit tests for {@link HTMLParseMonitor}.
+ */
+public class HTMLParseMonitorTest extends TestCase {
+
+    public void testNotifications() throws Exception {
+        final String html = "<p>a</i><script>var i = 0;</script><style>p {}</style>"
+            + "<table><tr><td>b</table>";
+        final RecordingMonitor monitor = new RecordingMonitor();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/parse-monitor", monitor);
+        parser.parse(new XMLInputSource(null, "test.html", null, new StringReader(html), null));
+
+        final String[] expected = {
+            "startDocument",
+            "synthesizedElement HTML",
+            "synthesizedElement HEAD",
+            "synthesizedElement BODY",
+            "discardedElement I true",
+            "startSpecialContent SCRIPT",
+            "endSpecialContent SCRIPT 10",
+            "startSpecialContent STYLE",
+            "endSpecialContent STYLE 4",
+            "synthesizedElement TBODY",
+            "endDocument " + html.length(),
+        };
+        assertEquals(toString(expected), toString(monitor.events.toArray()));
+    }
+
+    public void testEncodingChange() throws Exception {
+        final String html = "<html><head><meta http-equiv='content-type' content='text/html; charset=UTF-8'>"
+            + "</head><body>\u00e9t\u00e9</body></html>";
+        final byte[] bytes = html.getBytes("UTF-8");
+        final RecordingMonitor monitor = new RecordingMonitor();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/parse-monitor", monitor);
+        parser.setProperty(HTMLScanner.PRESCAN_SIZE, new Integer(0));
+        parser.parse(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), null));
+
+        assertTrue(monitor.events.toString(), monitor.events.contains("encodingChanged Cp1252 UTF8"));
+
+        // the prescanned encoding is used from the start
+        monitor.events.clear();
+        parser.setProperty(HTMLScanner.PRESCAN_SIZE, new Integer(1024));
+        parser.parse(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), null));
+        assertFalse(monitor.events.toString(), monitor.events.contains("encodingChanged Cp1252 UTF8"));
+    }
+
+    public void testBufferResized() throws Exception {
+        final StringBuffer html = new StringBuffer("<p ");
+        for (int i = 0; i < 1000; i++) {
+            html.append("long-name");
+        }
+        html.append("=value>");
+        final RecordingMonitor monitor = new RecordingMonitor();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/parse-monitor", monitor);
+        parser.parse(new XMLInputSource(null, "test.html", null, new StringReader(html.toString()), null));
+
+        assertTrue(monitor.events.toString(), monitor.events.contains("bufferResized 2048 4096"));
+    }
+
+    private static String toString(final Object[] events) {
+        final StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < events.length; i++) {
+            sb.append(events[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static class RecordingMonitor implements HTMLParseMonitor {
+        final List events = new ArrayList();
+
+        public void startDocument(final String systemId, final String encoding) {
+            events.add("startDocument");
+        }
+        public void endDocument(final int characterCount) {
+            events.add("endDocument " + characterCount);
+        }
+        public void encodingChanged(final String oldEncoding, final String newEncoding, final int replayedBytes) {
+            events.add("encodingChanged " + oldEncoding + " " + newEncoding);
+        }
+        public void bufferResized(final int oldSize, final int newSize) {
+            events.add("bufferResized " + oldSize + " " + newSize);
+        }
+        public void startSpecialContent(final String element) {
+            events.add("startSpecialContent " + element);
+        }
+        public void endSpecialContent(final String element, final int length) {
+            events.add("endSpecialContent " + element + " " + length);
+        }
+        public void synthesizedElement(final String element) {
+            events.add("synthesizedElement " + element);
+        }
+        public void discardedElement(final String element, final boolean end) {
+            events.add("discardedElement " + element + " " + end);
+        }
+    }
+}
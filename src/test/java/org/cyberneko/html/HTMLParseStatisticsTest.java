@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Unit tests for {@link HTMLParseStatistics}.
+ */
+public class HTMLParseStatisticsTest extends TestCase {
+
+    public void testCounters() throws Exception {
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parse(parser, "<p>a<b>b</b></i><p>c &amp; d &#65; &unknown;<table><tr><td>e</table>");
+
+        final HTMLParseStatistics statistics = parser.getParseStatistics();
+        assertEquals(6, statistics.getElementCount());
+        // HTML, HEAD, BODY and TBODY
+        assertEquals(4, statistics.getSynthesizedElementCount());
+        // </i>
+        assertEquals(1, statistics.getDiscardedElementCount());
+        assertEquals(2, statistics.getEntityReferenceCount());
+        // HTML, BODY, P, TABLE, TBODY, TR, TD
+        assertEquals(7, statistics.getMaxElementDepth());
+        assertEquals(0, statistics.getEncodingChangeCount());
+        assertEquals(0, statistics.getReplayedByteCount());
+    }
+
+    public void testEncodingChange() throws Exception {
+        final String html = "<html><head><title>&eacute;t&eacute;</title>"
+            + "<meta http-equiv='content-type' content='text/html; charset=UTF-8'>"
+            + "</head><body>\u00e9t\u00e9</body></html>";
+        final byte[] bytes = html.getBytes("UTF-8");
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty(HTMLScanner.PRESCAN_SIZE, new Integer(0));
+        parser.parse(new XMLInputSource(null, "test", null, new ByteArrayInputStream(bytes), null));
+
+        HTMLParseStatistics statistics = parser.getParseStatistics();
+        assertEquals(1, statistics.getEncodingChangeCount());
+        assertTrue(statistics.getReplayedByteCount() > 0);
+        assertTrue(statistics.getReplayedByteCount() <= bytes.length);
+        // the elements and references read again are not counted twice
+        assertEquals(5, statistics.getElementCount());
+        assertEquals(2, statistics.getEntityReferenceCount());
+
+        // the prescanned encoding is used from the start
+        parser.setProperty(HTMLScanner.PRESCAN_SIZE, new Integer(1024));
+        parser.parse(new XMLInputSource(null, "test", null, new ByteArrayInputStream(bytes), null));
+        statistics = parser.getParseStatistics();
+        assertEquals(0, statistics.getEncodingChangeCount());
+        assertEquals(0, statistics.getReplayedByteCount());
+        assertEquals(5, statistics.getElementCount());
+        assertEquals(2, statistics.getEntityReferenceCount());
+    }
+
+    public void testBufferGrowth() throws Exception {
+        final StringBuffer html = new StringBuffer("<p>");
+        for (int i = 0; i < 1000; i++) {
+            html.append("<!-- a long comment -->");
+        }
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parse(parser, html.toString());
+        assertEquals(0, parser.getParseStatistics().getBufferGrowthCount());
+
+        // a name must fit in the buffer
+        html.setLength(0);
+        html.append("<p ");
+        for (int i = 0; i < 1000; i++) {
+            html.append("long-name");
+        }
+        html.append("=value>");
+        parse(parser, html.toString());
+        assertTrue(parser.getParseStatistics().getBufferGrowthCount() > 0);
+    }
+
+    public void testReset() throws Exception {
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parse(parser, "<p>a<p>b");
+        assertEquals(2, parser.getParseStatistics().getElementCount());
+        parse(parser, "<p>a");
+        assertEquals(1, parser.getParseStatistics().getElementCount());
+    }
+
+    public void testCustomStatistics() throws Exception {
+        final HTMLParseStatistics statistics = new HTMLParseStatistics();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/statistics", statistics);
+        parse(parser, "<p>a<p>b");
+        assertSame(statistics, parser.getParseStatistics());
+        assertEquals(2, statistics.getElementCount());
+
+        parser.setProperty("http://cyberneko.org/html/properties/statistics", null);
+        parse(parser, "<p>a");
+        assertNull(parser.getParseStatistics());
+        assertEquals(2, statistics.getElementCount());
+    }
+
+    private void parse(final HTMLConfiguration parser, final String html) throws Exception {
+        parser.parse(new XMLInputSource(null, "test", null, new StringReader(html), null));
+    }
+}
@@ -0,0 +1,102 @@
+/* 
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.filters.DefaultFilter;
+import org.cyberneko.html.filters.Identity;
+
+/**
+ * Unit tests for {@link HTMLPipelineTimings}.
+ */
+public class HTMLPipelineTimingsTest extends TestCase {
+
+    private static final String HTML = "<html><head><title>t</title></head>"
+        + "<body><p>a<b>b</b><p>c &amp; d<table><tr><td>e</table></body></html>";
+
+    public void testStages() throws Exception {
+        final HTMLPipelineTimings timings = new HTMLPipelineTimings();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Identity() });
+        parser.setProperty("http://cyberneko.org/html/properties/pipeline-timings", timings);
+        parser.setDocumentHandler(new DefaultFilter());
+        parser.parse(new XMLInputSource(null, "test", null, new StringReader(HTML), null));
+
+        assertEquals(5, timings.getStageCount());
+        assertEquals("HTMLScanner", timings.getStageName(0));
+        assertEquals("NamespaceBinder", timings.getStageName(1));
+        assertEquals("HTMLTagBalancer", timings.getStageName(2));
+        assertEquals("Identity", timings.getStageName(3));
+        assertEquals("DefaultFilter", timings.getStageName(4));
+        assertEquals(1, timings.getDocumentCount());
+
+        long time = 0;
+        for (int i = 0; i < timings.getStageCount(); i++) {
+            assertTrue(timings.getEventCount(i) > 0);
+            time += timings.getTime(i);
+        }
+        assertEquals(timings.getTotalTime(), time);
+        // the tag balancer inserts TBODY and closes the first P
+        assertTrue(timings.getEventCount(3) > timings.getEventCount(2));
+        assertEquals(timings.getEventCount(3), timings.getEventCount(4));
+
+        // values accumulate
+        long events = timings.getEventCount(4);
+        parser.parse(new XMLInputSource(null, "test", null, new StringReader(HTML), null));
+        assertEquals(2, timings.getDocumentCount());
+        assertEquals(2 * events, timings.getEventCount(4));
+
+        timings.reset();
+        assertEquals(0, timings.getDocumentCount());
+        assertEquals(0, timings.getEventCount(4));
+    }
+
+    public void testSameOutput() throws Exception {
+        final StringWriter expected = new StringWriter();
+        parse(expected, null);
+        final StringWriter instrumented = new StringWriter();
+        parse(instrumented, new HTMLPipelineTimings());
+        assertEquals(expected.toString(), instrumented.toString());
+    }
+
+    public void testTimingsRemoved() throws Exception {
+        final HTMLPipelineTimings timings = new HTMLPipelineTimings();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/pipeline-timings", timings);
+        parser.parse(new XMLInputSource(null, "test", null, new StringReader(HTML), null));
+        assertEquals(3, timings.getStageCount());
+
+        parser.setProperty("http://cyberneko.org/html/properties/pipeline-timings", null);
+        parser.parse(new XMLInputSource(null, "test", null, new StringReader(HTML), null));
+        assertEquals(1, timings.getDocumentCount());
+    }
+
+    private void parse(final java.io.Writer out, final HTMLPipelineTimings timings) throws Exception {
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        if (timings != null) {
+            parser.setProperty("http://cyberneko.org/html/properties/pipeline-timings", timings);
+        }
+        parser.parse(new XMLInputSource(null, "test", null, new StringReader(HTML), null));
+    }
+}
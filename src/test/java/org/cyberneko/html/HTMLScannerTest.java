@@ -1,7 +1,11 @@
 package org.cyberneko.html;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -139,6 +143,187 @@ public class HTMLScannerTest extends TestCase {
 
    }
 
+	/**
+	 * The documents must be scanned the same way whatever the size of the
+	 * buffer, tokens spanning the end of a small buffer grow it.
+	 */
+	public void testBufferSizes() throws Exception {
+		final List dataFiles = CanonicalTest.getDataFiles();
+		final int[] sizes = { 1, 3, 16, 100 };
+		for (int i = 0; i < dataFiles.size(); i++) {
+			final File dataFile = (File) dataFiles.get(i);
+			final String expected = parse(dataFile, null, null);
+			for (int j = 0; j < sizes.length; j++) {
+				assertEquals(dataFile + " " + sizes[j], expected, parse(dataFile, new Integer(sizes[j]), null));
+			}
+		}
+	}
+
+	/**
+	 * A stream may return fewer characters than requested before its end,
+	 * e.g. in the middle of a script end tag.
+	 */
+	public void testShortReads() throws Exception {
+		final String html = "<head><script></script><title>Title</title>";
+		final String expected = parse(html.getBytes("ISO-8859-1"), null);
+		for (int i = 1; i < html.length(); i++) {
+			final int firstRead = i;
+			final Reader reader = new StringReader(html) {
+				private boolean fFirst = true;
+				public int read(final char[] cbuf, final int off, final int len) throws IOException {
+					final int count = fFirst ? Math.min(len, firstRead) : len;
+					fFirst = false;
+					return super.read(cbuf, off, count);
+				}
+			};
+			final StringWriter out = new StringWriter();
+			final HTMLConfiguration parser = new HTMLConfiguration();
+			parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+			parser.parse(new XMLInputSource(null, "myTest", null, reader, null));
+			assertEquals(String.valueOf(i), expected, out.toString());
+		}
+	}
+
+	/**
+	 * The end tags of script, noscript, noframes and iframe are found
+	 * whatever their case and wherever the buffer ends.
+	 */
+	public void testSpecialContentEndTags() throws Exception {
+		final String[] html = {
+			"<script>a<b && c>d</SCRIPT >x",
+			"<script>var s = '</scriptx>';\r\n f(1-2);</Script\n>y",
+			"<script><!-- document.write('</script>'); --></script>z",
+			"<script>a</script",
+			"<script><!-- a</script>b",
+			"<script><!-- a</script>b-->c</script>d",
+			"<script><!--></script>b-->c</script>d",
+			"<script>a<!-\n-</script>b-->c</script>d",
+			"<script><!--<!-- a --></script>b",
+			"<noscript><p>a</p></NOSCRIPT>b",
+			"<iframe>a</iframex></iframe>b",
+		};
+		final String[] expected = {
+			"\"a<b && c>d\n)SCRIPT\n",
+			"\"var s = '</scriptx>';\\n f(1-2);\n)SCRIPT\n",
+			"\"<!-- document.write('</script>'); -->\n)SCRIPT\n",
+			"\"a\n)SCRIPT\n",
+			"\"<!-- a\n)SCRIPT\n",
+			"\"<!-- a</script>b-->c\n)SCRIPT\n",
+			"\"<!-->\n)SCRIPT\n",
+			"\"a<!-\\n-\n)SCRIPT\n",
+			"\"<!--<!-- a -->\n)SCRIPT\n",
+			"\"<p>a</p>\n)NOSCRIPT\n",
+			"\"a</iframex>\n)IFRAME\n",
+		};
+		for (int i = 0; i < html.length; i++) {
+			for (int size = 1; size <= html[i].length(); size++) {
+				final StringWriter out = new StringWriter();
+				final HTMLConfiguration parser = new HTMLConfiguration();
+				parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+				parser.setProperty(HTMLScanner.BUFFER_SIZE, new Integer(size));
+				parser.setFeature(HTMLScanner.PARSE_NOSCRIPT_CONTENT, false);
+				parser.parse(new XMLInputSource(null, "myTest", null, new StringReader(html[i]), null));
+				assertTrue(html[i] + " " + size + ": " + out, out.toString().indexOf(expected[i]) != -1);
+			}
+		}
+	}
+
+	public void testMaxBufferSize() throws Exception {
+		final HTMLConfiguration parser = new HTMLConfiguration();
+		parser.setProperty(HTMLScanner.BUFFER_SIZE, "16");
+		parser.setProperty(HTMLScanner.MAX_BUFFER_SIZE, new Integer(64));
+		parser.parse(new XMLInputSource(null, "myTest", null, new StringReader("<html><body><" + repeat('x', 40) + ">"), null));
+		try {
+			parser.parse(new XMLInputSource(null, "myTest", null, new StringReader("<html><body><" + repeat('x', 100) + ">"), null));
+			fail();
+		}
+		catch (final IOException e) {
+			// expected: the element name doesn't fit
+		}
+	}
+
+	public void testBufferReuse() throws Exception {
+		final HTMLConfiguration parser = new HTMLConfiguration();
+		final HTMLScanner scanner = parser.fDocumentScanner;
+		parser.setProperty(HTMLScanner.BUFFER_SIZE, new Integer(32));
+		parser.parse(new XMLInputSource(null, "myTest", null, new StringReader("<" + repeat('x', 100) + ">"), null));
+		final char[] buffer = scanner.fCurrentEntity.buffer;
+		assertEquals(128, buffer.length);
+		parser.parse(new XMLInputSource(null, "myTest", null, new StringReader("<p>hello</p>"), null));
+		assertSame(buffer, scanner.fCurrentEntity.buffer);
+
+		// a buffer grown for an unusual document isn't kept
+		parser.setProperty(HTMLScanner.BUFFER_SIZE, new Integer(8));
+		parser.parse(new XMLInputSource(null, "myTest", null, new StringReader("<p " + repeat('x', 100000) + ">"), null));
+		assertTrue(scanner.fCurrentEntity.buffer.length > HTMLScanner.MAX_REUSED_BUFFER_SIZE);
+		parser.parse(new XMLInputSource(null, "myTest", null, new StringReader("<p>hello</p>"), null));
+		assertEquals(8, scanner.fCurrentEntity.buffer.length);
+	}
+
+	/**
+	 * The encoding declarations found by the prescan must be the ones
+	 * found by scanning and playing back the whole head.
+	 */
+	public void testPrescanCorpus() throws Exception {
+		final List dataFiles = CanonicalTest.getDataFiles();
+		for (int i = 0; i < dataFiles.size(); i++) {
+			final File dataFile = (File) dataFiles.get(i);
+			assertEquals(dataFile.toString(), parse(dataFile, null, null, new Integer(0)),
+			             parse(dataFile, null, null, null));
+		}
+	}
+
+	public void testPrescanSize() throws Exception {
+		final String html = "<html><head><!-- " + repeat('x', 2000) + " -->"
+			+ "<meta charset='UTF-8'><script>var s = '<meta charset=\"ISO-8859-2\">';</script>"
+			+ "</head><body>\u00e9t\u00e9<meta charset='ISO-8859-2'></body></html>";
+		final byte[] bytes = html.getBytes("UTF-8");
+		assertTrue(parse(bytes, new Integer(0)).indexOf("\u00e9t\u00e9") != -1);
+		assertTrue(parse(bytes, new Integer(4096)).indexOf("\u00e9t\u00e9") != -1);
+		// the declaration isn't in the first bytes
+		assertTrue(parse(bytes, null).indexOf("\u00c3\u00a9t\u00c3\u00a9") != -1);
+	}
+
+	private static String parse(final byte[] bytes, final Integer prescanSize) throws Exception {
+		final StringWriter out = new StringWriter();
+		final HTMLConfiguration parser = new HTMLConfiguration();
+		parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+		if (prescanSize != null) {
+			parser.setProperty(HTMLScanner.PRESCAN_SIZE, prescanSize);
+		}
+		parser.parse(new XMLInputSource(null, "myTest", null, new ByteArrayInputStream(bytes), null));
+		return out.toString();
+	}
+
+	private static String parse(final File dataFile, final Integer bufferSize, final Integer maxBufferSize) throws Exception {
+		return parse(dataFile, bufferSize, maxBufferSize, null);
+	}
+
+	private static String parse(final File dataFile, final Integer bufferSize, final Integer maxBufferSize,
+	                            final Integer prescanSize) throws Exception {
+		final StringWriter out = new StringWriter();
+		final HTMLConfiguration parser = new HTMLConfiguration();
+		parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+		CanonicalTest.applySettings(parser, dataFile, out);
+		if (bufferSize != null) {
+			parser.setProperty(HTMLScanner.BUFFER_SIZE, bufferSize);
+		}
+		if (maxBufferSize != null) {
+			parser.setProperty(HTMLScanner.MAX_BUFFER_SIZE, maxBufferSize);
+		}
+		if (prescanSize != null) {
+			parser.setProperty(HTMLScanner.PRESCAN_SIZE, prescanSize);
+		}
+		parser.parse(new XMLInputSource(null, dataFile.toString(), null));
+		return out.toString();
+	}
+
+	private static String repeat(final char c, final int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
 	public void testReduceToContent() throws Exception {
 		XMLStringBuffer buffer = new XMLStringBuffer("<!-- hello-->");
 		
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Unit tests for {@link InflatingInputStream} and the
+ * <code>content-encoding</code> property of the scanner.
+ */
+public class InflatingInputStreamTest extends TestCase {
+
+    private static final byte[] TEXT = getBytes("<p>compressed \u00E9t\u00E9</p>");
+
+    public void testGzip() throws Exception {
+        assertEquals(TEXT, read(gzip(TEXT), InflatingInputStream.GZIP));
+        assertEquals(TEXT, read(gzip(TEXT), InflatingInputStream.DETECT));
+
+        // the members are concatenated, trailing bytes are ignored
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(gzip(TEXT));
+        out.write(gzip(new byte[0]));
+        out.write(gzip(TEXT));
+        out.write(0);
+        final byte[] expected = new byte[TEXT.length * 2];
+        System.arraycopy(TEXT, 0, expected, 0, TEXT.length);
+        System.arraycopy(TEXT, 0, expected, TEXT.length, TEXT.length);
+        assertEquals(expected, read(out.toByteArray(), InflatingInputStream.GZIP));
+
+        // optional header fields
+        final byte[] data = gzip(TEXT);
+        final byte[] header = { 0x1F, (byte) 0x8B, 8, 0x04 | 0x08 | 0x10, 0, 0, 0, 0, 0, (byte) 0xFF,
+                                3, 0, 'a', 'b', 'c', 'n', 'a', 'm', 'e', 0, 0 };
+        final byte[] fields = new byte[header.length + data.length - 10];
+        System.arraycopy(header, 0, fields, 0, header.length);
+        System.arraycopy(data, 10, fields, header.length, data.length - 10);
+        assertEquals(TEXT, read(fields, InflatingInputStream.GZIP));
+
+        // the checksum is verified
+        data[data.length - 8] ^= 1;
+        try {
+            read(data, InflatingInputStream.GZIP);
+            fail();
+        }
+        catch (final IOException e) {
+            // expected
+        }
+    }
+
+    public void testDeflate() throws Exception {
+        final ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        compress(new DeflaterOutputStream(zlib), TEXT);
+        assertEquals(TEXT, read(zlib.toByteArray(), InflatingInputStream.DEFLATE));
+
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        compress(new DeflaterOutputStream(raw, new Deflater(Deflater.DEFAULT_COMPRESSION, true)), TEXT);
+        assertEquals(TEXT, read(raw.toByteArray(), InflatingInputStream.DEFLATE));
+
+        try {
+            read(raw.toByteArray(), InflatingInputStream.GZIP);
+            fail();
+        }
+        catch (final IOException e) {
+            // expected
+        }
+    }
+
+    public void testDetect() throws Exception {
+        assertEquals(TEXT, read(TEXT, InflatingInputStream.DETECT));
+        assertEquals(new byte[0], read(new byte[0], InflatingInputStream.DETECT));
+        assertEquals(new byte[] { 0x1F }, read(new byte[] { 0x1F }, InflatingInputStream.DETECT));
+        assertFalse(new InflatingInputStream(new ByteArrayInputStream(TEXT), InflatingInputStream.DETECT).isCompressed());
+        assertTrue(new InflatingInputStream(new ByteArrayInputStream(gzip(TEXT)), InflatingInputStream.DETECT).isCompressed());
+    }
+
+    /** Checks the single byte reads, and the reads of a stream sometimes returning no bytes. */
+    public void testEmptyReads() throws Exception {
+        final byte[] gzip = gzip(TEXT);
+        final InputStream empty = new ByteArrayInputStream(gzip) {
+            private boolean nothing;
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                nothing = !nothing;
+                return nothing ? 0 : super.read(b, off, Math.min(len, 3));
+            }
+        };
+        final InputStream in = new InflatingInputStream(empty, InflatingInputStream.DETECT);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        assertEquals(TEXT, out.toByteArray());
+    }
+
+    public void testContentEncoding() throws Exception {
+        final ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        compress(new DeflaterOutputStream(zlib), TEXT);
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        final String expected = parse(parser, TEXT);
+        assertEquals("(HTML\n(HEAD\n)HEAD\n(BODY\n(P\n\"compressed \u00E9t\u00E9\n)P\n)BODY\n)HTML\n", expected);
+
+        // gzip is detected, zlib needs the content coding
+        assertEquals(expected, parse(parser, gzip(TEXT)));
+        assertFalse(expected.equals(parse(parser, zlib.toByteArray())));
+        parser.setProperty(HTMLScanner.CONTENT_ENCODING, "deflate");
+        assertEquals(expected, parse(parser, zlib.toByteArray()));
+        parser.setProperty(HTMLScanner.CONTENT_ENCODING, "identity");
+        assertFalse(expected.equals(parse(parser, gzip(TEXT))));
+    }
+
+    /** Checks that the corpus is parsed the same way when gzipped. */
+    public void testParseCorpus() throws Exception {
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            final File dataFile = (File) dataFiles.get(i);
+            final byte[] bytes = read(new FileInputStream(dataFile));
+            assertEquals(dataFile.toString(), parse(dataFile, bytes), parse(dataFile, gzip(bytes)));
+        }
+    }
+
+    private static String parse(final HTMLConfiguration parser, final byte[] bytes) throws Exception {
+        final StringWriter out = new StringWriter();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        parser.parse(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), null));
+        return out.toString();
+    }
+
+    private static String parse(final File dataFile, final byte[] bytes) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        CanonicalTest.applySettings(parser, dataFile, out);
+        parser.parse(new XMLInputSource(null, dataFile.toString(), null, new ByteArrayInputStream(bytes), null));
+        return out.toString();
+    }
+
+    private static void assertEquals(final byte[] expected, final byte[] actual) {
+        assertEquals(new String(expected), new String(actual));
+    }
+
+    private static byte[] getBytes(final String s) {
+        try {
+            return s.getBytes("ISO-8859-1");
+        }
+        catch (final java.io.UnsupportedEncodingException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    private static byte[] read(final byte[] bytes, final short format) throws IOException {
+        return read(new InflatingInputStream(new ByteArrayInputStream(bytes), format));
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[7];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(final byte[] bytes) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compress(new GZIPOutputStream(out), bytes);
+        return out.toByteArray();
+    }
+
+    private static void compress(final OutputStream out, final byte[] bytes) throws IOException {
+        out.write(bytes);
+        out.close();
+    }
+}
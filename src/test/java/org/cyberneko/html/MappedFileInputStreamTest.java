@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Unit tests for {@link MappedFileInputStream} and the
+ * <code>map-files</code> feature of the scanner.
+ */
+public class MappedFileInputStreamTest extends TestCase {
+
+    public void testRead() throws Exception {
+        final File file = File.createTempFile("nekohtml", ".html");
+        try {
+            final FileOutputStream out = new FileOutputStream(file);
+            out.write(new byte[] { 'a', 'b', 'c', (byte) 0xE9, 'd' });
+            out.close();
+
+            final InputStream in = new MappedFileInputStream(file);
+            assertEquals(5, in.available());
+            assertEquals('a', in.read());
+            in.mark(0);
+            final byte[] buffer = new byte[10];
+            assertEquals(4, in.read(buffer, 1, 9));
+            assertEquals('b', buffer[1]);
+            assertEquals((byte) 0xE9, buffer[3]);
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(buffer, 0, 10));
+            in.reset();
+            assertEquals(2, in.skip(2));
+            assertEquals(0xE9, in.read());
+            in.close();
+
+            // a channel is mapped from its position
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            final FileChannel channel = raf.getChannel();
+            channel.position(3);
+            final InputStream tail = new MappedFileInputStream(channel);
+            assertTrue(channel.isOpen());
+            assertEquals(0xE9, tail.read());
+            assertEquals('d', tail.read());
+            assertEquals(-1, tail.read());
+            raf.close();
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    public void testOpenMappedFile() throws Exception {
+        final File file = new File("data/meta/test-meta-encoding.html");
+        assertTrue(HTMLScanner.openMappedFile(file.toURI().toString()) instanceof MappedFileInputStream);
+        assertNull(HTMLScanner.openMappedFile("http://localhost/index.html"));
+        assertNull(HTMLScanner.openMappedFile("file://host/index.html"));
+        assertNull(HTMLScanner.openMappedFile(new File("data").toURI().toString()));
+    }
+
+    /**
+     * Checks that the corpus is parsed the same way with mapped files,
+     * including the documents whose encoding changes while scanning.
+     */
+    public void testParseCorpus() throws Exception {
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            final File dataFile = (File) dataFiles.get(i);
+            assertEquals(dataFile.toString(), parse(dataFile, false), parse(dataFile, true));
+        }
+    }
+
+    private static String parse(final File dataFile, final boolean mapFiles) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        CanonicalTest.applySettings(parser, dataFile, out);
+        parser.setFeature(HTMLScanner.MAP_FILES, mapFiles);
+        parser.parse(new XMLInputSource(null, dataFile.toString(), null));
+        return out.toString();
+    }
+}
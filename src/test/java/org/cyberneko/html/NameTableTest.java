@@ -0,0 +1,99 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link NameTable}.
+ */
+public class NameTableTest extends TestCase {
+
+    public void testGetName() {
+        final NameTable table = new NameTable();
+        final char[] buffer = "<div class='a'><DIV>".toCharArray();
+        final String div = table.getName(buffer, 1, 3);
+        assertEquals("div", div);
+        assertEquals("class", table.getName(buffer, 5, 5));
+        assertSame(div, table.getName("xdivx".toCharArray(), 1, 3));
+        assertEquals("DIV", table.getName(buffer, 16, 3));
+        assertNotSame(div, table.getName(buffer, 16, 3));
+        assertEquals("", table.getName(buffer, 0, 0));
+    }
+
+    public void testModifyName() {
+        final NameTable table = new NameTable();
+        final String name = table.getName("Div".toCharArray(), 0, 3);
+        final String upper = table.modifyName(name, HTMLScanner.NAMES_UPPERCASE);
+        assertEquals("DIV", upper);
+        assertSame(upper, table.modifyName(name, HTMLScanner.NAMES_UPPERCASE));
+        final String lower = table.modifyName(name, HTMLScanner.NAMES_LOWERCASE);
+        assertEquals("div", lower);
+        assertSame(lower, table.modifyName(name, HTMLScanner.NAMES_LOWERCASE));
+        assertSame(name, table.modifyName(name, HTMLScanner.NAMES_NO_CHANGE));
+
+        // a name that isn't in the table
+        assertEquals("SPAN", table.modifyName(new String("span"), HTMLScanner.NAMES_UPPERCASE));
+    }
+
+    public void testBounds() {
+        final NameTable table = new NameTable();
+        final StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 100; i++) {
+            sb.append('a');
+        }
+        final char[] longName = sb.toString().toCharArray();
+        assertNotSame(table.getName(longName, 0, longName.length), table.getName(longName, 0, longName.length));
+
+        final String first = table.getName("n0".toCharArray(), 0, 2);
+        for (int i = 1; i < 5000; i++) {
+            final char[] name = ("n" + i).toCharArray();
+            assertEquals("n" + i, table.getName(name, 0, name.length));
+        }
+        // the table was cleared when full, keeping the last names
+        assertNotSame(first, table.getName("n0".toCharArray(), 0, 2));
+        final char[] last = "n4999".toCharArray();
+        final String kept = table.getName(last, 0, 5);
+        assertSame(kept, table.getName(last, 0, 5));
+
+        table.clear();
+        assertNotSame(kept, table.getName(last, 0, 5));
+    }
+
+    public void testCollisions() {
+        final NameTable table = new NameTable();
+        // "Aa" and "BB" have the same hash code, and so have their concatenations
+        final String[] names = new String[16];
+        for (int i = 0; i < names.length; i++) {
+            final StringBuffer sb = new StringBuffer();
+            for (int j = 0; j < 4; j++) {
+                sb.append((i & (1 << j)) == 0 ? "Aa" : "BB");
+            }
+            names[i] = sb.toString();
+            assertEquals(names[0].hashCode(), names[i].hashCode());
+        }
+        for (int i = 0; i < names.length; i++) {
+            final char[] name = names[i].toCharArray();
+            assertEquals(names[i], table.getName(name, 0, name.length));
+        }
+        for (int i = 0; i < names.length; i++) {
+            final char[] name = names[i].toCharArray();
+            final boolean kept = table.getName(name, 0, name.length) == table.getName(name, 0, name.length);
+            assertEquals(names[i], i < 8, kept);
+        }
+    }
+}
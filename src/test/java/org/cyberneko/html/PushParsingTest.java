@@ -0,0 +1,251 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.filters.DefaultFilter;
+
+/**
+ * Unit tests for the push parsing of {@link HTMLConfiguration}.
+ */
+public class PushParsingTest extends TestCase {
+
+    /**
+     * Checks that the corpus is parsed the same way when its bytes are
+     * pushed in chunks, including the errors reported.
+     */
+    public void testParseCorpus() throws Exception {
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        final int[] sizes = { 1, 7, 500, 100000 };
+        for (int i = 0; i < dataFiles.size(); i++) {
+            final File dataFile = (File) dataFiles.get(i);
+            final byte[] bytes = read(dataFile);
+            final String expected = parse(dataFile, bytes, 0);
+            for (int j = 0; j < sizes.length; j++) {
+                assertEquals(dataFile + " " + sizes[j], expected, parse(dataFile, bytes, sizes[j]));
+            }
+        }
+    }
+
+    public void testIncompleteTokens() throws Exception {
+        final List events = new ArrayList();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters",
+                           new XMLDocumentFilter[] { new RecordingFilter(events) });
+        parser.startPush(new XMLInputSource(null, "test.html", null));
+        push(parser, "<html><body><p class='a");
+        assertTrue(events.toString(), events.isEmpty());
+
+        // the bytes searched for the encoding are pushed
+        final StringBuffer comment = new StringBuffer();
+        for (int i = 0; i < 2000; i++) {
+            comment.append('-');
+        }
+        push(parser, "'>x<!-- " + comment);
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, x]", events.toString());
+
+        // the scanner waits for more bytes before scanning a long token again
+        push(parser, " --><scr");
+        push(parser, "ipt>var s = '</p>';</scri");
+        assertFalse(events.toString(), events.contains("var s = '</p>';"));
+        assertFalse(events.toString(), events.contains(")SCRIPT"));
+        push(parser, "pt>\u00E9");
+        parser.endPush();
+        assertEquals("[(HTML, (HEAD, )HEAD, (BODY, (P, x, #comment, (SCRIPT, var s = '</p>';, )SCRIPT, \u00E9, )P, )BODY, )HTML]",
+                     events.toString());
+    }
+
+    public void testEncoding() throws Exception {
+        final String html = "<html><head><meta charset='UTF-8'></head><body>\u00E9t\u00E9</body></html>";
+        final List events = new ArrayList();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters",
+                           new XMLDocumentFilter[] { new RecordingFilter(events) });
+        parser.setProperty(HTMLScanner.PRESCAN_SIZE, new Integer(0));
+        parser.startPush(new XMLInputSource(null, "test.html", null));
+        final byte[] bytes = html.getBytes("UTF-8");
+        for (int i = 0; i < bytes.length; i++) {
+            parser.push(bytes, i, 1);
+        }
+        parser.endPush();
+        assertTrue(events.toString(), events.contains("\u00E9t\u00E9"));
+    }
+
+    /**
+     * Checks that the content inserted by a filter while the scanner
+     * sends the events of a pushed document is scanned once, in place.
+     */
+    public void testInsertedContent() throws Exception {
+        // the comment fills the bytes searched for the encoding
+        final StringBuffer html = new StringBuffer("<!--");
+        for (int i = 0; i < 2000; i++) {
+            html.append(' ');
+        }
+        html.append("--><html><body>");
+        for (int i = 0; i < 20; i++) {
+            html.append("<div>a</div><span>b</span><div>c<span>d</span></div>e");
+        }
+        html.append("</body></html>");
+        final byte[] bytes = html.toString().getBytes("ISO-8859-1");
+        final String expected = parseInserting(bytes, 0);
+        assertTrue(expected, expected.indexOf("(DIV, (EM, inserted, )EM, a, )DIV") != -1);
+        assertTrue(expected, expected.indexOf("(SPAN, (EM, evaluated, )EM, b, )SPAN") != -1);
+        final int[] sizes = { 1, 2, 3, 7, 100 };
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(String.valueOf(sizes[i]), expected, parseInserting(bytes, sizes[i]));
+        }
+    }
+
+    public void testPushAfterEnd() throws Exception {
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.startPush(new XMLInputSource(null, "test.html", null));
+        push(parser, "<p>a");
+        parser.endPush();
+        try {
+            push(parser, "b");
+            fail();
+        }
+        catch (final java.io.IOException e) {
+            // expected
+        }
+    }
+
+    private static void push(final HTMLConfiguration parser, final String s) throws Exception {
+        parser.push(ByteBuffer.wrap(s.getBytes("ISO-8859-1")));
+    }
+
+    private static String parse(final File dataFile, final byte[] bytes, final int chunkSize) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        CanonicalTest.applySettings(parser, dataFile, out);
+        final XMLInputSource source = new XMLInputSource(null, dataFile.toString(), null);
+        if (chunkSize == 0) {
+            source.setByteStream(new java.io.ByteArrayInputStream(bytes));
+            parser.parse(source);
+        }
+        else {
+            parser.startPush(source);
+            for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+                parser.push(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+            }
+            parser.endPush();
+        }
+        return out.toString();
+    }
+
+    /**
+     * Parses the given bytes with a filter inserting content after each
+     * <code>&lt;div&gt;</code> and evaluating content after each
+     * <code>&lt;span&gt;</code>, pushed in chunks of the given size.
+     */
+    private static String parseInserting(final byte[] bytes, final int chunkSize) throws Exception {
+        final List events = new ArrayList();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters",
+                           new XMLDocumentFilter[] { new InsertingFilter(parser, events) });
+        final XMLInputSource source = new XMLInputSource(null, "test.html", null);
+        if (chunkSize == 0) {
+            source.setByteStream(new java.io.ByteArrayInputStream(bytes));
+            parser.parse(source);
+        }
+        else {
+            parser.startPush(source);
+            for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+                parser.push(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+            }
+            parser.endPush();
+        }
+        return events.toString();
+    }
+
+    private static byte[] read(final File file) throws Exception {
+        final InputStream in = new FileInputStream(file);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /** Records the events and calls back into the scanner. */
+    private static class InsertingFilter extends RecordingFilter {
+        private final HTMLConfiguration fConfiguration;
+
+        InsertingFilter(final HTMLConfiguration configuration, final List events) {
+            super(events);
+            fConfiguration = configuration;
+        }
+
+        public void startElement(QName element, XMLAttributes attributes, Augmentations augs) {
+            super.startElement(element, attributes, augs);
+            if (element.rawname.equals("DIV")) {
+                fConfiguration.pushInputSource(new XMLInputSource(null, "inserted", null,
+                                                                  new StringReader("<em>inserted</em>"), null));
+            }
+            else if (element.rawname.equals("SPAN")) {
+                fConfiguration.evaluateInputSource(new XMLInputSource(null, "evaluated", null,
+                                                                      new StringReader("<em>evaluated</em>"), null));
+            }
+        }
+    }
+
+    /** Records the elements, the text and the comments. */
+    private static class RecordingFilter extends DefaultFilter {
+        private final List fEvents;
+
+        RecordingFilter(final List events) {
+            fEvents = events;
+        }
+
+        public void startElement(QName element, XMLAttributes attributes, Augmentations augs) {
+            fEvents.add("(" + element.rawname);
+        }
+
+        public void endElement(QName element, Augmentations augs) {
+            fEvents.add(")" + element.rawname);
+        }
+
+        public void characters(XMLString text, Augmentations augs) {
+            fEvents.add(text.toString());
+        }
+
+        public void comment(XMLString text, Augmentations augs) {
+            fEvents.add("#comment");
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadFactory;
+
+import junit.framework.TestCase;
+
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/**
+ * Unit tests for {@link ReadAheadInputStream} and the
+ * <code>read-ahead</code> feature of the scanner.
+ */
+public class ReadAheadInputStreamTest extends TestCase {
+
+    public void testRead() throws Exception {
+        final byte[] bytes = new byte[100000];
+        new Random(42).nextBytes(bytes);
+        final int[] sizes = { 1, 7, 8192, 100000 };
+        for (int i = 0; i < sizes.length; i++) {
+            final InputStream in = ReadAheadInputStream.start(new SlowInputStream(bytes, 1000), null);
+            assertTrue(String.valueOf(sizes[i]), java.util.Arrays.equals(bytes, read(in, sizes[i])));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    public void testError() throws Exception {
+        final InputStream failing = new InputStream() {
+            private int fCount;
+            public int read() throws IOException {
+                if (fCount++ == 3) {
+                    throw new IOException("connection reset");
+                }
+                return 'a';
+            }
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                b[off] = (byte) read();
+                return 1;
+            }
+        };
+        final InputStream in = ReadAheadInputStream.start(failing, null);
+        assertEquals('a', in.read());
+        assertEquals('a', in.read());
+        assertEquals('a', in.read());
+        try {
+            in.read();
+            fail();
+        }
+        catch (final IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+    }
+
+    public void testStop() throws Exception {
+        final ThreadRecorder factory = new ThreadRecorder();
+        final boolean[] closed = { false };
+        final InputStream endless = new InputStream() {
+            public int read() {
+                return 'a';
+            }
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        final InputStream in = ReadAheadInputStream.start(endless, factory);
+        assertEquals('a', in.read());
+        ReadAheadInputStream.stop(in);
+        factory.join();
+        assertFalse(closed[0]);
+
+        ReadAheadInputStream.start(endless, factory).close();
+        factory.join();
+        assertTrue(closed[0]);
+    }
+
+    /** Checks that a thread blocked in a read is abandoned, then ends. */
+    public void testStopBlocked() throws Exception {
+        final ThreadRecorder factory = new ThreadRecorder();
+        final Object lock = new Object();
+        final boolean[] released = { false };
+        final InputStream blocking = new InputStream() {
+            public int read() throws IOException {
+                synchronized (lock) {
+                    while (!released[0]) {
+                        try {
+                            lock.wait();
+                        }
+                        catch (final InterruptedException e) {
+                            throw new IOException(e.toString());
+                        }
+                    }
+                }
+                return 'a';
+            }
+        };
+        final InputStream in = ReadAheadInputStream.start(blocking, factory);
+        ReadAheadInputStream.stop(in);
+        try {
+            in.read();
+            fail();
+        }
+        catch (final IOException e) {
+            // the stream is stopped
+        }
+        synchronized (lock) {
+            released[0] = true;
+            lock.notifyAll();
+        }
+        factory.join();
+    }
+
+    /** Checks that the bytes following reads of no bytes are read. */
+    public void testEmptyReads() throws Exception {
+        final int[] count = { 0 };
+        final InputStream empty = new InputStream() {
+            public int read() {
+                return 'a';
+            }
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                synchronized (count) {
+                    if (++count[0] <= 20) {
+                        return 0;
+                    }
+                }
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        final InputStream in = ReadAheadInputStream.start(empty, null);
+        assertEquals('a', in.read());
+        ReadAheadInputStream.stop(in);
+        synchronized (count) {
+            assertTrue(count[0] > 20);
+        }
+    }
+
+    /**
+     * Checks that the corpus is parsed the same way when read ahead, and
+     * that the background threads end with the parse, even if the stream
+     * of the application isn't closed.
+     */
+    public void testParseCorpus() throws Exception {
+        final ThreadRecorder factory = new ThreadRecorder();
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            final File dataFile = (File) dataFiles.get(i);
+            final byte[] bytes = read(new FileInputStream(dataFile), 4096);
+            final String expected = parse(dataFile, bytes, null);
+            assertEquals(dataFile.toString(), expected, parse(dataFile, bytes, factory));
+        }
+        assertEquals(dataFiles.size(), factory.fThreads.size());
+        factory.join();
+
+        // a document abandoned before its end
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setFeature(HTMLScanner.READ_AHEAD, true);
+        parser.setProperty(HTMLScanner.READ_AHEAD_THREAD_FACTORY, factory);
+        final byte[] bytes = new byte[100000];
+        java.util.Arrays.fill(bytes, (byte) 'a');
+        parser.setInputSource(new XMLInputSource(null, "test.html", null, new ByteArrayInputStream(bytes), null));
+        parser.parse(false);
+        parser.cleanup();
+        factory.join();
+    }
+
+    private static String parse(final File dataFile, final byte[] bytes, final ThreadFactory factory) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        parser.setProperty("http://cyberneko.org/html/properties/filters", new XMLDocumentFilter[] { new Writer(out) });
+        CanonicalTest.applySettings(parser, dataFile, out);
+        if (factory != null) {
+            parser.setFeature(HTMLScanner.READ_AHEAD, true);
+            parser.setProperty(HTMLScanner.READ_AHEAD_THREAD_FACTORY, factory);
+        }
+        parser.parse(new XMLInputSource(null, dataFile.toString(), null, new SlowInputStream(bytes, 100), null));
+        return out.toString();
+    }
+
+    private static byte[] read(final InputStream in, final int size) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[size];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    /** A stream returning a few bytes at a time. */
+    private static class SlowInputStream extends ByteArrayInputStream {
+        private final int fBlockSize;
+
+        SlowInputStream(final byte[] bytes, final int blockSize) {
+            super(bytes);
+            fBlockSize = blockSize;
+        }
+
+        public synchronized int read(final byte[] b, final int off, final int len) {
+            Thread.yield();
+            return super.read(b, off, Math.min(len, fBlockSize));
+        }
+    }
+
+    /** Records the threads it creates. */
+    private static class ThreadRecorder implements ThreadFactory {
+        private final List fThreads = new ArrayList();
+
+        public synchronized Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            fThreads.add(thread);
+            return thread;
+        }
+
+        /** Checks that the threads end. */
+        synchronized void join() throws InterruptedException {
+            for (int i = 0; i < fThreads.size(); i++) {
+                final Thread thread = (Thread) fThreads.get(i);
+                thread.join(10000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2002-2009 Andy Clark, Marc Guillemot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cyberneko.html;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import junit.extensions.TestSetup;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.xerces.xni.parser.XMLInputSource;
+import org.cyberneko.html.xercesbridge.XercesBridge;
+
+/**
+ * This test measures the time needed to parse each file of the canonical
+ * test corpus and compares it against the baseline stored in
+ * <code>data/perf/throughput-baseline.properties</code>. A test fails when
+ * a file is more than {@link #TOLERANCE} slower than its baseline.
+ * <p>
+ * Timings depend on the machine: the comparison is only done when the
+ * Java version, the Xerces version, the operating system and the
+ * architecture are the ones of the baseline. The number of processors
+ * isn't compared, the files are parsed by a single thread.
+ * To record a new baseline, e.g. on the machine running the nightly
+ * builds, run the test with the system property
+ * <code>nekohtml.throughput.update</code> set to <code>true</code>.
+ * <p>
+ * The timings of every file are written to
+ * <code>build/perf/throughput.csv</code> with the columns:
+ * <pre>
+ * file,bytes,nanos,nanos/KB,baseline,ratio
+ * </pre>
+ * The test isn't run with the unit tests because it takes longer and is
+ * sensitive to the load of the machine: run it with <code>ant perf</code>
+ * or <code>mvn test -Pperf</code>.
+ */
+public class ThroughputRegression extends TestCase {
+
+    /** Allowed slowdown over the baseline. */
+    static final double TOLERANCE = 0.30;
+
+    /** Allowed slowdown over the baseline in nanoseconds, for tiny files. */
+    static final long SLACK = 20000;
+
+    /** Number of parses of the whole corpus before the first test. */
+    private static final int CORPUS_WARMUP = 20;
+
+    /** Number of parses before measuring. */
+    private static final int WARMUP = 20;
+
+    /** Number of measured batches, the fastest one is kept. */
+    private static final int RUNS = 10;
+
+    /** Number of parses per batch. */
+    private static final int BATCH = 10;
+
+    /** Number of measures of a file before it is reported as slower. */
+    private static final int ATTEMPTS = 3;
+
+    private static final File baselineFile = new File("data/perf/throughput-baseline.properties");
+    private static final File reportFile = new File("build/perf/throughput.csv");
+    private static final String[] ENVIRONMENT = {
+        "java.specification.version", "os.name", "os.arch",
+    };
+    private static final String XERCES_VERSION = "xerces.version";
+
+    private static Baseline baseline;
+    private static final TreeMap report = new TreeMap();
+    private static boolean update;
+    private static boolean comparable;
+
+    private final File dataFile;
+
+    public static Test suite() throws Exception {
+        update = Boolean.getBoolean("nekohtml.throughput.update");
+        baseline = new Baseline(baselineFile, "Nanoseconds per parse, see ThroughputRegression");
+        comparable = baseline.matches(getEnvironment());
+
+        final TestSuite suite = new TestSuite();
+        final List/*File*/ dataFiles = CanonicalTest.getDataFiles();
+        for (int i = 0; i < dataFiles.size(); i++) {
+            suite.addTest(new ThroughputRegression((File) dataFiles.get(i)));
+        }
+        return new TestSetup(suite) {
+            protected void setUp() throws Exception {
+                // compiles the code of all the parsing paths so that the
+                // first files aren't measured with interpreted code
+                for (int i = 0; i < CORPUS_WARMUP; i++) {
+                    for (int j = 0; j < dataFiles.size(); j++) {
+                        final File dataFile = (File) dataFiles.get(j);
+                        final HTMLConfiguration parser = new HTMLConfiguration();
+                        CanonicalTest.applySettings(parser, dataFile, new StringWriter());
+                        parse(parser, dataFile, Baseline.readFully(dataFile));
+                    }
+                }
+            }
+            protected void tearDown() throws Exception {
+                storeReport();
+                if (update) {
+                    baseline.store(getEnvironment());
+                }
+            }
+        };
+    }
+
+    ThroughputRegression(final File dataFile) {
+        super(Baseline.getKey(dataFile) + " [" + XercesBridge.getInstance().getVersion() + "]");
+        this.dataFile = dataFile;
+    }
+
+    protected void runTest() throws Exception {
+        final byte[] content = Baseline.readFully(dataFile);
+        final HTMLConfiguration parser = new HTMLConfiguration();
+        CanonicalTest.applySettings(parser, dataFile, new StringWriter());
+        for (int i = 0; i < WARMUP; i++) {
+            parse(parser, dataFile, content);
+        }
+        final String key = Baseline.getKey(dataFile);
+        final String expected = baseline.getExpected(key);
+        final boolean check = !update && comparable && expected != null;
+        final long limit = check ? (long) (Long.parseLong(expected) * (1 + TOLERANCE)) + SLACK : 0;
+        // a file is measured again when it seems slower, a pause of the
+        // machine during the measure shouldn't fail the build
+        long nanos = measure(parser, content);
+        for (int i = 1; check && nanos > limit && i < ATTEMPTS; i++) {
+            nanos = Math.min(nanos, measure(parser, content));
+        }
+        baseline.setResult(key, String.valueOf(nanos));
+
+        final StringBuffer line = new StringBuffer();
+        line.append(key).append(',').append(content.length).append(',').append(nanos).append(',');
+        line.append(nanos * 1024 / Math.max(content.length, 1)).append(',');
+        if (expected != null) {
+            line.append(expected).append(',');
+            line.append(Math.round(nanos * 100.0 / Long.parseLong(expected)) / 100.0);
+        }
+        else {
+            line.append(',');
+        }
+        report.put(key, line.toString());
+
+        if (check && nanos > limit) {
+            fail(key + " takes " + nanos + " ns to parse, baseline is " + expected);
+        }
+    }
+
+    private long measure(final HTMLConfiguration parser, final byte[] content) throws Exception {
+        long nanos = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            for (int j = 0; j < BATCH; j++) {
+                parse(parser, dataFile, content);
+            }
+            nanos = Math.min(nanos, (System.nanoTime() - start) / BATCH);
+        }
+        return nanos;
+    }
+
+    private static void parse(final HTMLConfiguration parser, final File dataFile, final byte[] content)
+        throws Exception {
+        parser.parse(new XMLInputSource(null, dataFile.toString(), null, new ByteArrayInputStream(content), null));
+    }
+
+    private static Properties getEnvironment() {
+        final Properties environment = new Properties();
+        for (int i = 0; i < ENVIRONMENT.length; i++) {
+            environment.setProperty(ENVIRONMENT[i], System.getProperty(ENVIRONMENT[i]));
+        }
+        environment.setProperty(XERCES_VERSION, XercesBridge.getInstance().getVersion());
+        return environment;
+    }
+
+    private static void storeReport() throws IOException {
+        reportFile.getParentFile().mkdirs();
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "ISO-8859-1"));
+        out.println("file,bytes,nanos,nanos/KB,baseline,ratio");
+        for (final Iterator lines = report.values().iterator(); lines.hasNext(); ) {
+            out.println(lines.next());
+        }
+        out.close();
+    }
+}